@@ -0,0 +1,162 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.sftp.SFTPTransferEngine;
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SFTP downloads and uploads with and without zlib@openssh.com, for log-like text and for
+ * random bytes that don't compress, over loopback and through a proxy limiting the link
+ * to 10 Mbit/s with 20 ms RTT. The level is the client's, so it applies to uploads;
+ * the server deflates downloads at its default level.
+ *
+ * One operation is one MiB, so the score is in MiB/s. The cpuMsPerMiB counter is process
+ * CPU time per MiB, client and server together, since both run in this JVM.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    static final int FILE_MB = 4;
+
+    @Param({"text", "random"})
+    public String payload;
+
+    /** "off", or the deflate level */
+    @Param({"off", "1", "6", "9"})
+    public String compression;
+
+    /** Link rate, or 0 for loopback without a proxy */
+    @Param({"0", "10"})
+    public int mbit;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cpu {
+        public double cpuMsPerMiB;
+
+        private long cpuNanos;
+        private long mib;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanos = 0;
+            mib = 0;
+            cpuMsPerMiB = 0;
+        }
+
+        void add(long nanos, int count) {
+            cpuNanos += nanos;
+            mib += count;
+            cpuMsPerMiB = cpuNanos / 1e6 / mib;
+        }
+    }
+
+    private LocalSftpServer server;
+    private LatencyProxy proxy;
+    private SSHConnection connection;
+    private SftpClient sftp;
+    private SFTPTransferEngine engine;
+    private Path localDir;
+    private com.sun.management.OperatingSystemMXBean os;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new LocalSftpServer();
+        localDir = Files.createTempDirectory("jssh-bench-local");
+        os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        byte[] data = payload.equals("text") ? logText(FILE_MB * Payloads.SIZE) : randomBytes(FILE_MB * Payloads.SIZE);
+        Files.write(server.getRoot().resolve("download.bin"), data);
+        Files.write(localDir.resolve("upload.bin"), data);
+
+        int port = server.getPort();
+        if (mbit > 0) {
+            proxy = new LatencyProxy(port, 20, mbit * 1000000L / 8);
+            port = proxy.getPort();
+        }
+
+        SSHConnection conn = new SSHConnection();
+        boolean enabled = !compression.equals("off");
+        conn.setCompression(enabled, enabled ? Integer.parseInt(compression) : 6);
+        connection = server.connect(conn, port);
+        String negotiated = connection.getCompression();
+        if (enabled != "zlib@openssh.com".equals(negotiated)) {
+            throw new IllegalStateException("Negotiated compression " + negotiated);
+        }
+        sftp = connection.openSftp();
+        engine = new SFTPTransferEngine(sftp);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sftp.close();
+        connection.close();
+        if (proxy != null) {
+            proxy.close();
+        }
+        server.close();
+        LocalSftpServer.deleteRecursive(localDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long download(Cpu cpu) throws IOException {
+        long start = os.getProcessCpuTime();
+        long n = engine.download("/download.bin", localDir.resolve("download.bin").toFile(), null);
+        cpu.add(os.getProcessCpuTime() - start, FILE_MB);
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long upload(Cpu cpu) throws IOException {
+        long start = os.getProcessCpuTime();
+        long n = engine.upload(localDir.resolve("upload.bin").toFile(), "/upload.bin", null);
+        cpu.add(os.getProcessCpuTime() - start, FILE_MB);
+        return n;
+    }
+
+    /**
+     * Application log lines with varying ids, durations and sizes; deflates to a fifth or so
+     */
+    static byte[] logText(int size) {
+        String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+        String[] paths = {"/api/orders", "/api/customers", "/api/invoices", "/health", "/login"};
+        Random random = new Random(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 256);
+        long millis = 1760000000000L;
+        while (out.size() < size) {
+            millis += random.nextInt(50);
+            String line = String.format("%tF %<tT.%<tL %-5s [worker-%d] GET %s/%d status=%d bytes=%d took=%dms%n",
+                    millis, levels[random.nextInt(levels.length)], random.nextInt(16),
+                    paths[random.nextInt(paths.length)], random.nextInt(100000),
+                    random.nextInt(10) == 0 ? 404 : 200, random.nextInt(65536), random.nextInt(500));
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        byte[] data = out.toByteArray();
+        return data.length == size ? data : Arrays.copyOf(data, size);
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(5).nextBytes(data);
+        return data;
+    }
+}
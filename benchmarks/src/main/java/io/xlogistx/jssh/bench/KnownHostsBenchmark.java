@@ -0,0 +1,87 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.ssh.KnownHosts;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a known_hosts file with as many hashed as plain entries, and looking up
+ * a plain host, a hashed host (after its first lookup) and a host that isn't there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class KnownHostsBenchmark {
+
+    private static final String KEY_TYPE = "ssh-ed25519";
+
+    @Param({"1000", "50000"})
+    public int entries;
+
+    private Path file;
+    private KnownHosts knownHosts;
+    private String keyData;
+
+    @Setup
+    public void setup() throws IOException, GeneralSecurityException {
+        byte[] key = new byte[51];
+        Random random = new Random(3);
+        random.nextBytes(key);
+        keyData = Base64.getEncoder().encodeToString(key);
+
+        StringBuilder sb = new StringBuilder();
+        Mac mac = Mac.getInstance("HmacSHA1");
+        for (int i = 0; i < entries / 2; i++) {
+            sb.append("host").append(i).append(".example.com ").append(KEY_TYPE).append(' ').append(keyData).append('\n');
+
+            byte[] salt = new byte[20];
+            random.nextBytes(salt);
+            mac.init(new SecretKeySpec(salt, "HmacSHA1"));
+            byte[] hash = mac.doFinal(("hashed" + i + ".example.com").getBytes(StandardCharsets.UTF_8));
+            sb.append("|1|").append(Base64.getEncoder().encodeToString(salt)).append('|')
+                    .append(Base64.getEncoder().encodeToString(hash))
+                    .append(' ').append(KEY_TYPE).append(' ').append(keyData).append('\n');
+        }
+        file = Files.createTempFile("known_hosts", ".bench");
+        Files.writeString(file, sb);
+        knownHosts = new KnownHosts(file.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public KnownHosts load() {
+        return new KnownHosts(file.toString());
+    }
+
+    @Benchmark
+    public KnownHosts.VerifyResult plainHost() {
+        return knownHosts.verify("host" + (entries / 4) + ".example.com", 22, KEY_TYPE, keyData);
+    }
+
+    @Benchmark
+    public KnownHosts.VerifyResult hashedHost() {
+        return knownHosts.verify("hashed" + (entries / 4) + ".example.com", 22, KEY_TYPE, keyData);
+    }
+
+    @Benchmark
+    public KnownHosts.VerifyResult unknownHost() {
+        return knownHosts.verify("unknown.example.com", 22, KEY_TYPE, keyData);
+    }
+}
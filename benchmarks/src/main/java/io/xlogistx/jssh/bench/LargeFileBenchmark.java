@@ -0,0 +1,115 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.sftp.SFTPTransferEngine;
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-GB uploads and downloads over loopback, comparing the heap byte[] stream loop
+ * with the engine's pooled FileChannel buffers and mapped reads. One operation is one
+ * MiB, so the score is in MiB/s; run with {@code -prof gc} to compare allocation per MiB.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Thread)
+public class LargeFileBenchmark {
+
+    static final int FILE_MB = 2048;
+
+    private LocalSftpServer server;
+    private SSHConnection connection;
+    private SftpClient sftp;
+    private SFTPTransferEngine engine;
+    private Path localDir;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new LocalSftpServer();
+        localDir = Files.createTempDirectory("jssh-bench-local");
+        writeRandom(server.getRoot().resolve("download.bin"));
+        writeRandom(localDir.resolve("upload.bin"));
+
+        connection = server.connect();
+        sftp = connection.openSftp();
+        engine = new SFTPTransferEngine(sftp);
+    }
+
+    /**
+     * Written in pieces; the file is larger than the heap
+     */
+    private static void writeRandom(Path path) throws IOException {
+        Random random = new Random(5);
+        byte[] block = new byte[1024 * 1024];
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < FILE_MB; i++) {
+                random.nextBytes(block);
+                ByteBuffer data = ByteBuffer.wrap(block);
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sftp.close();
+        connection.close();
+        server.close();
+        LocalSftpServer.deleteRecursive(localDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long engineDownload() throws IOException {
+        return engine.download("/download.bin", localDir.resolve("download.bin").toFile(), null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long engineUpload() throws IOException {
+        return engine.upload(localDir.resolve("upload.bin").toFile(), "/upload.bin", null);
+    }
+
+    /**
+     * The stream copy loop the SFTP browser used before the engine
+     */
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public void streamDownload() throws IOException {
+        try (InputStream is = sftp.read("/download.bin");
+             OutputStream os = new FileOutputStream(localDir.resolve("download.bin").toFile())) {
+            byte[] buf = new byte[32768];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                os.write(buf, 0, n);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public void streamUpload() throws IOException {
+        try (InputStream is = new FileInputStream(localDir.resolve("upload.bin").toFile());
+             OutputStream os = sftp.write("/upload.bin")) {
+            byte[] buf = new byte[32768];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                os.write(buf, 0, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.xlogistx.jssh.bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback TCP proxy that holds every chunk for half the round-trip time in each
+ * direction, so pipelined requests overlap like on a WAN link. Bandwidth is not limited
+ * unless a link rate is given, in which case each direction sends no faster than that.
+ */
+class LatencyProxy implements Closeable {
+
+    private static final byte[] EOF = new byte[0];
+
+    private final ServerSocket listener;
+    private final int targetPort;
+    private final long delayNanos;
+    private final double nanosPerByte;
+    private volatile boolean closed;
+
+    LatencyProxy(int targetPort, int rttMillis) throws IOException {
+        this(targetPort, rttMillis, 0);
+    }
+
+    /**
+     * @param bytesPerSecond link rate in each direction, or 0 for no limit
+     */
+    LatencyProxy(int targetPort, int rttMillis, long bytesPerSecond) throws IOException {
+        this.targetPort = targetPort;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(rttMillis) / 2;
+        this.nanosPerByte = bytesPerSecond > 0 ? 1e9 / bytesPerSecond : 0;
+        listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::acceptLoop, "latency-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return listener.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket client = listener.accept();
+                Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                pipe(client, server);
+                pipe(server, client);
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * One reader and one delayed writer per direction
+     */
+    private void pipe(Socket from, Socket to) throws IOException {
+        InputStream in = from.getInputStream();
+        OutputStream out = to.getOutputStream();
+        LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread(() -> {
+            byte[] buf = new byte[65536];
+            // When the link has finished sending what was queued before
+            long linkFree = System.nanoTime();
+            try {
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    linkFree = Math.max(linkFree, System.nanoTime()) + (long) (n * nanosPerByte);
+                    queue.add(new Object[]{linkFree + delayNanos, Arrays.copyOf(buf, n)});
+                }
+            } catch (IOException e) {
+                // Peer closed
+            }
+            queue.add(new Object[]{Math.max(linkFree, System.nanoTime()) + delayNanos, EOF});
+        }, "latency-proxy-read");
+
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    Object[] chunk = queue.take();
+                    long wait = (Long) chunk[0] - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    byte[] data = (byte[]) chunk[1];
+                    if (data == EOF) {
+                        break;
+                    }
+                    out.write(data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Peer closed
+            }
+            try {
+                to.shutdownOutput();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }, "latency-proxy-write");
+
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        listener.close();
+    }
+}
@@ -0,0 +1,97 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * In-process MINA SSH server with an SFTP subsystem rooted at a temp directory.
+ * Any user name and password is accepted, and compression is agreed if the client asks.
+ */
+class LocalSftpServer implements Closeable {
+
+    private final SshServer server;
+    private final Path root;
+
+    LocalSftpServer() throws IOException {
+        root = Files.createTempDirectory("jssh-bench-sftp");
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        // Like OpenSSH; otherwise Nagle holds the tail of each reply for a delayed ACK
+        CoreModuleProperties.TCP_NODELAY.set(server, true);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) -> true);
+        server.setCompressionFactories(Arrays.<NamedFactory<Compression>>asList(
+                BuiltinCompressions.none, BuiltinCompressions.zlib, BuiltinCompressions.delayedZlib));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root));
+        server.start();
+    }
+
+    /**
+     * Directory served as the SFTP root
+     */
+    Path getRoot() {
+        return root;
+    }
+
+    int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * Connected and authenticated client connection
+     */
+    SSHConnection connect() throws IOException {
+        return connect(getPort());
+    }
+
+    /**
+     * Connected and authenticated client connection through another port, such as a proxy
+     */
+    SSHConnection connect(int port) throws IOException {
+        return connect(new SSHConnection(), port);
+    }
+
+    /**
+     * Connect and authenticate a connection set up by the caller, such as with compression
+     */
+    SSHConnection connect(SSHConnection connection, int port) throws IOException {
+        connection.connect("127.0.0.1", port, 10000);
+        if (!connection.authenticatePassword("bench", "bench", 10000)) {
+            connection.close();
+            throw new IOException("Authentication failed");
+        }
+        return connection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+        deleteRecursive(root);
+    }
+
+    static void deleteRecursive(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
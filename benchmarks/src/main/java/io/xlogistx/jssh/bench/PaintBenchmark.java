@@ -0,0 +1,86 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.terminal.TerminalPanel;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TerminalPanel painting into an offscreen image. Scores are frames per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PaintBenchmark {
+
+    @Param({"80x24", "300x100"})
+    public String size;
+
+    private TerminalPanel terminal;
+    private BufferedImage image;
+    private byte[] fullScreen;
+    private final byte[] keystroke = {'x', '\b'};
+    private static final byte[] HOME = "\u001b[H".getBytes(StandardCharsets.US_ASCII);
+
+    @Setup
+    public void setup() {
+        String[] dims = size.split("x");
+        int cols = Integer.parseInt(dims[0]);
+        int rows = Integer.parseInt(dims[1]);
+
+        terminal = new TerminalPanel(cols, rows);
+        int width = cols * terminal.getCharWidth();
+        int height = rows * terminal.getCharHeight();
+        terminal.setBounds(0, 0, width, height);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        fullScreen = Payloads.fullScreen(cols, rows);
+        terminal.write(fullScreen, 0, fullScreen.length);
+        // Keystrokes are echoed on the top row
+        terminal.write(HOME, 0, HOME.length);
+        paint(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        terminal.dispose();
+    }
+
+    /**
+     * Every cell changes, like a full-screen TUI redraw
+     */
+    @Benchmark
+    public void fullScreen() {
+        terminal.write(fullScreen, 0, fullScreen.length);
+        paint(null);
+    }
+
+    /**
+     * One echoed character, repainted through a clip around its row like Swing would
+     */
+    @Benchmark
+    public void keystroke() {
+        terminal.write(keystroke, 0, keystroke.length);
+        paint(new Rectangle(0, 0, image.getWidth(), terminal.getCharHeight()));
+    }
+
+    private void paint(Rectangle clip) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setFont(terminal.getFont());
+            if (clip != null) {
+                g.setClip(clip);
+            }
+            terminal.paint(g);
+        } finally {
+            g.dispose();
+        }
+    }
+}
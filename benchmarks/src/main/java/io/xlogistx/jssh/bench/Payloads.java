@@ -0,0 +1,123 @@
+package io.xlogistx.jssh.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Synthetic terminal output streams. Each payload is exactly {@link #SIZE} bytes,
+ * so a benchmark operation that consumes one payload reports ops/s as MiB/s.
+ */
+final class Payloads {
+
+    static final int SIZE = 1024 * 1024;
+
+    private static final String[] WORDS = {
+        "total", "drwxr-xr-x", "root", "4096", "Oct", "16", "12:04", "src", "main", "java",
+        "-rw-r--r--", "pom.xml", "README.md", "target", "classes", "io", "xlogistx", "jssh"
+    };
+
+    private Payloads() {
+    }
+
+    /**
+     * Plain text lines, like the output of cat or ls
+     */
+    static byte[] plainText(int cols) {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE);
+        while (true) {
+            sb.setLength(0);
+            while (sb.length() < cols - 12) {
+                sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            sb.append("\r\n");
+            if (!append(out, sb)) break;
+        }
+        return pad(out);
+    }
+
+    /**
+     * Text where almost every word changes colour or attributes, like ls --color or a syntax highlighter
+     */
+    static byte[] sgrHeavy(int cols) {
+        Random random = new Random(2);
+        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE);
+        while (true) {
+            sb.setLength(0);
+            int visible = 0;
+            while (visible < cols - 12) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                switch (random.nextInt(4)) {
+                    case 0: sb.append("\u001b[1;3").append(random.nextInt(8)).append('m'); break;
+                    case 1: sb.append("\u001b[38;5;").append(random.nextInt(256)).append('m'); break;
+                    case 2: sb.append("\u001b[7;4").append(random.nextInt(8)).append('m'); break;
+                    default: sb.append("\u001b[0m"); break;
+                }
+                sb.append(word).append(' ');
+                visible += word.length() + 1;
+            }
+            sb.append("\u001b[0m\r\n");
+            if (!append(out, sb)) break;
+        }
+        return pad(out);
+    }
+
+    /**
+     * Short text fragments at random positions, like htop, vim or a curses progress display
+     */
+    static byte[] cursorAddressing(int cols, int rows) {
+        Random random = new Random(3);
+        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE);
+        while (true) {
+            sb.setLength(0);
+            sb.append("\u001b[").append(1 + random.nextInt(rows)).append(';')
+              .append(1 + random.nextInt(cols - 10)).append('H');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextInt(4) == 0) {
+                sb.append("\u001b[K");
+            }
+            if (!append(out, sb)) break;
+        }
+        return pad(out);
+    }
+
+    /**
+     * One full screen of coloured text starting at the home position
+     */
+    static byte[] fullScreen(int cols, int rows) {
+        Random random = new Random(4);
+        StringBuilder sb = new StringBuilder("\u001b[H");
+        for (int y = 0; y < rows; y++) {
+            sb.append("\u001b[").append(y + 1).append(";1H");
+            int x = 0;
+            while (x < cols) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                word = word.substring(0, Math.min(word.length(), cols - x));
+                sb.append("\u001b[3").append(random.nextInt(8)).append('m').append(word);
+                x += word.length();
+            }
+        }
+        sb.append("\u001b[0m");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean append(ByteArrayOutputStream out, CharSequence unit) {
+        byte[] bytes = unit.toString().getBytes(StandardCharsets.UTF_8);
+        if (out.size() + bytes.length > SIZE) {
+            return false;
+        }
+        out.write(bytes, 0, bytes.length);
+        return true;
+    }
+
+    private static byte[] pad(ByteArrayOutputStream out) {
+        while (out.size() < SIZE) {
+            out.write(' ');
+        }
+        return out.toByteArray();
+    }
+}
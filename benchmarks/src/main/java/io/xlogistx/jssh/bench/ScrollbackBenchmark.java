@@ -0,0 +1,88 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.terminal.Cell;
+import io.xlogistx.jssh.terminal.Scrollback;
+import io.xlogistx.jssh.terminal.TerminalEmulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrollback append and eviction on a full buffer, and line feeds through the emulator.
+ * Scores are lines per second and should stay flat as the capacity grows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScrollbackBenchmark {
+
+    private static final int COLS = 120;
+    private static final int LINES = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int capacity;
+
+    private Scrollback scrollback;
+    private long[] line;
+
+    private TerminalEmulator emulator;
+    private byte[] lineFeeds;
+
+    @Setup
+    public void setup() {
+        line = Cell.blankLine(COLS);
+        for (int x = 0; x < 80; x++) {
+            line[x] = Cell.pack('a' + x % 26, x % 8, Cell.DEFAULT_BG, 0);
+        }
+
+        // Start full so every append also evicts
+        scrollback = new Scrollback(capacity);
+        for (int i = 0; i < capacity; i++) {
+            scrollback.add(line, 80);
+        }
+
+        emulator = new TerminalEmulator(COLS, 40, capacity);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            sb.append("drwxr-xr-x  2 root root 4096 Oct 16 12:04 line ").append(i).append("\r\n");
+        }
+        lineFeeds = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < capacity; i += LINES) {
+            emulator.write(lineFeeds, 0, lineFeeds.length);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scrollback.close();
+        emulator.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void append() {
+        for (int i = 0; i < LINES; i++) {
+            line[0] = Cell.pack('0' + i % 10, Cell.DEFAULT_FG, Cell.DEFAULT_BG, 0);
+            scrollback.add(line, 80);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void lineFeed() {
+        emulator.write(lineFeeds, 0, lineFeeds.length);
+    }
+
+    /**
+     * Random reads across the whole history, including the compressed tier
+     */
+    @Benchmark
+    public long[] readRandom() {
+        return scrollback.get(ThreadLocalRandom.current().nextInt(scrollback.size()));
+    }
+}
@@ -0,0 +1,79 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SFTP upload and download against an in-process server over loopback, using the same
+ * stream copy loop as the SFTP browser. One operation is one MiB, so the score is in MiB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SftpBenchmark {
+
+    static final int FILE_MB = 16;
+
+    private LocalSftpServer server;
+    private SSHConnection connection;
+    private SftpClient sftp;
+    private Path localDir;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new LocalSftpServer();
+        localDir = Files.createTempDirectory("jssh-bench-local");
+
+        byte[] data = new byte[FILE_MB * 1024 * 1024];
+        new Random(5).nextBytes(data);
+        Files.write(server.getRoot().resolve("download.bin"), data);
+        Files.write(localDir.resolve("upload.bin"), data);
+
+        connection = server.connect();
+        sftp = connection.openSftp();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sftp.close();
+        connection.close();
+        server.close();
+        LocalSftpServer.deleteRecursive(localDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public void download() throws IOException {
+        try (InputStream is = sftp.read("/download.bin");
+             OutputStream os = new FileOutputStream(localDir.resolve("download.bin").toFile())) {
+            byte[] buf = new byte[32768];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                os.write(buf, 0, n);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public void upload() throws IOException {
+        try (InputStream is = new FileInputStream(localDir.resolve("upload.bin").toFile());
+             OutputStream os = sftp.write("/upload.bin")) {
+            byte[] buf = new byte[32768];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                os.write(buf, 0, n);
+            }
+        }
+    }
+}
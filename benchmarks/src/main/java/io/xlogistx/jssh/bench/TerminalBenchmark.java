@@ -0,0 +1,57 @@
+package io.xlogistx.jssh.bench;
+
+import io.xlogistx.jssh.terminal.TerminalEmulator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte ingestion of the terminal emulator. One operation is one MiB of output,
+ * so the score is in MiB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TerminalBenchmark {
+
+    private static final int COLS = 160;
+    private static final int ROWS = 50;
+
+    private TerminalEmulator emulator;
+    private byte[] plainText;
+    private byte[] sgrHeavy;
+    private byte[] cursorAddressing;
+
+    @Setup
+    public void setup() {
+        emulator = new TerminalEmulator(COLS, ROWS);
+        emulator.setResponseStream(OutputStream.nullOutputStream());
+        plainText = Payloads.plainText(COLS);
+        sgrHeavy = Payloads.sgrHeavy(COLS);
+        cursorAddressing = Payloads.cursorAddressing(COLS, ROWS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        emulator.close();
+    }
+
+    @Benchmark
+    public void plainText() {
+        emulator.write(plainText, 0, plainText.length);
+    }
+
+    @Benchmark
+    public void sgrHeavy() {
+        emulator.write(sgrHeavy, 0, sgrHeavy.length);
+    }
+
+    @Benchmark
+    public void cursorAddressing() {
+        emulator.write(cursorAddressing, 0, cursorAddressing.length);
+    }
+}
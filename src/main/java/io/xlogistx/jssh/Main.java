@@ -49,6 +49,7 @@ public class Main {
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
+            frame.warmUpSessions();
             
             // If host was provided, open connection dialog
             if (finalHost != null) {
@@ -18,8 +18,15 @@ public class ConnectionConfig implements Serializable {
     private String terminalType = "xterm-256color";
     private int columns = 80;
     private int rows = 24;
+    private int scrollbackLines = 10000;
+    private int sftpWindow = 64;          // SFTP read requests in flight per file
+    private int sftpChunkSize = 32768;    // Bytes per SFTP read request
+    private boolean compression = false;  // Offer zlib@openssh.com, enabled after authentication
+    private int compressionLevel = 6;     // Deflate level 1 (fastest) to 9 (smallest)
     private boolean x11Forwarding = false;
     private String x11Display = "localhost:0";
+    private String group = "";            // Connect group the profile is opened with
+    private boolean keepWarm = false;     // Keep a logged-in session ready; key auth only
 
     // Tunnel configurations (stored as comma-separated strings)
     private String localTunnels = "";   // Format: "localPort:remoteHost:remotePort,..."
@@ -105,6 +112,62 @@ public class ConnectionConfig implements Serializable {
         this.rows = rows;
     }
 
+    public int getScrollbackLines() {
+        return scrollbackLines;
+    }
+
+    public void setScrollbackLines(int scrollbackLines) {
+        this.scrollbackLines = scrollbackLines;
+    }
+
+    public int getSftpWindow() {
+        return sftpWindow;
+    }
+
+    public void setSftpWindow(int sftpWindow) {
+        this.sftpWindow = sftpWindow;
+    }
+
+    public int getSftpChunkSize() {
+        return sftpChunkSize;
+    }
+
+    public void setSftpChunkSize(int sftpChunkSize) {
+        this.sftpChunkSize = sftpChunkSize;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public boolean isKeepWarm() {
+        return keepWarm;
+    }
+
+    public void setKeepWarm(boolean keepWarm) {
+        this.keepWarm = keepWarm;
+    }
+
     public boolean isX11Forwarding() {
         return x11Forwarding;
     }
@@ -151,8 +214,15 @@ public class ConnectionConfig implements Serializable {
         props.setProperty("terminalType", terminalType != null ? terminalType : "xterm-256color");
         props.setProperty("columns", String.valueOf(columns));
         props.setProperty("rows", String.valueOf(rows));
+        props.setProperty("scrollbackLines", String.valueOf(scrollbackLines));
+        props.setProperty("sftpWindow", String.valueOf(sftpWindow));
+        props.setProperty("sftpChunkSize", String.valueOf(sftpChunkSize));
+        props.setProperty("compression", String.valueOf(compression));
+        props.setProperty("compressionLevel", String.valueOf(compressionLevel));
         props.setProperty("x11Forwarding", String.valueOf(x11Forwarding));
         props.setProperty("x11Display", x11Display != null ? x11Display : "localhost:0");
+        props.setProperty("group", group != null ? group : "");
+        props.setProperty("keepWarm", String.valueOf(keepWarm));
         props.setProperty("localTunnels", localTunnels != null ? localTunnels : "");
         props.setProperty("remoteTunnels", remoteTunnels != null ? remoteTunnels : "");
         return props;
@@ -172,8 +242,15 @@ public class ConnectionConfig implements Serializable {
         config.terminalType = props.getProperty("terminalType", "xterm-256color");
         config.columns = Integer.parseInt(props.getProperty("columns", "80"));
         config.rows = Integer.parseInt(props.getProperty("rows", "24"));
+        config.scrollbackLines = Integer.parseInt(props.getProperty("scrollbackLines", "10000"));
+        config.sftpWindow = Integer.parseInt(props.getProperty("sftpWindow", "64"));
+        config.sftpChunkSize = Integer.parseInt(props.getProperty("sftpChunkSize", "32768"));
+        config.compression = Boolean.parseBoolean(props.getProperty("compression", "false"));
+        config.compressionLevel = Integer.parseInt(props.getProperty("compressionLevel", "6"));
         config.x11Forwarding = Boolean.parseBoolean(props.getProperty("x11Forwarding", "false"));
         config.x11Display = props.getProperty("x11Display", "localhost:0");
+        config.group = props.getProperty("group", "");
+        config.keepWarm = Boolean.parseBoolean(props.getProperty("keepWarm", "false"));
         config.localTunnels = props.getProperty("localTunnels", "");
         config.remoteTunnels = props.getProperty("remoteTunnels", "");
         return config;
@@ -0,0 +1,101 @@
+package io.xlogistx.jssh.sftp;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted list model filled a page at a time.
+ *
+ * Each page is sorted and merged into the elements already shown, with one change event
+ * per page instead of one per element, so a list can be shown while it is still being read.
+ * Leading pinned elements, such as the parent directory entry, stay at the top unsorted.
+ */
+public class PagedListModel<E> extends AbstractListModel<E> {
+
+    private final Comparator<? super E> order;
+    private Object[] elements = new Object[16];
+    private int size;
+    private int pinned;
+
+    public PagedListModel(Comparator<? super E> order) {
+        this.order = order;
+    }
+
+    /**
+     * Remove all elements and start over with the given pinned ones
+     */
+    @SafeVarargs
+    public final void reset(E... pinnedElements) {
+        int oldSize = size;
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+        pinned = 0;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (pinnedElements.length > 0) {
+            ensureCapacity(pinnedElements.length);
+            for (int i = 0; i < pinnedElements.length; i++) {
+                elements[i] = pinnedElements[i];
+            }
+            size = pinned = pinnedElements.length;
+            fireIntervalAdded(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * Sort a page and merge it into the elements
+     */
+    @SuppressWarnings("unchecked")
+    public void addPage(List<? extends E> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        Object[] added = page.toArray();
+        Arrays.sort(added, (a, b) -> order.compare((E) a, (E) b));
+
+        int oldSize = size;
+        ensureCapacity(size + added.length);
+        // Merge from the back so that nothing is overwritten before it has moved
+        int i = size - 1;
+        int j = added.length - 1;
+        int k = size + added.length - 1;
+        while (j >= 0) {
+            if (i >= pinned && order.compare((E) elements[i], (E) added[j]) > 0) {
+                elements[k--] = elements[i--];
+            } else {
+                elements[k--] = added[j--];
+            }
+        }
+        size += added.length;
+
+        // Elements up to i kept their place; everything after moved or is new
+        int firstChanged = i + 1;
+        if (firstChanged < oldSize) {
+            fireContentsChanged(this, firstChanged, oldSize - 1);
+        }
+        fireIntervalAdded(this, oldSize, size - 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length * 2));
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getElementAt(int index) {
+        if (index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (E) elements[index];
+    }
+}
@@ -0,0 +1,366 @@
+package io.xlogistx.jssh.sftp;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.sftp.client.RawSftpClient;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.CloseableHandle;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.apache.sshd.sftp.client.impl.SftpResponse;
+import org.apache.sshd.sftp.common.SftpConstants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Remote directory listings by path, kept for a time-to-live and dropped explicitly
+ * after operations that change them.
+ *
+ * Symlink targets are stat'ed in one batch, with many SSH_FXP_STAT requests in flight,
+ * instead of one round trip per link. Child directories can be listed in the background,
+ * on a channel of their own, so that navigating into them is served from the cache.
+ *
+ * Directories are read one SSH_FXP_NAME batch at a time, and a caller can have each batch
+ * as it arrives. Huge directories are cut off after a maximum number of entries.
+ */
+public class RemoteDirectoryCache implements Closeable {
+
+    public static final long DEFAULT_TTL = 30000;
+
+    /** Symlink stats in flight at once */
+    static final int STAT_WINDOW = 64;
+
+    /** Most child directories prefetched for one listing */
+    public static final int MAX_PREFETCH = 32;
+
+    /** Most entries read from one directory */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /**
+     * One directory's entries, or one batch of them, without "." and "..", and which of its
+     * symlinks lead to directories
+     */
+    public static class Listing {
+        private final String path;
+        private final List<DirEntry> entries;
+        private final Set<String> linkedDirectories;
+        private final boolean truncated;
+        private final long loadedAt;
+
+        Listing(String path, List<DirEntry> entries, Set<String> linkedDirectories, boolean truncated) {
+            this.path = path;
+            this.entries = Collections.unmodifiableList(entries);
+            this.linkedDirectories = linkedDirectories;
+            this.truncated = truncated;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public List<DirEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Directory, or symlink to one
+         */
+        public boolean isDirectory(DirEntry entry) {
+            return entry.getAttributes().isDirectory() || linkedDirectories.contains(entry.getFilename());
+        }
+
+        /**
+         * Whether the directory has more entries than were read
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+    }
+
+    private final SSHConnection connection;
+    private final SftpClient sftp;
+    private SftpClient prefetchSftp;
+    private boolean closed;
+    private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher;
+    private final AtomicInteger prefetchGeneration = new AtomicInteger();
+    private final AtomicInteger invalidations = new AtomicInteger();
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * @param sftp channel for listings requested by the caller; prefetches open their own
+     */
+    public RemoteDirectoryCache(SSHConnection connection, SftpClient sftp) {
+        this.connection = connection;
+        this.sftp = sftp;
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "sftp-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * How long a listing is served without asking the server again
+     */
+    public void setTtl(long ttlMillis) {
+        this.ttl = ttlMillis;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Entries after which reading a directory stops
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Listing of a directory, from the cache if it is fresh enough
+     */
+    public Listing get(String path) throws IOException {
+        return get(path, null);
+    }
+
+    /**
+     * Listing of a directory, from the cache if it is fresh enough.
+     * @param pages given each batch of entries as it is read, or the whole listing if cached;
+     *              may be null
+     */
+    public Listing get(String path, Consumer<Listing> pages) throws IOException {
+        path = normalize(path);
+        Listing listing = listings.get(path);
+        if (listing != null && System.currentTimeMillis() - listing.loadedAt < ttl) {
+            if (pages != null) {
+                pages.accept(listing);
+            }
+            return listing;
+        }
+        return load(sftp, path, pages);
+    }
+
+    /**
+     * Fresh listing if cached, without going to the server
+     */
+    public Listing getIfPresent(String path) {
+        Listing listing = listings.get(normalize(path));
+        if (listing != null && System.currentTimeMillis() - listing.loadedAt < ttl) {
+            return listing;
+        }
+        return null;
+    }
+
+    /**
+     * Read a directory from the server and cache it
+     */
+    public Listing load(String path) throws IOException {
+        return load(sftp, path, null);
+    }
+
+    private Listing load(SftpClient sftp, String path, Consumer<Listing> pages) throws IOException {
+        path = normalize(path);
+        int stamp = invalidations.get();
+        int limit = maxEntries;
+        List<DirEntry> entries = new ArrayList<>();
+        Set<String> linked = new HashSet<>();
+        boolean truncated = false;
+        try (CloseableHandle handle = sftp.openDir(path)) {
+            List<DirEntry> batch;
+            while (!truncated && (batch = sftp.readDir(handle)) != null) {
+                List<DirEntry> page = new ArrayList<>(batch.size());
+                List<String> links = new ArrayList<>();
+                for (DirEntry entry : batch) {
+                    String name = entry.getFilename();
+                    if (name.equals(".") || name.equals("..")) continue;
+                    if (entries.size() + page.size() >= limit) {
+                        truncated = true;
+                        break;
+                    }
+                    page.add(entry);
+                    if (entry.getAttributes().isSymbolicLink()) {
+                        links.add(name);
+                    }
+                }
+
+                Set<String> pageLinked = linkedDirectories(sftp, path, links);
+                entries.addAll(page);
+                linked.addAll(pageLinked);
+                if (pages != null && !page.isEmpty()) {
+                    pages.accept(new Listing(path, page, pageLinked, false));
+                }
+            }
+        }
+
+        Listing listing = new Listing(path, entries, linked, truncated);
+        // Not cached if something was invalidated meanwhile; it may predate the change
+        if (stamp == invalidations.get()) {
+            listings.put(path, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * Names of the links whose target is a directory; broken links are left out
+     */
+    private static Set<String> linkedDirectories(SftpClient sftp, String dir, List<String> names)
+            throws IOException {
+        Set<String> dirs = new HashSet<>();
+        if (names.isEmpty()) {
+            return dirs;
+        }
+        if (!(sftp instanceof RawSftpClient)) {
+            for (String name : names) {
+                try {
+                    if (sftp.stat(child(dir, name)).isDirectory()) {
+                        dirs.add(name);
+                    }
+                } catch (IOException e) {
+                    // Link target doesn't exist or can't be accessed
+                }
+            }
+            return dirs;
+        }
+
+        RawSftpClient raw = (RawSftpClient) sftp;
+        int version = sftp.getVersion();
+        ArrayDeque<Integer> ids = new ArrayDeque<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        Iterator<String> next = names.iterator();
+        while (next.hasNext() || !ids.isEmpty()) {
+            while (next.hasNext() && ids.size() < STAT_WINDOW) {
+                String name = next.next();
+                Buffer buffer = new ByteArrayBuffer();
+                buffer.putString(child(dir, name));
+                if (version >= SftpConstants.SFTP_V4) {
+                    buffer.putUInt(SftpConstants.SSH_FILEXFER_ATTR_ALL);
+                }
+                ids.add(raw.send(SftpConstants.SSH_FXP_STAT, buffer));
+                pending.add(name);
+            }
+            String name = pending.poll();
+            SftpResponse response = SftpResponse.parse(SftpConstants.SSH_FXP_STAT, raw.receive(ids.poll()));
+            // A status reply means the target doesn't exist or can't be accessed
+            if (response.getType() == SftpConstants.SSH_FXP_ATTRS &&
+                    RemoteTreeWalker.readAttributes(response.getBuffer(), version).isDirectory()) {
+                dirs.add(name);
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * List the child directories of a listing, and its parent, in the background.
+     * Prefetches queued for an earlier listing are dropped.
+     */
+    public void prefetch(Listing listing) {
+        List<String> paths = new ArrayList<>();
+        if (!listing.path.equals("/")) {
+            paths.add(parent(listing.path));
+        }
+        for (DirEntry entry : listing.entries) {
+            if (paths.size() >= MAX_PREFETCH) break;
+            if (listing.isDirectory(entry)) {
+                paths.add(child(listing.path, entry.getFilename()));
+            }
+        }
+
+        int generation = prefetchGeneration.incrementAndGet();
+        for (String path : paths) {
+            prefetcher.execute(() -> {
+                if (generation != prefetchGeneration.get() || getIfPresent(path) != null) {
+                    return;
+                }
+                try {
+                    load(prefetchClient(), path, null);
+                } catch (IOException | RuntimeException e) {
+                    // Unreadable directory or closed channel; opening it reports the error
+                }
+            });
+        }
+    }
+
+    private synchronized SftpClient prefetchClient() throws IOException {
+        if (closed) {
+            throw new IOException("Directory cache closed");
+        }
+        if (prefetchSftp == null) {
+            prefetchSftp = connection.openSftp();
+        }
+        return prefetchSftp;
+    }
+
+    /**
+     * Drop a directory's listing, after creating, renaming or removing something in it
+     */
+    public void invalidate(String path) {
+        invalidations.incrementAndGet();
+        listings.remove(normalize(path));
+    }
+
+    /**
+     * Drop a directory and everything cached below it, after it was renamed or removed
+     */
+    public void invalidateTree(String path) {
+        String root = normalize(path);
+        String prefix = root.equals("/") ? "/" : root + "/";
+        invalidations.incrementAndGet();
+        listings.keySet().removeIf(key -> key.equals(root) || key.startsWith(prefix));
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        listings.clear();
+    }
+
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+        listings.clear();
+        SftpClient client;
+        synchronized (this) {
+            closed = true;
+            client = prefetchSftp;
+            prefetchSftp = null;
+        }
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    static String child(String dir, String name) {
+        return dir.equals("/") ? "/" + name : dir + "/" + name;
+    }
+
+    static String parent(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash <= 0 ? "/" : path.substring(0, lastSlash);
+    }
+
+    private static String normalize(String path) {
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,506 @@
+package io.xlogistx.jssh.sftp;
+
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.sftp.client.RawSftpClient;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.apache.sshd.sftp.client.impl.SftpResponse;
+import org.apache.sshd.sftp.client.impl.SftpStatus;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import org.apache.sshd.sftp.common.SftpHelper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Walks a remote directory tree with many SFTP requests in flight on one channel.
+ *
+ * Directory reads, link stats and, when deleting, removes are pipelined: up to a window of
+ * requests is outstanding at a time, with a bounded number of directory handles open.
+ * Entries reach the visitor as the replies arrive, and the counters can be polled for
+ * progress while a walk runs. A walker is used from one thread; cancel may be called from any.
+ */
+public class RemoteTreeWalker {
+
+    public static final int DEFAULT_WINDOW = 64;
+
+    /** Directory handles open at once; servers limit them, OpenSSH to a few hundred */
+    public static final int MAX_OPEN_DIRS = 16;
+
+    /**
+     * Told about the entries below the root, and the root itself, in the order they are found
+     */
+    public interface Visitor {
+        /**
+         * A directory was found
+         * @return false to skip what is in it
+         */
+        default boolean enterDirectory(String path, Attributes attrs) throws IOException {
+            return true;
+        }
+
+        /**
+         * Anything that is not a directory
+         */
+        void visitFile(String path, Attributes attrs) throws IOException;
+
+        /**
+         * Everything below an entered directory has been visited
+         */
+        default void leaveDirectory(String path) throws IOException {
+        }
+    }
+
+    private final SftpClient sftp;
+    private final int window;
+    private boolean followLinks;
+    private volatile boolean cancelled;
+    private volatile int directories;
+    private volatile int files;
+    private volatile long bytes;
+    private volatile int removed;
+
+    public RemoteTreeWalker(SftpClient sftp) {
+        this(sftp, DEFAULT_WINDOW);
+    }
+
+    public RemoteTreeWalker(SftpClient sftp, int window) {
+        this.sftp = sftp;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Whether symlinks are resolved and walked as what they point to; off by default,
+     * and never when deleting. Broken links are then skipped.
+     */
+    public void setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+    }
+
+    public boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    /**
+     * Visit a tree, or a single file
+     * @return false if the walk was cancelled
+     */
+    public boolean walk(String root, Visitor visitor) throws IOException {
+        Attributes attrs = followLinks ? sftp.stat(root) : sftp.lstat(root);
+        return new Walk(visitor, false).run(root, attrs);
+    }
+
+    /**
+     * Remove a tree, or a single file
+     * @return false if the delete was cancelled, leaving part of the tree
+     */
+    public boolean delete(String root) throws IOException {
+        return new Walk(null, true).run(root, sftp.lstat(root));
+    }
+
+    /**
+     * Stop issuing requests; the running walk returns false once the outstanding ones are answered
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Directories found since the walker was created
+     */
+    public int getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Non-directory entries found since the walker was created
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * Total size of the files found
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Files and directories removed by deletes
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * File type and size from SSH_FXP_ATTRS. The type goes into the mode bits, which is where
+     * {@link Attributes#isDirectory()} looks and where version 3 sends it. The buffer is left
+     * after the attributes.
+     */
+    static Attributes readAttributes(Buffer buffer, int version) {
+        int start = buffer.rpos();
+        int flags = buffer.getInt();
+        int mode = 0;
+        if (version >= SftpConstants.SFTP_V4) {
+            mode = typeToMode(buffer.getUByte());
+        }
+        long size = 0;
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_SIZE) != 0) {
+            size = buffer.getLong();
+        }
+        if (version < SftpConstants.SFTP_V4) {
+            if ((flags & SftpConstants.SSH_FILEXFER_ATTR_UIDGID) != 0) {
+                buffer.getInt();
+                buffer.getInt();
+            }
+            if ((flags & SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+                mode = buffer.getInt() & SftpConstants.S_IFMT;
+            }
+        }
+        // Skip whatever else the version carries
+        buffer.rpos(start);
+        SftpHelper.readAttrs(buffer, version);
+
+        Attributes attrs = new Attributes();
+        attrs.setPermissions(mode);
+        attrs.setType(SftpHelper.permissionsToFileType(mode));
+        attrs.setSize(size);
+        return attrs;
+    }
+
+    private static int typeToMode(int type) {
+        switch (type) {
+            case SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY:
+                return SftpConstants.S_IFDIR;
+            case SftpConstants.SSH_FILEXFER_TYPE_SYMLINK:
+                return SftpConstants.S_IFLNK;
+            case SftpConstants.SSH_FILEXFER_TYPE_REGULAR:
+                return SftpConstants.S_IFREG;
+            default:
+                return 0;
+        }
+    }
+
+    private static String child(String dir, String name) {
+        return dir.equals("/") ? "/" + name : dir + "/" + name;
+    }
+
+    /**
+     * Directory being walked; done once its listing is closed and its entries are handled
+     */
+    private static class Dir {
+        final String path;
+        final Dir parent;
+        byte[] handle;
+        int pending = 1;
+
+        Dir(String path, Dir parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+
+    private static class Op {
+        final int cmd;
+        final String path;
+        final Dir dir;
+        int id;
+
+        Op(int cmd, String path, Dir dir) {
+            this.cmd = cmd;
+            this.path = path;
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * State of one walk or delete
+     */
+    private class Walk {
+        private final Visitor visitor;
+        private final boolean deleting;
+        private final ArrayDeque<Dir> toOpen = new ArrayDeque<>();
+        private final ArrayDeque<Op> queued = new ArrayDeque<>();
+        private final ArrayDeque<Op> inFlight = new ArrayDeque<>();
+        private int openDirs;
+        private int version;
+        private IOException error;
+
+        Walk(Visitor visitor, boolean deleting) {
+            this.visitor = visitor;
+            this.deleting = deleting;
+        }
+
+        boolean run(String root, Attributes attrs) throws IOException {
+            if (!attrs.isDirectory()) {
+                files++;
+                bytes += attrs.getSize();
+                if (deleting) {
+                    sftp.remove(root);
+                    removed++;
+                } else {
+                    visitor.visitFile(root, attrs);
+                }
+                return true;
+            }
+            directories++;
+            if (!deleting && !visitor.enterDirectory(root, attrs)) {
+                return true;
+            }
+
+            if (!(sftp instanceof RawSftpClient)) {
+                return runSequential(root);
+            }
+            RawSftpClient raw = (RawSftpClient) sftp;
+            version = sftp.getVersion();
+            toOpen.push(new Dir(root, null));
+
+            while (true) {
+                if (isStopping()) {
+                    stop();
+                }
+                while (inFlight.size() < window) {
+                    Op op = queued.poll();
+                    // Depth first, so finished subtrees free their memory and handles early
+                    if (op == null && !toOpen.isEmpty() && openDirs < MAX_OPEN_DIRS) {
+                        Dir dir = toOpen.pop();
+                        op = new Op(SftpConstants.SSH_FXP_OPENDIR, dir.path, dir);
+                        openDirs++;
+                    }
+                    if (op == null) break;
+                    send(raw, op);
+                }
+                Op op = inFlight.poll();
+                if (op == null) break;
+
+                SftpResponse response = SftpResponse.parse(op.cmd, raw.receive(op.id));
+                try {
+                    handle(op, response);
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+
+            if (error != null) {
+                throw error;
+            }
+            return !cancelled;
+        }
+
+        private boolean isStopping() {
+            return cancelled || error != null;
+        }
+
+        /**
+         * Drop queued work, but still close the directories that are open
+         */
+        private void stop() {
+            toOpen.clear();
+            ArrayDeque<Op> closes = new ArrayDeque<>();
+            for (Op op : queued) {
+                if (op.cmd == SftpConstants.SSH_FXP_READDIR) {
+                    closes.add(new Op(SftpConstants.SSH_FXP_CLOSE, op.path, op.dir));
+                } else if (op.cmd == SftpConstants.SSH_FXP_CLOSE) {
+                    closes.add(op);
+                }
+            }
+            queued.clear();
+            queued.addAll(closes);
+        }
+
+        private void send(RawSftpClient raw, Op op) throws IOException {
+            Buffer buffer = new ByteArrayBuffer();
+            if (op.cmd == SftpConstants.SSH_FXP_READDIR || op.cmd == SftpConstants.SSH_FXP_CLOSE) {
+                buffer.putBytes(op.dir.handle);
+            } else {
+                buffer.putString(op.path);
+                if (op.cmd == SftpConstants.SSH_FXP_STAT && version >= SftpConstants.SFTP_V4) {
+                    buffer.putUInt(SftpConstants.SSH_FILEXFER_ATTR_ALL);
+                }
+            }
+            op.id = raw.send(op.cmd, buffer);
+            inFlight.add(op);
+        }
+
+        private void handle(Op op, SftpResponse response) throws IOException {
+            Dir dir = op.dir;
+            switch (op.cmd) {
+                case SftpConstants.SSH_FXP_OPENDIR:
+                    if (response.getType() != SftpConstants.SSH_FXP_HANDLE) {
+                        openDirs--;
+                        checkStatus(response, op);
+                    }
+                    dir.handle = response.getBuffer().getBytes();
+                    queued.add(new Op(isStopping() ? SftpConstants.SSH_FXP_CLOSE : SftpConstants.SSH_FXP_READDIR,
+                            dir.path, dir));
+                    break;
+
+                case SftpConstants.SSH_FXP_READDIR:
+                    if (response.getType() == SftpConstants.SSH_FXP_NAME) {
+                        readEntries(dir, response.getBuffer());
+                        queued.add(new Op(isStopping() ? SftpConstants.SSH_FXP_CLOSE : SftpConstants.SSH_FXP_READDIR,
+                                dir.path, dir));
+                    } else {
+                        SftpStatus status = SftpStatus.parse(response);
+                        queued.add(new Op(SftpConstants.SSH_FXP_CLOSE, dir.path, dir));
+                        if (status.getStatusCode() != SftpConstants.SSH_FX_EOF) {
+                            throw new SftpException(status.getStatusCode(), dir.path + ": " + status.getMessage());
+                        }
+                    }
+                    break;
+
+                case SftpConstants.SSH_FXP_CLOSE:
+                    // Only now is the listing done; some servers cannot remove an open directory
+                    openDirs--;
+                    childDone(dir);
+                    break;
+
+                case SftpConstants.SSH_FXP_STAT:
+                    if (response.getType() == SftpConstants.SSH_FXP_ATTRS) {
+                        entry(dir, op.path, readAttributes(response.getBuffer(), version));
+                    } else {
+                        System.err.println("Skipping broken link " + op.path);
+                    }
+                    childDone(dir);
+                    break;
+
+                case SftpConstants.SSH_FXP_REMOVE:
+                    checkStatus(response, op);
+                    removed++;
+                    childDone(dir);
+                    break;
+
+                case SftpConstants.SSH_FXP_RMDIR:
+                    checkStatus(response, op);
+                    removed++;
+                    childDone(dir.parent);
+                    break;
+
+                default:
+                    throw new IOException("Unexpected request " + op.cmd);
+            }
+        }
+
+        private void checkStatus(SftpResponse response, Op op) throws IOException {
+            if (response.getType() != SftpConstants.SSH_FXP_STATUS) {
+                throw new IOException("Unexpected SFTP response: " +
+                        SftpConstants.getCommandMessageName(response.getType()));
+            }
+            SftpStatus status = SftpStatus.parse(response);
+            if (!status.isOk()) {
+                throw new SftpException(status.getStatusCode(), op.path + ": " + status.getMessage());
+            }
+        }
+
+        private void readEntries(Dir dir, Buffer buffer) throws IOException {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String name = buffer.getString();
+                if (version < SftpConstants.SFTP_V4) {
+                    // Long name, as ls would print it
+                    buffer.getString();
+                }
+                Attributes attrs = readAttributes(buffer, version);
+                if (name.equals(".") || name.equals("..") || isStopping()) continue;
+
+                String path = child(dir.path, name);
+                if (attrs.isSymbolicLink() && followLinks && !deleting) {
+                    dir.pending++;
+                    queued.add(new Op(SftpConstants.SSH_FXP_STAT, path, dir));
+                } else {
+                    entry(dir, path, attrs);
+                }
+            }
+        }
+
+        private void entry(Dir dir, String path, Attributes attrs) throws IOException {
+            if (attrs.isDirectory()) {
+                directories++;
+                if (deleting || visitor.enterDirectory(path, attrs)) {
+                    dir.pending++;
+                    toOpen.push(new Dir(path, dir));
+                }
+                return;
+            }
+            files++;
+            bytes += attrs.getSize();
+            if (deleting) {
+                dir.pending++;
+                queued.add(new Op(SftpConstants.SSH_FXP_REMOVE, path, dir));
+            } else {
+                visitor.visitFile(path, attrs);
+            }
+        }
+
+        /**
+         * One thing a directory was waiting for is done
+         */
+        private void childDone(Dir dir) throws IOException {
+            if (dir == null || --dir.pending > 0 || isStopping()) {
+                return;
+            }
+            if (deleting) {
+                queued.add(new Op(SftpConstants.SSH_FXP_RMDIR, dir.path, dir));
+            } else {
+                visitor.leaveDirectory(dir.path);
+                childDone(dir.parent);
+            }
+        }
+
+        /**
+         * One request at a time, for clients that cannot pipeline
+         */
+        private boolean runSequential(String path) throws IOException {
+            for (DirEntry entry : sftp.readDir(path)) {
+                String name = entry.getFilename();
+                if (name.equals(".") || name.equals("..")) continue;
+                if (cancelled) {
+                    return false;
+                }
+
+                String childPath = child(path, name);
+                Attributes attrs = entry.getAttributes();
+                if (attrs.isSymbolicLink() && followLinks && !deleting) {
+                    try {
+                        attrs = sftp.stat(childPath);
+                    } catch (IOException e) {
+                        System.err.println("Skipping broken link " + childPath);
+                        continue;
+                    }
+                }
+                if (attrs.isDirectory()) {
+                    directories++;
+                    if ((deleting || visitor.enterDirectory(childPath, attrs)) && !runSequential(childPath)) {
+                        return false;
+                    }
+                } else {
+                    files++;
+                    bytes += attrs.getSize();
+                    if (deleting) {
+                        sftp.remove(childPath);
+                        removed++;
+                    } else {
+                        visitor.visitFile(childPath, attrs);
+                    }
+                }
+            }
+            if (deleting) {
+                sftp.rmdir(path);
+                removed++;
+            } else {
+                visitor.leaveDirectory(path);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.xlogistx.jssh.sftp;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a local file only as far as it differs from the remote copy.
+ *
+ * A file whose remote size and modification time match is skipped. Otherwise the server
+ * hashes the remote file in fixed blocks over an exec channel, and only blocks whose MD5
+ * differs from the local block at the same offset are written. Uploaded files get the
+ * local modification time, so the next sync skips them. Servers that cannot run the
+ * checksum command, such as SFTP-only accounts, get a full upload.
+ */
+public class SFTPDeltaSync {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Below this size a full upload costs less than asking for checksums */
+    public static final long MIN_DELTA_SIZE = 1024 * 1024;
+
+    public enum Result {
+        UNCHANGED, DELTA, FULL
+    }
+
+    private final SSHConnection connection;
+    private volatile boolean checksumsAvailable = true;
+
+    public SFTPDeltaSync(SSHConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Bring a remote file up to date with a local one
+     * @param remoteAttrs attributes of the remote file from a directory listing, or null if it does not exist
+     */
+    public Result sync(SFTPTransferEngine engine, File localFile, String remotePath, Attributes remoteAttrs,
+                       SFTPTransferEngine.TransferListener listener) throws IOException {
+        long size = localFile.length();
+        if (remoteAttrs != null && isUnchanged(localFile, remoteAttrs)) {
+            if (listener != null) {
+                listener.bytesTransferred(size);
+            }
+            return Result.UNCHANGED;
+        }
+
+        Result result = Result.FULL;
+        if (remoteAttrs != null && remoteAttrs.isRegularFile() && remoteAttrs.getSize() > 0 &&
+                size >= MIN_DELTA_SIZE && checksumsAvailable) {
+            List<String> remote = remoteChecksums(remotePath, remoteAttrs.getSize());
+            if (remote != null) {
+                BitSet changed = changedBlocks(localFile, remote);
+                long changedBytes = 0;
+                for (int block = changed.nextSetBit(0); block >= 0; block = changed.nextSetBit(block + 1)) {
+                    changedBytes += Math.min(BLOCK_SIZE, size - (long) block * BLOCK_SIZE);
+                }
+                if (listener != null) {
+                    listener.bytesTransferred(size - changedBytes);
+                }
+                engine.patch(localFile, remotePath, changed, BLOCK_SIZE, listener);
+                result = Result.DELTA;
+            }
+        }
+        if (result == Result.FULL) {
+            engine.upload(localFile, remotePath, listener);
+        }
+
+        FileTime mtime = FileTime.fromMillis(localFile.lastModified());
+        engine.getClient().setStat(remotePath, new Attributes().accessTime(mtime).modifyTime(mtime));
+        return result;
+    }
+
+    /**
+     * Same size and, to the second, the same modification time
+     */
+    public static boolean isUnchanged(File localFile, Attributes remoteAttrs) {
+        return remoteAttrs.isRegularFile() && remoteAttrs.getSize() == localFile.length() &&
+                remoteAttrs.getModifyTime() != null &&
+                remoteAttrs.getModifyTime().to(TimeUnit.SECONDS) == localFile.lastModified() / 1000;
+    }
+
+    /**
+     * Remote block checksums, or null if they cannot be had for this file
+     */
+    private List<String> remoteChecksums(String remotePath, long remoteSize) {
+        // Allow for hashing at a modest 20 MB/s on the server
+        long timeoutMs = 60000 + remoteSize / (20 * 1024);
+        List<String> checksums;
+        try {
+            checksums = connection.remoteBlockChecksums(remotePath, BLOCK_SIZE, timeoutMs);
+        } catch (IOException e) {
+            System.err.println("Block checksums unavailable, using full uploads: " + e.getMessage());
+            checksumsAvailable = false;
+            return null;
+        }
+        // A different count means the shell saw another file, e.g. under an SFTP chroot
+        long expected = (remoteSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (checksums.size() != expected) {
+            System.err.println("Block checksums do not match " + remotePath + ", using a full upload");
+            return null;
+        }
+        return checksums;
+    }
+
+    /**
+     * Local blocks that differ from, or lie beyond, the remote ones
+     */
+    private static BitSet changedBlocks(File localFile, List<String> remote) throws IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        BitSet changed = new BitSet();
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        try (FileChannel in = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+            long offset = 0;
+            for (int index = 0; ; index++) {
+                block.clear();
+                while (block.hasRemaining() && in.read(block, offset + block.position()) > 0) {
+                    // Fill the whole block unless the file ends
+                }
+                if (block.position() == 0) {
+                    break;
+                }
+                if (index >= remote.size()) {
+                    changed.set(index);
+                } else {
+                    md5.update(block.array(), 0, block.position());
+                    if (!toHex(md5.digest()).equals(remote.get(index))) {
+                        changed.set(index);
+                    }
+                }
+                offset += block.position();
+            }
+        }
+        return changed;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package io.xlogistx.jssh.sftp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for SFTP transfers: bytes and transfer time, request round trips, how full the
+ * request window was kept, stalls on the SSH channel window, and time spent waiting on the
+ * network versus reading or writing the local disk.
+ *
+ * Safe to update from several transfer threads. A metrics object made with a parent adds
+ * everything to the parent as well, so one transfer's figures also count for its session.
+ */
+public class SFTPMetrics {
+
+    /** Round trips below 125 us land in the first bucket; each further bucket doubles */
+    static final long FIRST_BUCKET_MICROS = 125;
+    static final int BUCKETS = 18;
+
+    private final SFTPMetrics parent;
+    private final long createdAt = System.currentTimeMillis();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder transferNanos = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final AtomicLongArray rttBuckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sends = new LongAdder();
+    private final LongAdder inFlightSum = new LongAdder();
+    private final LongAdder windowSum = new LongAdder();
+    private final AtomicLong maxInFlight = new AtomicLong();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+    private final LongAdder networkNanos = new LongAdder();
+    private final LongAdder diskNanos = new LongAdder();
+
+    public SFTPMetrics() {
+        this(null);
+    }
+
+    public SFTPMetrics(SFTPMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * A file finished, or failed, after moving {@code count} bytes in {@code nanos}
+     */
+    public void recordTransfer(long count, long nanos) {
+        transfers.increment();
+        bytes.add(count);
+        transferNanos.add(nanos);
+        if (parent != null) {
+            parent.recordTransfer(count, nanos);
+        }
+    }
+
+    /**
+     * A request was sent with {@code inFlight} requests outstanding, itself included,
+     * out of at most {@code window}
+     */
+    public void recordSend(int inFlight, int window) {
+        sends.increment();
+        inFlightSum.add(inFlight);
+        windowSum.add(window);
+        maxInFlight.accumulateAndGet(inFlight, Math::max);
+        if (parent != null) {
+            parent.recordSend(inFlight, window);
+        }
+    }
+
+    /**
+     * A reply arrived {@code nanos} after its request was sent
+     */
+    public void recordReply(long nanos) {
+        requests.increment();
+        rttBuckets.incrementAndGet(bucket(nanos / 1000));
+        if (parent != null) {
+            parent.recordReply(nanos);
+        }
+    }
+
+    /**
+     * A send found the SSH channel window too small and waited {@code nanos} for the server
+     */
+    public void recordStall(long nanos) {
+        stalls.increment();
+        stallNanos.add(nanos);
+        if (parent != null) {
+            parent.recordStall(nanos);
+        }
+    }
+
+    /**
+     * Time blocked on the channel, sending a request or waiting for a reply
+     */
+    public void recordNetwork(long nanos) {
+        networkNanos.add(nanos);
+        if (parent != null) {
+            parent.recordNetwork(nanos);
+        }
+    }
+
+    /**
+     * Time spent reading or writing the local file
+     */
+    public void recordDisk(long nanos) {
+        diskNanos.add(nanos);
+        if (parent != null) {
+            parent.recordDisk(nanos);
+        }
+    }
+
+    static int bucket(long micros) {
+        int bucket = 0;
+        long bound = FIRST_BUCKET_MICROS;
+        while (micros >= bound && bucket < BUCKETS - 1) {
+            bound <<= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Upper bound of a histogram bucket in microseconds; the last bucket has none
+     */
+    public static long bucketLimitMicros(int bucket) {
+        return bucket < BUCKETS - 1 ? FIRST_BUCKET_MICROS << bucket : Long.MAX_VALUE;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Bytes per second while transferring; with parallel transfers this is per transfer
+     */
+    public long getBytesPerSecond() {
+        long nanos = transferNanos.sum();
+        return nanos > 0 ? (long) (bytes.sum() * 1e9 / nanos) : 0;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Replies per bucket; bucket i holds round trips below {@link #bucketLimitMicros(int)}
+     */
+    public long[] getRttHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = rttBuckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Round trip that the given fraction of replies came in under, as a bucket bound in
+     * microseconds, or 0 without replies
+     */
+    public long getRttPercentileMicros(double fraction) {
+        long[] counts = getRttHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return bucketLimitMicros(i);
+            }
+        }
+        return bucketLimitMicros(BUCKETS - 1);
+    }
+
+    /**
+     * Requests outstanding on average when one was sent
+     */
+    public double getAverageInFlight() {
+        long count = sends.sum();
+        return count > 0 ? (double) inFlightSum.sum() / count : 0;
+    }
+
+    /**
+     * Share of the request window kept in use, 0 to 1
+     */
+    public double getWindowUsage() {
+        long window = windowSum.sum();
+        return window > 0 ? (double) inFlightSum.sum() / window : 0;
+    }
+
+    public long getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    public long getStallMillis() {
+        return stallNanos.sum() / 1000000;
+    }
+
+    public long getNetworkMillis() {
+        return networkNanos.sum() / 1000000;
+    }
+
+    public long getDiskMillis() {
+        return diskNanos.sum() / 1000000;
+    }
+}
@@ -9,16 +9,32 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * SFTP file browser panel - MindTerm style
  */
 public class SFTPPanel extends JPanel {
     
+    /** Entries in the first page of a remote listing; later pages double up to MAX_PAGE */
+    private static final int FIRST_PAGE = 256;
+    private static final int MAX_PAGE = 16384;
+    
+    /** Directories first, then by name */
+    private static final Comparator<FileItem> FILE_ORDER = (a, b) -> {
+        if (a.isDirectory != b.isDirectory) return a.isDirectory ? -1 : 1;
+        return a.getRealName().compareToIgnoreCase(b.getRealName());
+    };
+    
     private SSHConnection connection;
     private SftpClient sftpClient;
+    private SFTPTransferScheduler transferScheduler;
+    private RemoteDirectoryCache remoteCache;
     
     // Local side
     private String localPath;
@@ -31,16 +47,22 @@ public class SFTPPanel extends JPanel {
     private String remotePath = "/";
     private JComboBox<String> remotePathCombo;
     private JList<FileItem> remoteList;
-    private DefaultListModel<FileItem> remoteListModel;
+    private PagedListModel<FileItem> remoteListModel;
     private JLabel remoteInfoLabel;
+    private SwingWorker<Void, List<FileItem>> remoteLoader;
     
     // Status
     private JLabel statusLabel;
     private JProgressBar progressBar;
+    private JButton cancelBtn;
+    private javax.swing.Timer progressTimer;
+    private final List<RemoteTreeWalker> activeWalkers = new CopyOnWriteArrayList<>();
     
     public SFTPPanel(SSHConnection connection) throws IOException {
         this.connection = connection;
         this.sftpClient = connection.openSftp();
+        this.transferScheduler = new SFTPTransferScheduler(connection);
+        this.remoteCache = new RemoteDirectoryCache(connection, sftpClient);
         this.localPath = System.getProperty("user.home");
         
         // Try to get remote home directory
@@ -94,7 +116,28 @@ public class SFTPPanel extends JPanel {
         progressBar.setPreferredSize(new Dimension(200, 20));
         bottomPanel.add(progressBar, BorderLayout.CENTER);
         
-        // Close button
+        // Byte progress of running transfers, polled rather than pushed from the workers
+        progressTimer = new javax.swing.Timer(250, e -> updateTransferProgress());
+        
+        // Stats, cancel and close buttons
+        JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        JButton statsBtn = new JButton("Stats");
+        statsBtn.setToolTipText("SFTP transfer metrics for this connection");
+        statsBtn.addActionListener(e -> showMetrics());
+        btnPanel.add(statsBtn);
+        
+        cancelBtn = new JButton("Cancel");
+        cancelBtn.setEnabled(false);
+        cancelBtn.addActionListener(e -> {
+            for (SFTPTransferScheduler.Job job : transferScheduler.getActiveJobs()) {
+                job.cancel();
+            }
+            for (RemoteTreeWalker walker : activeWalkers) {
+                walker.cancel();
+            }
+        });
+        btnPanel.add(cancelBtn);
+        
         JButton closeBtn = new JButton("Close");
         closeBtn.addActionListener(e -> {
             // Check if embedded in a split pane (e.g., DetachedSessionFrame)
@@ -114,7 +157,8 @@ public class SFTPPanel extends JPanel {
                 }
             }
         });
-        bottomPanel.add(closeBtn, BorderLayout.EAST);
+        btnPanel.add(closeBtn);
+        bottomPanel.add(btnPanel, BorderLayout.EAST);
         
         add(bottomPanel, BorderLayout.SOUTH);
     }
@@ -247,9 +291,11 @@ public class SFTPPanel extends JPanel {
         pathPanel.add(remoteGoBtn, BorderLayout.EAST);
         
         // File list
-        remoteListModel = new DefaultListModel<>();
+        remoteListModel = new PagedListModel<>(FILE_ORDER);
         remoteList = new JList<>(remoteListModel);
         remoteList.setCellRenderer(new FileListCellRenderer());
+        // Fixed cell size, so the list never measures every entry of a huge directory
+        remoteList.setPrototypeCellValue(new FileItem("[" + "m".repeat(32) + "]", true, 0));
         remoteList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         remoteList.addMouseListener(new MouseAdapter() {
             @Override
@@ -299,7 +345,10 @@ public class SFTPPanel extends JPanel {
         btnPanel2.add(deleteBtn);
         
         JButton refreshBtn = new JButton("Refresh");
-        refreshBtn.addActionListener(e -> loadRemoteDirectory(remotePath));
+        refreshBtn.addActionListener(e -> {
+            remoteCache.invalidate(remotePath);
+            loadRemoteDirectory(remotePath);
+        });
         btnPanel2.add(refreshBtn);
         
         JPanel allBtns = new JPanel(new GridLayout(2, 1));
@@ -333,6 +382,14 @@ public class SFTPPanel extends JPanel {
         gbc.gridy = 1;
         panel.add(uploadBtn, gbc);
         
+        // Sync button (local to remote, changed files and blocks only)
+        JButton syncBtn = new JButton("==>");
+        syncBtn.setToolTipText("Sync (upload only what changed)");
+        syncBtn.setFont(new Font(Font.MONOSPACED, Font.BOLD, 14));
+        syncBtn.addActionListener(e -> syncSelected());
+        gbc.gridy = 2;
+        panel.add(syncBtn, gbc);
+        
         return panel;
     }
     
@@ -387,10 +444,17 @@ public class SFTPPanel extends JPanel {
     }
     
     private void loadRemoteDirectory(String path) {
+        if (remoteLoader != null) {
+            remoteLoader.cancel(false);
+        }
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
         
-        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-            private List<FileItem> items = new ArrayList<>();
+        // Entries are shown page by page as the server sends them
+        SwingWorker<Void, List<FileItem>> worker = new SwingWorker<Void, List<FileItem>>() {
+            private RemoteDirectoryCache.Listing listing;
+            private List<FileItem> pending = new ArrayList<>();
+            private int pageSize = FIRST_PAGE;
+            private boolean shown = false;
             private long totalSize = 0;
             private int fileCount = 0;
             private String error = null;
@@ -398,66 +462,72 @@ public class SFTPPanel extends JPanel {
             @Override
             protected Void doInBackground() {
                 try {
-                    List<DirEntry> entries = new ArrayList<>();
-                    for (DirEntry entry : sftpClient.readDir(path)) {
-                        entries.add(entry);
-                    }
-                    
-                    // Sort: directories first, then by name
-                    entries.sort((a, b) -> {
-                        boolean aDir = a.getAttributes().isDirectory();
-                        boolean bDir = b.getAttributes().isDirectory();
-                        if (aDir != bDir) return aDir ? -1 : 1;
-                        return a.getFilename().compareToIgnoreCase(b.getFilename());
-                    });
-                    
-                    // Add parent entry
-                    if (!path.equals("/")) {
-                        items.add(new FileItem("[..]", true, 0));
-                    }
-                    
-                    for (DirEntry entry : entries) {
-                        String name = entry.getFilename();
-                        if (name.equals(".") || name.equals("..")) continue;
-
-                        Attributes attrs = entry.getAttributes();
-                        boolean isDir = attrs.isDirectory();
-                        boolean isSymlink = attrs.isSymbolicLink();
-                        long size = attrs.getSize();
-
-                        // If it's a symlink, check if it points to a directory
-                        if (isSymlink && !isDir) {
-                            try {
-                                String linkPath = path.equals("/") ? "/" + name : path + "/" + name;
-                                Attributes targetAttrs = sftpClient.stat(linkPath);
-                                if (targetAttrs.isDirectory()) {
-                                    isDir = true;
-                                }
-                            } catch (Exception e) {
-                                // Link target doesn't exist or can't be accessed
-                            }
+                    // Served from the cache when fresh; symlinks are resolved with each batch
+                    listing = remoteCache.get(path, page -> {
+                        if (isCancelled()) {
+                            throw new CancellationException();
                         }
-
-                        if (isDir) {
-                            if (isSymlink) {
-                                items.add(new FileItem("[@" + name + "]", true, true, 0));
-                            } else {
-                                items.add(new FileItem("[" + name + "]", true, false, 0));
-                            }
-                        } else {
-                            items.add(new FileItem(name + " (" + formatSize(size) + ")", false, isSymlink, size));
-                            totalSize += size;
+                        for (DirEntry entry : page.getEntries()) {
+                            pending.add(toFileItem(entry, page.isDirectory(entry)));
                         }
-                        fileCount++;
-                    }
+                        // Growing pages show the first screen at once and keep the merging cheap
+                        if (pending.size() >= pageSize) {
+                            publish(sortedPage());
+                            pageSize = Math.min(pageSize * 2, MAX_PAGE);
+                        }
+                    });
+                } catch (CancellationException e) {
+                    // Another directory was opened
                 } catch (Exception e) {
                     error = e.getMessage();
                 }
                 return null;
             }
             
+            private List<FileItem> sortedPage() {
+                List<FileItem> page = pending;
+                pending = new ArrayList<>();
+                // Sorted off the EDT; the model's sort then finds a single run
+                page.sort(FILE_ORDER);
+                return page;
+            }
+            
+            @Override
+            protected void process(List<List<FileItem>> pages) {
+                if (isCancelled()) return;
+                for (List<FileItem> page : pages) {
+                    show(page);
+                }
+            }
+            
+            private void show(List<FileItem> page) {
+                if (!shown) {
+                    shown = true;
+                    remotePath = path;
+                    remotePathCombo.removeAllItems();
+                    remotePathCombo.addItem(remotePath);
+                    if (path.equals("/")) {
+                        remoteListModel.reset();
+                    } else {
+                        remoteListModel.reset(new FileItem("[..]", true, 0));
+                    }
+                }
+                remoteListModel.addPage(page);
+                for (FileItem item : page) {
+                    if (!item.isDirectory) {
+                        totalSize += item.size;
+                    }
+                    fileCount++;
+                }
+                
+                // A "+" marks a directory cut off at the entry cap
+                String count = fileCount + (listing != null && listing.isTruncated() ? "+" : "");
+                remoteInfoLabel.setText("Remote System : " + count + " files (" + formatSize(totalSize) + ")");
+            }
+            
             @Override
             protected void done() {
+                if (isCancelled()) return;
                 setCursor(Cursor.getDefaultCursor());
                 
                 if (error != null) {
@@ -465,26 +535,50 @@ public class SFTPPanel extends JPanel {
                     return;
                 }
                 
-                remotePath = path;
-                remoteListModel.clear();
-                remotePathCombo.removeAllItems();
-                remotePathCombo.addItem(remotePath);
-                
-                for (FileItem item : items) {
-                    remoteListModel.addElement(item);
-                }
+                // The last, partial page, or an empty directory
+                show(sortedPage());
                 
-                remoteInfoLabel.setText("Remote System : " + fileCount + " files (" + formatSize(totalSize) + ")");
+                // Have the next step up or down the tree ready
+                remoteCache.prefetch(listing);
             }
         };
+        remoteLoader = worker;
         worker.execute();
     }
     
+    private FileItem toFileItem(DirEntry entry, boolean isDir) {
+        String name = entry.getFilename();
+        Attributes attrs = entry.getAttributes();
+        boolean isSymlink = attrs.isSymbolicLink();
+        if (isDir) {
+            return new FileItem(isSymlink ? "[@" + name + "]" : "[" + name + "]", true, isSymlink, 0);
+        }
+        long size = attrs.getSize();
+        return new FileItem(name + " (" + formatSize(size) + ")", false, isSymlink, size);
+    }
+    
     private void uploadSelected() {
+        List<File> filesToUpload = getSelectedLocalFiles();
+        if (filesToUpload == null) return;
+        
+        transferFiles(filesToUpload, remotePath, false);
+    }
+    
+    private void syncSelected() {
+        List<File> filesToSync = getSelectedLocalFiles();
+        if (filesToSync == null) return;
+        
+        transferFiles(filesToSync, remotePath, true);
+    }
+    
+    /**
+     * Selected local files, or null if there are none
+     */
+    private List<File> getSelectedLocalFiles() {
         List<FileItem> selected = localList.getSelectedValuesList();
         if (selected.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No files selected", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
+            return null;
         }
         
         // Filter out parent directory
@@ -495,9 +589,7 @@ public class SFTPPanel extends JPanel {
             filesToUpload.add(new File(localPath, name));
         }
         
-        if (filesToUpload.isEmpty()) return;
-        
-        transferFiles(filesToUpload, remotePath, true);
+        return filesToUpload.isEmpty() ? null : filesToUpload;
     }
     
     private void downloadSelected() {
@@ -519,91 +611,142 @@ public class SFTPPanel extends JPanel {
         transferFilesFromRemote(filesToDownload, localPath);
     }
     
-    private void transferFiles(List<File> localFiles, String remoteDir, boolean upload) {
-        progressBar.setValue(0);
-        progressBar.setString("Preparing...");
+    /**
+     * Upload files and directories; a sync compares them with the remote tree and
+     * sends only what changed
+     */
+    private void transferFiles(List<File> localFiles, String remoteDir, boolean sync) {
+        String action = sync ? "Sync" : "Upload";
+        SFTPTransferScheduler.Job job = startJob(sync ? "Syncing" : "Uploading");
         
-        SwingWorker<Void, Integer> worker = new SwingWorker<Void, Integer>() {
-            private int totalFiles = 0;
-            private int processedFiles = 0;
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            private SftpClient planSftp;
             
             @Override
             protected Void doInBackground() throws Exception {
-                // Count total files
-                for (File file : localFiles) {
-                    totalFiles += countFiles(file);
-                }
-                
-                for (File file : localFiles) {
-                    uploadFileOrDirectory(file, remoteDir);
-                }
-                return null;
-            }
-            
-            private int countFiles(File file) {
-                if (file.isFile()) return 1;
-                int count = 0;
-                File[] children = file.listFiles();
-                if (children != null) {
-                    for (File child : children) {
-                        count += countFiles(child);
+                // Files start copying on the scheduler's workers while the walk goes on.
+                // The walk's mkdirs and listings use a channel of their own, as requests on
+                // the panel's channel must not overlap with listings loading on it.
+                try (SftpClient sftp = connection.openSftp()) {
+                    planSftp = sftp;
+                    Map<String, Attributes> existing = sync ? listRemote(planSftp, remoteDir) : null;
+                    for (File file : localFiles) {
+                        if (!uploadFileOrDirectory(file, remoteDir, existing)) break;
                     }
+                } catch (Exception e) {
+                    job.cancel();
+                    throw e;
+                } finally {
+                    job.finish();
                 }
-                return count;
+                job.await();
+                return null;
             }
             
-            private void uploadFileOrDirectory(File file, String remoteDirPath) throws IOException {
-                String rPath = remoteDirPath.equals("/") ? 
+            /**
+             * Queue a file, or everything below a directory, in one pass over the local tree;
+             * types and sizes come from the same stat
+             * @param existing remote entries of the target directory when syncing, otherwise null
+             * @return false once the job is cancelled or failed
+             */
+            private boolean uploadFileOrDirectory(File file, String remoteDirPath,
+                                                  Map<String, Attributes> existing) throws IOException {
+                Path root = file.toPath();
+                String remoteRoot = remoteDirPath.equals("/") ?
                     "/" + file.getName() : remoteDirPath + "/" + file.getName();
+                // Remote entries of each directory being walked, when syncing
+                Deque<Map<String, Attributes>> listings = new ArrayDeque<>();
+                boolean[] accepted = {true};
                 
-                if (file.isDirectory()) {
-                    // Create remote directory
-                    try {
-                        sftpClient.mkdir(rPath);
-                    } catch (IOException e) {
-                        // Directory might already exist
+                Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                        new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        String rPath = remotePathOf(dir);
+                        Attributes remote = remoteEntry(dir);
+                        if (remote != null && remote.isDirectory()) {
+                            listings.push(listRemote(planSftp, rPath));
+                        } else {
+                            // Create remote directory
+                            try {
+                                planSftp.mkdir(rPath);
+                            } catch (IOException e) {
+                                // Directory might already exist
+                            }
+                            if (existing != null) {
+                                listings.push(new HashMap<>());
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                        String rPath = remotePathOf(path);
+                        // Queue file; false once the job is cancelled or failed
+                        accepted[0] = existing != null ?
+                            job.addSync(path.toFile(), rPath, remoteEntry(path), attrs.size()) :
+                            job.addUpload(path.toFile(), rPath, attrs.size());
+                        return accepted[0] ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                    }
+                    
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException e) {
+                        // Unreadable entries and link loops are left out, as listFiles did
+                        System.err.println("Skipping " + path + ": " + e.getMessage());
+                        return FileVisitResult.CONTINUE;
                     }
                     
-                    // Upload contents
-                    File[] children = file.listFiles();
-                    if (children != null) {
-                        for (File child : children) {
-                            uploadFileOrDirectory(child, rPath);
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                        if (existing != null) {
+                            listings.pop();
                         }
+                        return FileVisitResult.CONTINUE;
                     }
-                } else {
-                    // Upload file
-                    publish(++processedFiles);
-                    try (InputStream is = new FileInputStream(file);
-                         OutputStream os = sftpClient.write(rPath)) {
-                        byte[] buf = new byte[32768];
-                        int n;
-                        while ((n = is.read(buf)) > 0) {
-                            os.write(buf, 0, n);
+                    
+                    private String remotePathOf(Path path) {
+                        StringBuilder rPath = new StringBuilder(remoteRoot);
+                        for (Path name : root.relativize(path)) {
+                            if (!name.toString().isEmpty()) {
+                                rPath.append('/').append(name);
+                            }
                         }
+                        return rPath.toString();
                     }
-                }
-            }
-            
-            @Override
-            protected void process(List<Integer> chunks) {
-                int current = chunks.get(chunks.size() - 1);
-                int percent = totalFiles > 0 ? (current * 100 / totalFiles) : 0;
-                progressBar.setValue(percent);
-                progressBar.setString("Uploading " + current + "/" + totalFiles);
+                    
+                    /**
+                     * Remote counterpart of a local entry when syncing, from its parent's listing
+                     */
+                    private Attributes remoteEntry(Path path) {
+                        Map<String, Attributes> parent = path.equals(root) ? existing : listings.peek();
+                        return parent != null ? parent.get(path.getFileName().toString()) : null;
+                    }
+                });
+                return accepted[0];
             }
             
             @Override
             protected void done() {
+                endJob();
                 try {
                     get();
                     progressBar.setValue(100);
-                    progressBar.setString("Upload complete");
+                    progressBar.setString(sync ?
+                        "Sync complete (" + job.getSkippedFiles() + " of " + job.getTotalFiles() + " files unchanged)" :
+                        "Upload complete");
+                    remoteCache.invalidateTree(remoteDir);
                     loadRemoteDirectory(remotePath);
                 } catch (Exception e) {
+                    remoteCache.invalidateTree(remoteDir);
+                    if (isCancellation(e)) {
+                        progressBar.setString(action + " cancelled");
+                        loadRemoteDirectory(remotePath);
+                        return;
+                    }
                     progressBar.setString("Error: " + e.getMessage());
                     JOptionPane.showMessageDialog(SFTPPanel.this, 
-                        "Upload failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                        action + " failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
         };
@@ -611,86 +754,69 @@ public class SFTPPanel extends JPanel {
     }
     
     private void transferFilesFromRemote(List<String> remoteFiles, String localDir) {
-        progressBar.setValue(0);
-        progressBar.setString("Preparing...");
+        SFTPTransferScheduler.Job job = startJob("Downloading");
+        String sourceDir = remotePath;
         
-        SwingWorker<Void, Integer> worker = new SwingWorker<Void, Integer>() {
-            private int totalFiles = 0;
-            private int processedFiles = 0;
-            
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
-                // Count total files
-                for (String name : remoteFiles) {
-                    String rPath = remotePath.equals("/") ? "/" + name : remotePath + "/" + name;
-                    totalFiles += countRemoteFiles(rPath);
-                }
-                
-                for (String name : remoteFiles) {
-                    String rPath = remotePath.equals("/") ? "/" + name : remotePath + "/" + name;
-                    downloadFileOrDirectory(rPath, localDir);
-                }
-                return null;
-            }
-            
-            private int countRemoteFiles(String path) throws IOException {
-                Attributes attrs = sftpClient.stat(path);
-                if (attrs.isRegularFile()) return 1;
-                
-                int count = 0;
-                for (DirEntry entry : sftpClient.readDir(path)) {
-                    String name = entry.getFilename();
-                    if (name.equals(".") || name.equals("..")) continue;
-                    count += countRemoteFiles(path + "/" + name);
-                }
-                return count;
-            }
-            
-            private void downloadFileOrDirectory(String rPath, String localDirPath) throws IOException {
-                Attributes attrs = sftpClient.stat(rPath);
-                String name = rPath.substring(rPath.lastIndexOf('/') + 1);
-                File localFile = new File(localDirPath, name);
-                
-                if (attrs.isDirectory()) {
-                    // Create local directory
-                    localFile.mkdirs();
-                    
-                    // Download contents
-                    for (DirEntry entry : sftpClient.readDir(rPath)) {
-                        String childName = entry.getFilename();
-                        if (childName.equals(".") || childName.equals("..")) continue;
-                        downloadFileOrDirectory(rPath + "/" + childName, localFile.getAbsolutePath());
-                    }
-                } else {
-                    // Download file
-                    publish(++processedFiles);
-                    try (InputStream is = sftpClient.read(rPath);
-                         OutputStream os = new FileOutputStream(localFile)) {
-                        byte[] buf = new byte[32768];
-                        int n;
-                        while ((n = is.read(buf)) > 0) {
-                            os.write(buf, 0, n);
+                // Files start copying on the scheduler's workers while the walk goes on.
+                // The walk has a channel of its own, so its pipelined reads don't mix with
+                // listings on the panel's.
+                try (SftpClient walkSftp = connection.openSftp()) {
+                    RemoteTreeWalker walker = new RemoteTreeWalker(walkSftp);
+                    walker.setFollowLinks(true);
+                    RemoteTreeWalker.Visitor visitor = new RemoteTreeWalker.Visitor() {
+                        @Override
+                        public boolean enterDirectory(String path, Attributes attrs) {
+                            localFile(path).mkdirs();
+                            return true;
                         }
+                        
+                        @Override
+                        public void visitFile(String path, Attributes attrs) {
+                            // Queue file; false once the job is cancelled or failed
+                            if (!job.addDownload(path, localFile(path), attrs.getSize())) {
+                                walker.cancel();
+                            }
+                        }
+                    };
+                    for (String name : remoteFiles) {
+                        String rPath = sourceDir.equals("/") ? "/" + name : sourceDir + "/" + name;
+                        if (!walker.walk(rPath, visitor)) break;
                     }
+                } catch (Exception e) {
+                    job.cancel();
+                    throw e;
+                } finally {
+                    job.finish();
                 }
+                job.await();
+                return null;
             }
             
-            @Override
-            protected void process(List<Integer> chunks) {
-                int current = chunks.get(chunks.size() - 1);
-                int percent = totalFiles > 0 ? (current * 100 / totalFiles) : 0;
-                progressBar.setValue(percent);
-                progressBar.setString("Downloading " + current + "/" + totalFiles);
+            /**
+             * Where a remote path below the source directory goes locally
+             */
+            private File localFile(String rPath) {
+                String relative = rPath.substring(sourceDir.equals("/") ? 1 : sourceDir.length() + 1);
+                return new File(localDir, relative);
             }
             
             @Override
             protected void done() {
+                endJob();
                 try {
                     get();
                     progressBar.setValue(100);
                     progressBar.setString("Download complete");
                     loadLocalDirectory(localPath);
                 } catch (Exception e) {
+                    if (isCancellation(e)) {
+                        progressBar.setString("Download cancelled");
+                        loadLocalDirectory(localPath);
+                        return;
+                    }
                     progressBar.setString("Error: " + e.getMessage());
                     JOptionPane.showMessageDialog(SFTPPanel.this,
                         "Download failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -700,6 +826,147 @@ public class SFTPPanel extends JPanel {
         worker.execute();
     }
     
+    /**
+     * Entries of a remote directory by name, or none if it cannot be read
+     */
+    private static Map<String, Attributes> listRemote(SftpClient sftp, String dir) {
+        Map<String, Attributes> entries = new HashMap<>();
+        try {
+            for (DirEntry entry : sftp.readDir(dir)) {
+                String name = entry.getFilename();
+                if (name.equals(".") || name.equals("..")) continue;
+                entries.put(name, entry.getAttributes());
+            }
+        } catch (IOException e) {
+            // Missing directory; everything gets uploaded
+        }
+        return entries;
+    }
+    
+    private SFTPTransferScheduler.Job startJob(String name) {
+        SFTPTransferScheduler.Job job = transferScheduler.newJob(name, null);
+        progressBar.setValue(0);
+        progressBar.setString(name + "...");
+        cancelBtn.setEnabled(true);
+        progressTimer.start();
+        return job;
+    }
+    
+    private void endJob() {
+        if (transferScheduler.getActiveJobs().isEmpty() && activeWalkers.isEmpty()) {
+            progressTimer.stop();
+            cancelBtn.setEnabled(false);
+        }
+    }
+    
+    /**
+     * Show bytes and files done across all running transfers, with the rate and, once
+     * every job is planned, the time left
+     */
+    private void updateTransferProgress() {
+        List<SFTPTransferScheduler.Job> jobs = transferScheduler.getActiveJobs();
+        if (jobs.isEmpty()) {
+            // Deletes have no bytes to count, only entries removed
+            if (!activeWalkers.isEmpty()) {
+                int removed = 0;
+                for (RemoteTreeWalker walker : activeWalkers) {
+                    removed += walker.getRemoved();
+                }
+                progressBar.setString("Deleting... " + removed + " removed");
+            }
+            return;
+        }
+        
+        long done = 0, total = 0, rate = 0;
+        int files = 0, totalFiles = 0;
+        boolean planning = false;
+        for (SFTPTransferScheduler.Job job : jobs) {
+            done += job.getTransferredBytes();
+            total += job.getTotalBytes();
+            rate += job.getBytesPerSecond();
+            files += job.getCompletedFiles();
+            totalFiles += job.getTotalFiles();
+            planning |= job.isPlanning();
+        }
+        String verb = jobs.size() == 1 ? jobs.get(0).getName() : "Transferring";
+        progressBar.setValue(total > 0 ? (int) (done * 100 / total) : 0);
+        
+        StringBuilder text = new StringBuilder(verb + " " + formatSize(done) + " / " + formatSize(total) +
+            " (" + files + "/" + totalFiles + " files)");
+        if (rate > 0) {
+            text.append(", ").append(formatSize(rate)).append("/s");
+        }
+        if (planning) {
+            // Totals still grow while the walk finds more files
+            text.append(", scanning...");
+        } else if (rate > 0) {
+            text.append(", ").append(formatDuration(Math.max(0, total - done) / rate)).append(" left");
+        }
+        progressBar.setString(text.toString());
+    }
+    
+    /**
+     * Live view of the connection's transfer metrics, refreshed while open
+     */
+    private void showMetrics() {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this), "SFTP Metrics");
+        JTextArea text = new JTextArea(24, 60);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setText(describeMetrics(connection.getSftpMetrics()));
+        dialog.add(new JScrollPane(text));
+        
+        javax.swing.Timer refresh = new javax.swing.Timer(1000,
+            e -> text.setText(describeMetrics(connection.getSftpMetrics())));
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refresh.stop();
+            }
+        });
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        refresh.start();
+    }
+    
+    private String describeMetrics(SFTPMetrics metrics) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Transfers        %d files, %s%n", metrics.getTransfers(), formatSize(metrics.getBytes())));
+        sb.append(String.format("Throughput       %s/s per transfer%n", formatSize(metrics.getBytesPerSecond())));
+        sb.append(String.format("Requests         %d, RTT p50 < %s, p90 < %s, p99 < %s%n", metrics.getRequests(),
+            formatMicros(metrics.getRttPercentileMicros(0.5)), formatMicros(metrics.getRttPercentileMicros(0.9)),
+            formatMicros(metrics.getRttPercentileMicros(0.99))));
+        sb.append(String.format("Request window   %.1f in flight on average (%.0f%%), max %d%n",
+            metrics.getAverageInFlight(), metrics.getWindowUsage() * 100, metrics.getMaxInFlight()));
+        sb.append(String.format("Channel stalls   %d, %d ms%n", metrics.getStalls(), metrics.getStallMillis()));
+        sb.append(String.format("Waiting on       network %d ms, local disk %d ms%n",
+            metrics.getNetworkMillis(), metrics.getDiskMillis()));
+        
+        sb.append(String.format("%nRTT histogram%n"));
+        long[] histogram = metrics.getRttHistogram();
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+            long limit = SFTPMetrics.bucketLimitMicros(i);
+            String bucket = limit == Long.MAX_VALUE ?
+                ">= " + formatMicros(SFTPMetrics.bucketLimitMicros(i - 1)) : "< " + formatMicros(limit);
+            sb.append(String.format("  %-12s %10d%n", bucket, histogram[i]));
+        }
+        return sb.toString();
+    }
+    
+    private static String formatMicros(long micros) {
+        if (micros == Long.MAX_VALUE) return "-";
+        if (micros < 1000) return String.format("%.3f ms", micros / 1000.0);
+        return (micros / 1000) + " ms";
+    }
+    
+    private static boolean isCancellation(Exception e) {
+        Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+        return cause instanceof InterruptedIOException;
+    }
+    
     // Local operations
     private void browseLocalDir() {
         JFileChooser chooser = new JFileChooser(localPath);
@@ -784,7 +1051,7 @@ public class SFTPPanel extends JPanel {
     private void browseRemoteDir() {
         // Create a dialog to browse remote directories
         RemoteDirChooser chooser = new RemoteDirChooser(
-            SwingUtilities.getWindowAncestor(this), sftpClient, remotePath);
+            SwingUtilities.getWindowAncestor(this), remoteCache, remotePath);
         chooser.setVisible(true);
         
         String selected = chooser.getSelectedPath();
@@ -799,6 +1066,7 @@ public class SFTPPanel extends JPanel {
             try {
                 String newPath = remotePath.equals("/") ? "/" + name.trim() : remotePath + "/" + name.trim();
                 sftpClient.mkdir(newPath);
+                remoteCache.invalidate(remotePath);
                 loadRemoteDirectory(remotePath);
             } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "Failed to create directory: " + e.getMessage(), 
@@ -818,6 +1086,8 @@ public class SFTPPanel extends JPanel {
                 String oldPath = remotePath.equals("/") ? "/" + oldName : remotePath + "/" + oldName;
                 String newPath = remotePath.equals("/") ? "/" + newName.trim() : remotePath + "/" + newName.trim();
                 sftpClient.rename(oldPath, newPath);
+                remoteCache.invalidate(remotePath);
+                remoteCache.invalidateTree(oldPath);
                 loadRemoteDirectory(remotePath);
             } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "Failed to rename: " + e.getMessage(),
@@ -841,33 +1111,69 @@ public class SFTPPanel extends JPanel {
             "Delete " + count + " item(s)?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
+            List<String> paths = new ArrayList<>();
             for (FileItem item : selected) {
                 if (item.name.equals("[..]")) continue;
                 String name = item.getRealName();
-                String path = remotePath.equals("/") ? "/" + name : remotePath + "/" + name;
-                try {
-                    deleteRemoteRecursive(path);
-                } catch (IOException e) {
-                    JOptionPane.showMessageDialog(this, "Failed to delete: " + e.getMessage(),
-                        "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                paths.add(remotePath.equals("/") ? "/" + name : remotePath + "/" + name);
             }
-            loadRemoteDirectory(remotePath);
+            deleteRemotePaths(paths, remotePath);
         }
     }
     
-    private void deleteRemoteRecursive(String path) throws IOException {
-        Attributes attrs = sftpClient.stat(path);
-        if (attrs.isDirectory()) {
-            for (DirEntry entry : sftpClient.readDir(path)) {
-                String name = entry.getFilename();
-                if (name.equals(".") || name.equals("..")) continue;
-                deleteRemoteRecursive(path + "/" + name);
+    /**
+     * Remove files and whole trees in the background, with removes pipelined on a channel of their own
+     */
+    private void deleteRemotePaths(List<String> paths, String dir) {
+        progressBar.setValue(0);
+        progressBar.setString("Deleting...");
+        cancelBtn.setEnabled(true);
+        progressTimer.start();
+        
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                try (SftpClient deleteSftp = connection.openSftp()) {
+                    RemoteTreeWalker walker = new RemoteTreeWalker(deleteSftp);
+                    activeWalkers.add(walker);
+                    try {
+                        for (String path : paths) {
+                            if (!walker.delete(path)) {
+                                throw new InterruptedIOException("Delete cancelled");
+                            }
+                        }
+                    } finally {
+                        activeWalkers.remove(walker);
+                    }
+                }
+                return null;
             }
-            sftpClient.rmdir(path);
-        } else {
-            sftpClient.remove(path);
-        }
+            
+            @Override
+            protected void done() {
+                endJob();
+                for (String path : paths) {
+                    remoteCache.invalidateTree(path);
+                }
+                remoteCache.invalidate(dir);
+                loadRemoteDirectory(remotePath);
+                try {
+                    get();
+                    progressBar.setValue(100);
+                    progressBar.setString("Delete complete");
+                } catch (Exception e) {
+                    if (isCancellation(e)) {
+                        progressBar.setString("Delete cancelled");
+                        return;
+                    }
+                    Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+                    progressBar.setString("Error: " + cause.getMessage());
+                    JOptionPane.showMessageDialog(SFTPPanel.this, "Failed to delete: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
     }
     
     // Utility methods
@@ -878,6 +1184,11 @@ public class SFTPPanel extends JPanel {
         return path.substring(0, lastSlash);
     }
     
+    private static String formatDuration(long seconds) {
+        if (seconds < 3600) return String.format("%d:%02d", seconds / 60, seconds % 60);
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+    
     private String formatSize(long size) {
         if (size < 1024) return size + " B";
         if (size < 1024 * 1024) return String.format("%.0f kB", size / 1024.0);
@@ -886,6 +1197,9 @@ public class SFTPPanel extends JPanel {
     }
     
     public void close() {
+        progressTimer.stop();
+        transferScheduler.close();
+        remoteCache.close();
         try {
             if (sftpClient != null) {
                 sftpClient.close();
@@ -899,6 +1213,8 @@ public class SFTPPanel extends JPanel {
         boolean isDirectory;
         boolean isSymlink;
         long size;
+        // Parsed once; sorting a large listing asks for it many times
+        private final String realName;
 
         FileItem(String name, boolean isDirectory, long size) {
             this(name, isDirectory, false, size);
@@ -909,9 +1225,14 @@ public class SFTPPanel extends JPanel {
             this.isDirectory = isDirectory;
             this.isSymlink = isSymlink;
             this.size = size;
+            this.realName = parseRealName(name);
         }
 
         String getRealName() {
+            return realName;
+        }
+
+        private static String parseRealName(String name) {
             // Handle [..] and [dirname] and [@linkname]
             if (name.equals("[..]")) {
                 return "..";
@@ -976,7 +1297,7 @@ public class SFTPPanel extends JPanel {
     
     // Remote directory chooser dialog
     private static class RemoteDirChooser extends JDialog {
-        private SftpClient sftpClient;
+        private RemoteDirectoryCache remoteCache;
         private String currentPath;
         private String selectedPath = null;
         
@@ -984,9 +1305,9 @@ public class SFTPPanel extends JPanel {
         private JList<String> dirList;
         private DefaultListModel<String> dirListModel;
         
-        public RemoteDirChooser(Window owner, SftpClient sftpClient, String initialPath) {
+        public RemoteDirChooser(Window owner, RemoteDirectoryCache remoteCache, String initialPath) {
             super(owner, "Select Remote Directory", ModalityType.APPLICATION_MODAL);
-            this.sftpClient = sftpClient;
+            this.remoteCache = remoteCache;
             this.currentPath = initialPath;
             
             initUI();
@@ -1068,11 +1389,10 @@ public class SFTPPanel extends JPanel {
                 
                 // List directories only
                 List<String> dirs = new ArrayList<>();
-                for (DirEntry entry : sftpClient.readDir(path)) {
-                    String name = entry.getFilename();
-                    if (name.equals(".") || name.equals("..")) continue;
+                RemoteDirectoryCache.Listing listing = remoteCache.get(path);
+                for (DirEntry entry : listing.getEntries()) {
                     if (entry.getAttributes().isDirectory()) {
-                        dirs.add(name);
+                        dirs.add(entry.getFilename());
                     }
                 }
                 
@@ -1083,6 +1403,7 @@ public class SFTPPanel extends JPanel {
                 
                 currentPath = path;
                 pathField.setText(path);
+                remoteCache.prefetch(listing);
                 
             } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), 
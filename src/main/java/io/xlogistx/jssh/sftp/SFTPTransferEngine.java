@@ -0,0 +1,772 @@
+package io.xlogistx.jssh.sftp;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.channel.RemoteWindow;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.sftp.client.RawSftpClient;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+import org.apache.sshd.sftp.client.impl.SftpResponse;
+import org.apache.sshd.sftp.client.impl.SftpStatus;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Copies files over an SFTP channel with several requests in flight.
+ *
+ * Downloads keep up to {@code window} SSH_FXP_READ requests of {@code chunkSize} bytes
+ * outstanding at explicit offsets, and uploads do the same with SSH_FXP_WRITE, so
+ * throughput is bounded by bandwidth rather than by one round trip per chunk.
+ * An engine drives one SFTP channel and is used by one thread at a time.
+ *
+ * The local side goes through FileChannel and buffers owned by the engine, so a worker
+ * reuses them from file to file: a direct buffer for file I/O and one SSH_FXP_WRITE
+ * request buffer that uploads read into and the client sends as is. Uploads of large
+ * files read from a memory-mapped window instead of the direct buffer.
+ *
+ * Each transfer records its round trips, window use, channel stalls and disk and network
+ * time in an {@link SFTPMetrics}, which also adds them to the metrics set on the engine.
+ *
+ * When resumable, progress on files of at least the resume threshold is recorded in a
+ * {@link TransferCheckpoint}. A later transfer of the same file continues from the recorded
+ * offset if the source is unchanged and the block just before the offset is identical on
+ * both sides. Smaller files just start over.
+ */
+public class SFTPTransferEngine {
+
+    public static final int DEFAULT_WINDOW = 64;
+    public static final int DEFAULT_CHUNK_SIZE = 32768;
+
+    /** Largest read most servers will answer in full */
+    public static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    /** Bytes compared before the resume offset */
+    static final int VERIFY_BLOCK = 64 * 1024;
+
+    /** Smallest file a resumable engine keeps a checkpoint for */
+    public static final long RESUME_THRESHOLD = 16L * 1024 * 1024;
+
+    /** Uploads from files this large are read through a mapped window */
+    public static final long MAP_THRESHOLD = 64L * 1024 * 1024;
+
+    static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+    /** SFTP length, type and id, written in front of a request by the client */
+    private static final int SFTP_HEADER = 9;
+
+    /** SSH packet length, padding length, message type, recipient channel and data length */
+    private static final int CHANNEL_DATA_HEADER = SshConstants.SSH_PACKET_HEADER_LEN + 1 + 2 * Integer.BYTES;
+
+    public interface TransferListener {
+        /**
+         * Called on the transferring thread after each chunk
+         */
+        void bytesTransferred(long count);
+
+        /**
+         * Polled between chunks; a cancelled transfer fails with InterruptedIOException
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private final SftpClient sftp;
+    private final int window;
+    private final int chunkSize;
+    private boolean resumable = false;
+    private long resumeThreshold = RESUME_THRESHOLD;
+    private ByteBuffer localBuffer;
+    private Buffer writeBuffer;
+    private SFTPMetrics metrics;
+    private SFTPMetrics transferMetrics = new SFTPMetrics();
+    private long transferStart;
+    private long moved;
+
+    public SFTPTransferEngine(SftpClient sftp) {
+        this(sftp, DEFAULT_WINDOW, DEFAULT_CHUNK_SIZE);
+    }
+
+    public SFTPTransferEngine(SftpClient sftp, int window, int chunkSize) {
+        this.sftp = sftp;
+        this.window = Math.max(1, window);
+        this.chunkSize = Math.max(1024, Math.min(chunkSize, MAX_CHUNK_SIZE));
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public SftpClient getClient() {
+        return sftp;
+    }
+
+    /**
+     * Keep checkpoints and continue interrupted transfers instead of starting over
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Smallest file that keeps a checkpoint when resumable; {@link #RESUME_THRESHOLD} by default
+     */
+    public void setResumeThreshold(long resumeThreshold) {
+        this.resumeThreshold = resumeThreshold;
+    }
+
+    public long getResumeThreshold() {
+        return resumeThreshold;
+    }
+
+    /**
+     * Metrics that every transfer adds to, usually those of the session; may be null
+     */
+    public void setMetrics(SFTPMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SFTPMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Metrics of the latest transfer, or of the one running
+     */
+    public SFTPMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
+
+    private void beginTransfer() {
+        transferMetrics = new SFTPMetrics(metrics);
+        transferStart = System.nanoTime();
+        moved = 0;
+    }
+
+    private void endTransfer() {
+        transferMetrics.recordTransfer(moved, System.nanoTime() - transferStart);
+    }
+
+    /**
+     * Download a remote file, replacing the local file
+     * @return number of bytes written, including any resumed part
+     */
+    public long download(String remotePath, File localFile, TransferListener listener) throws IOException {
+        beginTransfer();
+        try {
+            return downloadFile(remotePath, localFile, listener);
+        } finally {
+            endTransfer();
+        }
+    }
+
+    private long downloadFile(String remotePath, File localFile, TransferListener listener) throws IOException {
+        if (!(sftp instanceof RawSftpClient)) {
+            return copyStream(remotePath, localFile, listener);
+        }
+        RawSftpClient raw = (RawSftpClient) sftp;
+
+        try (SftpClient.CloseableHandle handle = sftp.open(remotePath, SftpClient.OpenMode.Read);
+             FileChannel out = FileChannel.open(localFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // Without a size we keep requesting until the server reports EOF
+            Attributes attrs = sftp.stat(handle);
+            boolean sized = attrs.getFlags().contains(SftpClient.Attribute.Size);
+            long size = sized ? attrs.getSize() : Long.MAX_VALUE;
+            long mtime = attrs.getModifyTime() != null ? attrs.getModifyTime().toMillis() : -1;
+            byte[] id = handle.getIdentifier();
+
+            TransferCheckpoint checkpoint = null;
+            long start = 0;
+            if (resumable && sized && size >= resumeThreshold) {
+                checkpoint = TransferCheckpoint.open(false, site(), remotePath, localFile);
+                start = Math.min(checkpoint.getOffset(size, mtime), out.size());
+                if (start > 0 && !sameTail(out, handle, start)) {
+                    start = 0;
+                }
+            }
+            if (start == 0) {
+                out.truncate(0);
+            } else if (listener != null) {
+                listener.bytesTransferred(start);
+            }
+
+            ArrayDeque<Request> pending = new ArrayDeque<>(window);
+            Request current = null;
+            long nextOffset = start;
+            long total = start;
+            long saved = start;
+            boolean eof = false;
+            boolean complete = false;
+
+            try {
+                while (true) {
+                    checkCancelled(listener);
+                    if (checkpoint != null) {
+                        long verified = verifiedOffset(pending, null, nextOffset);
+                        if (verified - saved >= TransferCheckpoint.SAVE_INTERVAL) {
+                            checkpoint.save(size, mtime, verified);
+                            saved = verified;
+                        }
+                    }
+                    while (!eof && pending.size() < window && nextOffset < size) {
+                        int length = (int) Math.min(chunkSize, size - nextOffset);
+                        sendRead(raw, pending, id, nextOffset, length);
+                        nextOffset += length;
+                    }
+
+                    Request request = pending.poll();
+                    if (request == null) {
+                        break;
+                    }
+                    current = request;
+
+                    SftpResponse response = SftpResponse.parse(SftpConstants.SSH_FXP_READ, receive(raw, request));
+                    if (response.getType() == SftpConstants.SSH_FXP_DATA) {
+                        Buffer buffer = response.getBuffer();
+                        int n = buffer.getInt();
+                        if (n <= 0) {
+                            eof = true;
+                            current = null;
+                            continue;
+                        }
+                        ByteBuffer data = localBuffer(n);
+                        data.put(buffer.array(), buffer.rpos(), n).flip();
+                        long position = request.offset;
+                        long diskStart = System.nanoTime();
+                        while (data.hasRemaining()) {
+                            position += out.write(data, position);
+                        }
+                        transferMetrics.recordDisk(System.nanoTime() - diskStart);
+                        total += n;
+                        moved += n;
+                        if (listener != null) {
+                            listener.bytesTransferred(n);
+                        }
+
+                        // Servers may answer with less than asked; fetch the rest separately
+                        if (n < request.length) {
+                            sendRead(raw, pending, id, request.offset + n, request.length - n);
+                        }
+                    } else if (response.getType() == SftpConstants.SSH_FXP_STATUS) {
+                        SftpStatus status = SftpStatus.parse(response);
+                        if (status.getStatusCode() != SftpConstants.SSH_FX_EOF) {
+                            throw new SftpException(status.getStatusCode(), status.getMessage());
+                        }
+                        eof = true;
+                    } else {
+                        throw new IOException("Unexpected SFTP response: " +
+                                SftpConstants.getCommandMessageName(response.getType()));
+                    }
+                    current = null;
+                }
+                // A resumed file may have been longer than the source
+                if (sized && out.size() > size) {
+                    out.truncate(size);
+                }
+                complete = true;
+            } finally {
+                if (checkpoint != null) {
+                    if (complete) {
+                        checkpoint.delete();
+                    } else {
+                        checkpoint.save(size, mtime, verifiedOffset(pending, current, nextOffset));
+                    }
+                }
+                drain(raw, pending);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Upload a local file, replacing the remote file
+     * @return number of bytes written, including any resumed part
+     */
+    public long upload(File localFile, String remotePath, TransferListener listener) throws IOException {
+        beginTransfer();
+        try {
+            return uploadFile(localFile, remotePath, listener);
+        } finally {
+            endTransfer();
+        }
+    }
+
+    private long uploadFile(File localFile, String remotePath, TransferListener listener) throws IOException {
+        if (!(sftp instanceof RawSftpClient)) {
+            return copyStream(localFile, remotePath, listener);
+        }
+        RawSftpClient raw = (RawSftpClient) sftp;
+
+        try (FileChannel in = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long mtime = localFile.lastModified();
+
+            TransferCheckpoint checkpoint = null;
+            long start = 0;
+            if (resumable && size >= resumeThreshold) {
+                checkpoint = TransferCheckpoint.open(true, site(), remotePath, localFile);
+                start = resumeUploadOffset(in, remotePath, checkpoint.getOffset(size, mtime));
+            }
+
+            SftpClient.CloseableHandle handle = start > 0 ?
+                    sftp.open(remotePath, SftpClient.OpenMode.Write) :
+                    sftp.open(remotePath, SftpClient.OpenMode.Write,
+                            SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+            if (start > 0 && listener != null) {
+                listener.bytesTransferred(start);
+            }
+
+            byte[] id = handle.getIdentifier();
+            LocalSource source = new LocalSource(in, size);
+            int writeSize = writeSize(id);
+            ArrayDeque<Request> pending = new ArrayDeque<>(window);
+            Request current = null;
+            long offset = start;
+            long saved = start;
+            boolean complete = false;
+
+            try (handle) {
+                while (true) {
+                    checkCancelled(listener);
+                    if (checkpoint != null) {
+                        long verified = verifiedOffset(pending, null, offset);
+                        if (verified - saved >= TransferCheckpoint.SAVE_INTERVAL) {
+                            checkpoint.save(size, mtime, verified);
+                            saved = verified;
+                        }
+                    }
+                    Request request = sendWrite(raw, pending, id, source, offset, writeSize);
+                    if (request == null) {
+                        break;
+                    }
+                    offset += request.length;
+                    if (pending.size() >= window) {
+                        current = pending.poll();
+                        completeWrite(raw, current, listener);
+                        current = null;
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    current = pending.poll();
+                    completeWrite(raw, current, listener);
+                    current = null;
+                }
+                complete = true;
+            } finally {
+                if (checkpoint != null) {
+                    if (complete) {
+                        checkpoint.delete();
+                    } else {
+                        checkpoint.save(size, mtime, verifiedOffset(pending, current, offset));
+                    }
+                }
+                drain(raw, pending);
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Overwrite the given blocks of an existing remote file with the local content, then
+     * set the remote size to the local size; other blocks are left as they are
+     * @return number of bytes written
+     */
+    public long patch(File localFile, String remotePath, BitSet blocks, int blockSize, TransferListener listener)
+            throws IOException {
+        beginTransfer();
+        try {
+            return patchFile(localFile, remotePath, blocks, blockSize, listener);
+        } finally {
+            endTransfer();
+        }
+    }
+
+    private long patchFile(File localFile, String remotePath, BitSet blocks, int blockSize, TransferListener listener)
+            throws IOException {
+        RawSftpClient raw = sftp instanceof RawSftpClient ? (RawSftpClient) sftp : null;
+
+        try (FileChannel in = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+             SftpClient.CloseableHandle handle = sftp.open(remotePath, SftpClient.OpenMode.Write)) {
+            long size = in.size();
+            byte[] id = handle.getIdentifier();
+            LocalSource source = new LocalSource(in, size);
+            int writeSize = raw == null ? chunkSize : writeSize(id);
+            byte[] chunk = raw == null ? new byte[chunkSize] : null;
+            ArrayDeque<Request> pending = new ArrayDeque<>(window);
+            long written = 0;
+
+            try {
+                for (int block = blocks.nextSetBit(0); block >= 0; block = blocks.nextSetBit(block + 1)) {
+                    long offset = (long) block * blockSize;
+                    long end = Math.min(offset + blockSize, size);
+                    while (offset < end) {
+                        checkCancelled(listener);
+                        int length = (int) Math.min(writeSize, end - offset);
+                        int n;
+                        if (raw == null) {
+                            n = source.read(offset, chunk, 0, length);
+                            if (n == 0) {
+                                break;
+                            }
+                            sftp.write(handle, offset, chunk, 0, n);
+                            moved += n;
+                            if (listener != null) {
+                                listener.bytesTransferred(n);
+                            }
+                        } else {
+                            Request request = sendWrite(raw, pending, id, source, offset, length);
+                            if (request == null) {
+                                break;
+                            }
+                            n = request.length;
+                            if (pending.size() >= window) {
+                                completeWrite(raw, pending.poll(), listener);
+                            }
+                        }
+                        offset += n;
+                        written += n;
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    completeWrite(raw, pending.poll(), listener);
+                }
+            } finally {
+                if (raw != null) {
+                    drain(raw, pending);
+                }
+            }
+
+            sftp.setStat(handle, new Attributes().size(size));
+            return written;
+        }
+    }
+
+    /**
+     * Offset to continue an upload from: the checkpoint offset if the remote file is still
+     * a prefix of the local one there, otherwise 0
+     */
+    private long resumeUploadOffset(FileChannel in, String remotePath, long offset) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+        Attributes attrs;
+        try {
+            attrs = sftp.stat(remotePath);
+        } catch (SftpException e) {
+            return 0;
+        }
+        // Trailing remote bytes past the source would survive a resumed upload
+        if (!attrs.isRegularFile() || attrs.getSize() < offset || attrs.getSize() > in.size()) {
+            return 0;
+        }
+        try (SftpClient.CloseableHandle handle = sftp.open(remotePath, SftpClient.OpenMode.Read)) {
+            return sameTail(in, handle, offset) ? offset : 0;
+        }
+    }
+
+    /**
+     * Whether the block ending at {@code offset} is the same locally and remotely
+     */
+    private boolean sameTail(FileChannel local, SftpClient.Handle remote, long offset) throws IOException {
+        int length = (int) Math.min(VERIFY_BLOCK, offset);
+        long from = offset - length;
+
+        ByteBuffer localBytes = ByteBuffer.allocate(length);
+        while (localBytes.hasRemaining()) {
+            if (local.read(localBytes, from + localBytes.position()) <= 0) {
+                return false;
+            }
+        }
+
+        byte[] remoteBytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = sftp.read(remote, from + read, remoteBytes, read, length - read);
+            if (n <= 0) {
+                return false;
+            }
+            read += n;
+        }
+        return Arrays.equals(localBytes.array(), remoteBytes);
+    }
+
+    /**
+     * Every byte below the returned offset has been written: all requests below it
+     * have completed. {@code current} is a request taken from the queue but not finished.
+     */
+    private static long verifiedOffset(ArrayDeque<Request> pending, Request current, long nextOffset) {
+        long verified = current != null ? Math.min(nextOffset, current.offset) : nextOffset;
+        for (Request request : pending) {
+            verified = Math.min(verified, request.offset);
+        }
+        return verified;
+    }
+
+    /**
+     * user@host:port identifying the remote end in checkpoints
+     */
+    private String site() {
+        ClientSession session = sftp.getSession();
+        SocketAddress address = session.getConnectAddress();
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return session.getUsername() + "@" + inet.getHostString() + ":" + inet.getPort();
+        }
+        return session.getUsername() + "@" + address;
+    }
+
+    /**
+     * Send an SSH_FXP_READ and add it to the requests in flight
+     */
+    private void sendRead(RawSftpClient raw, ArrayDeque<Request> pending, byte[] handleId, long offset, int length)
+            throws IOException {
+        Buffer buffer = new ByteArrayBuffer(handleId.length + Long.BYTES + 2 * Integer.BYTES, false);
+        buffer.putBytes(handleId);
+        buffer.putLong(offset);
+        buffer.putUInt(length);
+        pending.add(new Request(raw.send(SftpConstants.SSH_FXP_READ, buffer), offset, length));
+        transferMetrics.recordSend(pending.size(), window);
+    }
+
+    /**
+     * Send an SSH_FXP_WRITE of up to {@code length} bytes, read from the local file straight
+     * into the pooled request buffer, and add it to the requests in flight
+     * @return null at the end of the local file
+     */
+    private Request sendWrite(RawSftpClient raw, ArrayDeque<Request> pending, byte[] handleId, LocalSource source,
+                              long offset, int length) throws IOException {
+        // Laid out as a whole SSH_MSG_CHANNEL_DATA packet, which the client and channel fill
+        // in around the payload and encrypt in place
+        int payload = SFTP_HEADER + handleId.length + length + Long.BYTES + 2 * Integer.BYTES;
+        if (writeBuffer == null || writeBuffer.array().length < CHANNEL_DATA_HEADER + payload) {
+            writeBuffer = sftp.getSession().createBuffer(SshConstants.SSH_MSG_CHANNEL_DATA, payload);
+        }
+        Buffer buffer = writeBuffer;
+        buffer.rpos(CHANNEL_DATA_HEADER + SFTP_HEADER);
+        buffer.wpos(CHANNEL_DATA_HEADER + SFTP_HEADER);
+        buffer.putBytes(handleId);
+        buffer.putLong(offset);
+        int lengthPos = buffer.wpos();
+        buffer.putUInt(length);
+
+        long diskStart = System.nanoTime();
+        int n = source.read(offset, buffer.array(), buffer.wpos(), length);
+        transferMetrics.recordDisk(System.nanoTime() - diskStart);
+        if (n == 0) {
+            return null;
+        }
+        buffer.wpos(lengthPos);
+        buffer.putUInt(n);
+        buffer.wpos(lengthPos + Integer.BYTES + n);
+
+        // Returns once the packet is written out, so the buffer can be refilled. With the
+        // channel window too small for it, that waits for the server to grant more.
+        RemoteWindow remoteWindow = sftp.getClientChannel().getRemoteWindow();
+        boolean stalled = remoteWindow.getSize() < buffer.available();
+        long sendStart = System.nanoTime();
+        Request request = new Request(raw.send(SftpConstants.SSH_FXP_WRITE, buffer), offset, n);
+        long sent = System.nanoTime() - sendStart;
+        transferMetrics.recordNetwork(sent);
+        if (stalled) {
+            transferMetrics.recordStall(sent);
+        }
+        pending.add(request);
+        transferMetrics.recordSend(pending.size(), window);
+        return request;
+    }
+
+    /**
+     * Largest write whose request fits in one SSH packet, so the channel sends the pooled
+     * buffer as is instead of copying the part that spills into a second packet
+     */
+    private int writeSize(byte[] handleId) {
+        long packetSize = sftp.getClientChannel().getRemoteWindow().getPacketSize();
+        long room = packetSize - SFTP_HEADER - handleId.length - Long.BYTES - 2 * Integer.BYTES;
+        return (int) Math.max(1024, Math.min(chunkSize, room));
+    }
+
+    /**
+     * The engine's direct buffer, cleared and limited to {@code length}
+     */
+    private ByteBuffer localBuffer(int length) {
+        if (localBuffer == null || localBuffer.capacity() < length) {
+            localBuffer = ByteBuffer.allocateDirect(Math.max(length, chunkSize));
+        }
+        localBuffer.clear().limit(length);
+        return localBuffer;
+    }
+
+    /**
+     * Wait for the reply to a request, timing the wait and the round trip
+     */
+    private Buffer receive(RawSftpClient raw, Request request) throws IOException {
+        long waitStart = System.nanoTime();
+        Buffer reply = raw.receive(request.id);
+        long now = System.nanoTime();
+        transferMetrics.recordNetwork(now - waitStart);
+        transferMetrics.recordReply(now - request.sentAt);
+        return reply;
+    }
+
+    private void completeWrite(RawSftpClient raw, Request request, TransferListener listener) throws IOException {
+        SftpResponse response = SftpResponse.parse(SftpConstants.SSH_FXP_WRITE, receive(raw, request));
+        if (response.getType() != SftpConstants.SSH_FXP_STATUS) {
+            throw new IOException("Unexpected SFTP response: " +
+                    SftpConstants.getCommandMessageName(response.getType()));
+        }
+        SftpStatus status = SftpStatus.parse(response);
+        if (!status.isOk()) {
+            throw new SftpException(status.getStatusCode(), status.getMessage());
+        }
+        moved += request.length;
+        if (listener != null) {
+            listener.bytesTransferred(request.length);
+        }
+    }
+
+    private static void checkCancelled(TransferListener listener) throws InterruptedIOException {
+        if (listener != null && listener.isCancelled()) {
+            throw new InterruptedIOException("Transfer cancelled");
+        }
+    }
+
+    /**
+     * Collect replies to abandoned requests so the client does not keep them around
+     */
+    private void drain(RawSftpClient raw, ArrayDeque<Request> pending) {
+        for (Request request : pending) {
+            try {
+                raw.receive(request.id);
+            } catch (IOException e) {
+                break;
+            }
+        }
+        pending.clear();
+    }
+
+    private long copyStream(String remotePath, File localFile, TransferListener listener) throws IOException {
+        long total = 0;
+        try (InputStream is = sftp.read(remotePath, chunkSize);
+             OutputStream os = new FileOutputStream(localFile)) {
+            byte[] buf = new byte[chunkSize];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                checkCancelled(listener);
+                os.write(buf, 0, n);
+                total += n;
+                moved += n;
+                if (listener != null) {
+                    listener.bytesTransferred(n);
+                }
+            }
+        }
+        return total;
+    }
+
+    private long copyStream(File localFile, String remotePath, TransferListener listener) throws IOException {
+        long total = 0;
+        try (InputStream is = new FileInputStream(localFile);
+             OutputStream os = sftp.write(remotePath, chunkSize)) {
+            byte[] buf = new byte[chunkSize];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                checkCancelled(listener);
+                os.write(buf, 0, n);
+                total += n;
+                moved += n;
+                if (listener != null) {
+                    listener.bytesTransferred(n);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Local file being uploaded; large files are read through a mapped window that moves
+     * along with the offset, smaller ones through the engine's direct buffer
+     */
+    private class LocalSource {
+        final FileChannel channel;
+        final boolean mapped;
+        final long size;
+        MappedByteBuffer mapping;
+        long mappingStart;
+
+        LocalSource(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            this.mapped = size >= MAP_THRESHOLD;
+        }
+
+        /**
+         * Read up to {@code length} bytes at {@code offset}, fewer only at the end of the file
+         * @return bytes read, 0 at the end of the file
+         */
+        int read(long offset, byte[] dest, int pos, int length) throws IOException {
+            if (mapped) {
+                if (offset >= size) {
+                    return 0;
+                }
+                if (mapping == null || offset < mappingStart || offset + length > mappingStart + mapping.capacity()) {
+                    mappingStart = offset;
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW, size - offset));
+                }
+                int n = (int) Math.min(length, mappingStart + mapping.capacity() - offset);
+                try {
+                    mapping.position((int) (offset - mappingStart));
+                    mapping.get(dest, pos, n);
+                } catch (InternalError e) {
+                    // Access past the end of a file truncated while mapped
+                    throw new IOException("Local file changed during transfer", e);
+                }
+                return n;
+            }
+
+            ByteBuffer data = localBuffer(length);
+            while (data.hasRemaining() && channel.read(data, offset + data.position()) > 0) {
+                // Fill the whole chunk unless the file ends
+            }
+            data.flip();
+            int n = data.remaining();
+            data.get(dest, pos, n);
+            return n;
+        }
+    }
+
+    private static class Request {
+        final int id;
+        final long offset;
+        final int length;
+        final long sentAt = System.nanoTime();
+
+        Request(int id, long offset, int length) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package io.xlogistx.jssh.sftp;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs file transfers on a bounded pool of workers, each with its own SFTP channel
+ * on the connection's session.
+ *
+ * Work is grouped into jobs, one per user action. Workers take files from the active
+ * jobs in turn, so a large job does not hold up a small one started after it. A job is
+ * planned and run at once: files start copying as the walk that finds them goes on.
+ */
+public class SFTPTransferScheduler implements Closeable {
+
+    public static final int DEFAULT_WORKERS = 4;
+
+    /**
+     * Called once per job on the thread that completed it, usually a worker
+     */
+    public interface JobListener {
+        void jobFinished(Job job, Exception error);
+    }
+
+    private final SSHConnection connection;
+    private final int maxWorkers;
+    private final SFTPDeltaSync deltaSync;
+    private final List<Worker> workers = new ArrayList<>();
+    private final ArrayDeque<Job> jobs = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public SFTPTransferScheduler(SSHConnection connection) {
+        this(connection, DEFAULT_WORKERS);
+    }
+
+    public SFTPTransferScheduler(SSHConnection connection, int maxWorkers) {
+        this.connection = connection;
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.deltaSync = new SFTPDeltaSync(connection);
+    }
+
+    /**
+     * Start a job; add files to it, then call {@link Job#finish()}
+     */
+    public Job newJob(String name, JobListener listener) {
+        Job job = new Job(name, listener);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler closed");
+            }
+            jobs.add(job);
+        }
+        return job;
+    }
+
+    /**
+     * Jobs that have not finished yet
+     */
+    public synchronized List<Job> getActiveJobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    /**
+     * Cancel all jobs and close the worker channels
+     */
+    @Override
+    public void close() {
+        List<Job> active;
+        synchronized (this) {
+            closed = true;
+            active = new ArrayList<>(jobs);
+            notifyAll();
+        }
+        for (Job job : active) {
+            job.cancel();
+        }
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private synchronized void taskAdded() {
+        // One more worker per queued file, up to the limit
+        int queued = 0;
+        for (Job job : jobs) {
+            queued += job.tasks.size();
+        }
+        int idle = 0;
+        for (Worker worker : workers) {
+            if (worker.idle) idle++;
+        }
+        if (queued > idle && workers.size() < maxWorkers) {
+            Worker worker = new Worker(workers.size() + 1);
+            workers.add(worker);
+            worker.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Next file from the job at the head of the queue, which then moves to the back
+     */
+    private synchronized Task take() throws InterruptedException {
+        while (true) {
+            if (closed) {
+                return null;
+            }
+            for (int i = jobs.size(); i > 0; i--) {
+                Job job = jobs.poll();
+                Task task = job.tasks.poll();
+                if (task != null) {
+                    job.running++;
+                    jobs.add(job);
+                    return task;
+                }
+                if (!job.done) {
+                    jobs.add(job);
+                }
+            }
+            wait();
+        }
+    }
+
+    private void taskDone(Task task, SFTPDeltaSync.Result result, Exception error) {
+        Job job = task.job;
+        boolean done;
+        synchronized (this) {
+            job.running--;
+            if (error != null && job.error == null && !job.cancelled) {
+                job.error = error;
+                job.tasks.clear();
+            }
+            if (job.error == null && !job.cancelled) {
+                job.completedFiles++;
+                if (result == SFTPDeltaSync.Result.UNCHANGED) {
+                    job.skippedFiles++;
+                }
+            }
+            done = job.markDone();
+        }
+        if (done) {
+            job.fireFinished();
+        }
+    }
+
+    /**
+     * Group of files transferred for one request, cancelled and reported together
+     */
+    public class Job {
+        private final String name;
+        private final JobListener listener;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private final AtomicLong transferredBytes = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private long totalBytes;
+        private int totalFiles;
+        private int completedFiles;
+        private int skippedFiles;
+        private int running;
+        private boolean finished;
+        private volatile boolean cancelled;
+        private boolean done;
+        private Exception error;
+
+        private Job(String name, JobListener listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Queue a download of {@code size} bytes
+         * @return false if the job was cancelled or failed and takes no more files
+         */
+        public boolean addDownload(String remotePath, File localFile, long size) {
+            return add(new Task(this, false, false, remotePath, localFile, size, null));
+        }
+
+        /**
+         * Queue an upload of a local file
+         * @return false if the job was cancelled or failed and takes no more files
+         */
+        public boolean addUpload(File localFile, String remotePath) {
+            return addUpload(localFile, remotePath, localFile.length());
+        }
+
+        /**
+         * Queue an upload of a local file whose size is already known
+         * @return false if the job was cancelled or failed and takes no more files
+         */
+        public boolean addUpload(File localFile, String remotePath, long size) {
+            return add(new Task(this, true, false, remotePath, localFile, size, null));
+        }
+
+        /**
+         * Queue an upload that skips an unchanged remote file and sends only the changed
+         * blocks of a modified one
+         * @param remoteAttrs the remote file from a directory listing, or null if it does not exist
+         * @return false if the job was cancelled or failed and takes no more files
+         */
+        public boolean addSync(File localFile, String remotePath, Attributes remoteAttrs) {
+            return addSync(localFile, remotePath, remoteAttrs, localFile.length());
+        }
+
+        /**
+         * Queue a sync of a local file whose size is already known
+         * @return false if the job was cancelled or failed and takes no more files
+         */
+        public boolean addSync(File localFile, String remotePath, Attributes remoteAttrs, long size) {
+            return add(new Task(this, true, true, remotePath, localFile, size, remoteAttrs));
+        }
+
+        private boolean add(Task task) {
+            synchronized (SFTPTransferScheduler.this) {
+                if (cancelled || error != null) {
+                    return false;
+                }
+                if (finished) {
+                    throw new IllegalStateException("Job already finished");
+                }
+                tasks.add(task);
+                totalFiles++;
+                totalBytes += task.size;
+            }
+            taskAdded();
+            return true;
+        }
+
+        /**
+         * No more files will be added; the job completes once the queued ones are done
+         */
+        public void finish() {
+            boolean nowDone;
+            synchronized (SFTPTransferScheduler.this) {
+                finished = true;
+                nowDone = markDone();
+            }
+            if (nowDone) {
+                fireFinished();
+            }
+        }
+
+        /**
+         * Drop queued files and stop the ones in progress
+         */
+        public void cancel() {
+            boolean nowDone;
+            synchronized (SFTPTransferScheduler.this) {
+                if (done) {
+                    return;
+                }
+                cancelled = true;
+                finished = true;
+                tasks.clear();
+                nowDone = markDone();
+            }
+            if (nowDone) {
+                fireFinished();
+            }
+        }
+
+        /**
+         * Wait for the job to complete
+         * @throws IOException the first failure, or InterruptedIOException if cancelled
+         */
+        public void await() throws IOException, InterruptedException {
+            synchronized (SFTPTransferScheduler.this) {
+                while (!done) {
+                    SFTPTransferScheduler.this.wait();
+                }
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                if (error != null) {
+                    throw new IOException(error.getMessage(), error);
+                }
+                if (cancelled) {
+                    throw new InterruptedIOException("Transfer cancelled");
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Whether files are still being added, so the totals may grow
+         */
+        public boolean isPlanning() {
+            synchronized (SFTPTransferScheduler.this) {
+                return !finished;
+            }
+        }
+
+        public boolean isDone() {
+            synchronized (SFTPTransferScheduler.this) {
+                return done;
+            }
+        }
+
+        public long getTransferredBytes() {
+            return transferredBytes.get();
+        }
+
+        /**
+         * Average rate since the job started
+         */
+        public long getBytesPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds > 0 ? (long) (transferredBytes.get() / seconds) : 0;
+        }
+
+        public long getTotalBytes() {
+            synchronized (SFTPTransferScheduler.this) {
+                return totalBytes;
+            }
+        }
+
+        public int getTotalFiles() {
+            synchronized (SFTPTransferScheduler.this) {
+                return totalFiles;
+            }
+        }
+
+        public int getCompletedFiles() {
+            synchronized (SFTPTransferScheduler.this) {
+                return completedFiles;
+            }
+        }
+
+        /**
+         * Synced files that were already up to date
+         */
+        public int getSkippedFiles() {
+            synchronized (SFTPTransferScheduler.this) {
+                return skippedFiles;
+            }
+        }
+
+        /**
+         * Mark done once finished and drained; caller holds the scheduler lock
+         * @return true if the job became done with this call
+         */
+        private boolean markDone() {
+            SFTPTransferScheduler.this.notifyAll();
+            if (done || !finished || running > 0 || !tasks.isEmpty()) {
+                return false;
+            }
+            done = true;
+            jobs.remove(this);
+            return true;
+        }
+
+        /**
+         * Called without the scheduler lock so listeners may query the job
+         */
+        private void fireFinished() {
+            if (listener != null) {
+                Exception result = error != null ? error :
+                        cancelled ? new InterruptedIOException("Transfer cancelled") : null;
+                listener.jobFinished(this, result);
+            }
+        }
+    }
+
+    private static class Task implements SFTPTransferEngine.TransferListener {
+        final Job job;
+        final boolean upload;
+        final boolean sync;
+        final String remotePath;
+        final File localFile;
+        final long size;
+        final Attributes remoteAttrs;
+
+        Task(Job job, boolean upload, boolean sync, String remotePath, File localFile, long size,
+             Attributes remoteAttrs) {
+            this.job = job;
+            this.upload = upload;
+            this.sync = sync;
+            this.remotePath = remotePath;
+            this.localFile = localFile;
+            this.size = size;
+            this.remoteAttrs = remoteAttrs;
+        }
+
+        @Override
+        public void bytesTransferred(long count) {
+            job.transferredBytes.addAndGet(count);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return job.cancelled;
+        }
+    }
+
+    /**
+     * Transfer thread with its own SFTP channel, opened on first use
+     */
+    private class Worker extends Thread {
+        private SFTPTransferEngine engine;
+        private volatile boolean idle = true;
+
+        Worker(int index) {
+            super("sftp-transfer-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Task task;
+                while ((task = take()) != null) {
+                    idle = false;
+                    SFTPDeltaSync.Result result = null;
+                    Exception error = null;
+                    try {
+                        if (task.isCancelled()) {
+                            continue;
+                        }
+                        if (engine == null) {
+                            engine = new SFTPTransferEngine(connection.openSftp(),
+                                    connection.getSftpWindow(), connection.getSftpChunkSize());
+                            // Only files of RESUME_THRESHOLD or more keep a checkpoint
+                            engine.setResumable(true);
+                            engine.setMetrics(connection.getSftpMetrics());
+                        }
+                        if (task.sync) {
+                            result = deltaSync.sync(engine, task.localFile, task.remotePath, task.remoteAttrs, task);
+                        } else if (task.upload) {
+                            engine.upload(task.localFile, task.remotePath, task);
+                        } else {
+                            engine.download(task.remotePath, task.localFile, task);
+                        }
+                    } catch (InterruptedIOException e) {
+                        // Cancelled, and the job reports it; otherwise a timeout, which is a failure
+                        if (!task.isCancelled()) {
+                            error = e;
+                            closeEngine();
+                        }
+                    } catch (Exception e) {
+                        error = e;
+                        // The channel may be broken; start over with a fresh one
+                        closeEngine();
+                    } finally {
+                        idle = true;
+                        taskDone(task, result, error);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Scheduler closed
+            } finally {
+                closeEngine();
+            }
+        }
+
+        private void closeEngine() {
+            if (engine != null) {
+                try {
+                    engine.getClient().close();
+                } catch (IOException e) {
+                }
+                engine = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.xlogistx.jssh.sftp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * On-disk record of how far an interrupted transfer got, so it can continue later,
+ * even after a restart. Stored in ~/.jssh/transfers/ and deleted once the transfer completes.
+ *
+ * The offset is only a hint; the engine checks the bytes just before it on both
+ * sides before resuming.
+ */
+public class TransferCheckpoint {
+
+    private static final String CONFIG_DIR = ".jssh";
+    private static final String TRANSFERS_DIR = "transfers";
+
+    /** Progress between saves */
+    public static final long SAVE_INTERVAL = 4 * 1024 * 1024;
+
+    private final Path file;
+    private final Properties props = new Properties();
+    private long sourceSize = -1;
+    private long sourceTime = -1;
+    private long offset = 0;
+
+    private TransferCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Checkpoint for one direction between a remote site and path and a local file,
+     * loaded from disk if present
+     * @param site user@host:port of the remote end
+     */
+    public static TransferCheckpoint open(boolean upload, String site, String remotePath, File localFile) {
+        String key = (upload ? "upload" : "download") + "|" + site + "|" + remotePath + "|" +
+                localFile.getAbsolutePath();
+        Path dir = Paths.get(System.getProperty("user.home"), CONFIG_DIR, TRANSFERS_DIR);
+        TransferCheckpoint checkpoint = new TransferCheckpoint(dir.resolve(hash(key) + ".properties"));
+        checkpoint.props.setProperty("direction", upload ? "upload" : "download");
+        checkpoint.props.setProperty("site", site);
+        checkpoint.props.setProperty("remotePath", remotePath);
+        checkpoint.props.setProperty("localPath", localFile.getAbsolutePath());
+        checkpoint.load();
+        return checkpoint;
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            saved.load(reader);
+            sourceSize = Long.parseLong(saved.getProperty("sourceSize", "-1"));
+            sourceTime = Long.parseLong(saved.getProperty("sourceTime", "-1"));
+            offset = Long.parseLong(saved.getProperty("offset", "0"));
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring bad transfer checkpoint " + file + ": " + e.getMessage());
+            sourceSize = -1;
+            offset = 0;
+        }
+    }
+
+    /**
+     * Offset recorded for a source of this size and modification time, or 0 if the
+     * source changed or nothing was recorded
+     */
+    public long getOffset(long size, long modifiedTime) {
+        if (sourceSize != size || sourceTime != modifiedTime) {
+            return 0;
+        }
+        return Math.max(0, Math.min(offset, size));
+    }
+
+    /**
+     * Record that every byte below {@code offset} has been written to the destination
+     */
+    public void save(long size, long modifiedTime, long offset) {
+        this.sourceSize = size;
+        this.sourceTime = modifiedTime;
+        this.offset = offset;
+        props.setProperty("sourceSize", String.valueOf(size));
+        props.setProperty("sourceTime", String.valueOf(modifiedTime));
+        props.setProperty("offset", String.valueOf(offset));
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                props.store(writer, "JSSH transfer checkpoint");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to save transfer checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the transfer, once it completed or has to start over
+     */
+    public void delete() {
+        sourceSize = -1;
+        offset = 0;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Failed to delete transfer checkpoint: " + e.getMessage());
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
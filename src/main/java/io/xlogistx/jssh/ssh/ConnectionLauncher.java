@@ -0,0 +1,168 @@
+package io.xlogistx.jssh.ssh;
+
+import io.xlogistx.jssh.config.ConnectionConfig;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connects saved profiles in the background, several at once on a bounded pool, and keeps
+ * logged-in sessions ready for profiles marked to be kept warm.
+ *
+ * A warm session is held in the {@link SessionRegistry} by the launcher, so a tab opened
+ * to the same account shares it at once instead of waiting for TCP, key exchange and login.
+ * Only profiles logging in with a key that has no passphrase can be kept warm, since
+ * nobody is there to type one.
+ */
+public class ConnectionLauncher {
+
+    /** Connections being established at once; the rest wait their turn */
+    public static final int MAX_PARALLEL = 8;
+
+    public static final long TIMEOUT = 30000;
+
+    private static ConnectionLauncher instance;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, SSHConnection> warm = new ConcurrentHashMap<>();
+
+    private ConnectionLauncher() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(MAX_PARALLEL, MAX_PARALLEL, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "ssh-connect-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized ConnectionLauncher getInstance() {
+        if (instance == null) {
+            instance = new ConnectionLauncher();
+        }
+        return instance;
+    }
+
+    /**
+     * Pool the connections run on, for follow-up work such as opening a shell
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Connect and log in to a profile in the background
+     * @param password for password profiles
+     * @param passphrase for key profiles, null or empty if the key has none
+     */
+    public CompletableFuture<SSHConnection> connect(ConnectionConfig config, String password, String passphrase,
+                                                    SSHConnection.HostKeyVerifier verifier) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return open(config, password, passphrase, verifier);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Connect and log in to a profile, or share the session another connection already
+     * has to the same account
+     */
+    public static SSHConnection open(ConnectionConfig config, String password, String passphrase,
+                                     SSHConnection.HostKeyVerifier verifier) throws IOException {
+        SSHConnection conn = new SSHConnection();
+        conn.setHostKeyVerifier(verifier);
+        conn.setCompression(config.isCompression(), config.getCompressionLevel());
+        conn.setSftpWindow(config.getSftpWindow());
+        conn.setSftpChunkSize(config.getSftpChunkSize());
+        try {
+            if (!conn.connectShared(config.getUsername(), config.getHost(), config.getPort())) {
+                conn.connect(config.getHost(), config.getPort(), TIMEOUT);
+                boolean authenticated;
+                if (config.isUseKeyAuth()) {
+                    authenticated = conn.authenticatePublicKey(config.getUsername(), config.getKeyFile(),
+                            passphrase == null || passphrase.isEmpty() ? null : passphrase, TIMEOUT);
+                } else {
+                    authenticated = conn.authenticatePassword(config.getUsername(), password, TIMEOUT);
+                }
+                if (!authenticated) {
+                    throw new IOException("Authentication failed - check username/password");
+                }
+            }
+            return conn;
+        } catch (IOException | RuntimeException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Log in to a key profile in the background and hold the session for tabs to share.
+     * Nothing happens for password profiles or if a session is already held.
+     */
+    public void keepWarm(ConnectionConfig config, SSHConnection.HostKeyVerifier verifier) {
+        if (!config.isUseKeyAuth()) {
+            return;
+        }
+        String key = SessionRegistry.key(config.getUsername(), config.getHost(), config.getPort());
+        SSHConnection held = warm.get(key);
+        if (held != null && held.isConnected()) {
+            return;
+        }
+        connect(config, null, null, verifier).whenComplete((conn, error) -> {
+            if (error != null) {
+                System.err.println("Could not keep " + key + " warm: " + cause(error).getMessage());
+                return;
+            }
+            SSHConnection previous = warm.put(key, conn);
+            if (previous != null) {
+                previous.close();
+            }
+            // Gone if the server or the network ends it; warmed again on the next call
+            conn.getSession().addSessionListener(new SessionListener() {
+                @Override
+                public void sessionClosed(Session session) {
+                    warm.remove(key, conn);
+                }
+            });
+        });
+    }
+
+    /**
+     * The exception a background connect failed with, without the future's wrapper
+     */
+    public static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Sessions held ready
+     */
+    public int getWarmCount() {
+        return warm.size();
+    }
+
+    /**
+     * Let go of the warm sessions and stop connecting, on exit
+     */
+    public void shutdown() {
+        for (SSHConnection conn : warm.values()) {
+            conn.close();
+        }
+        warm.clear();
+        executor.shutdownNow();
+    }
+}
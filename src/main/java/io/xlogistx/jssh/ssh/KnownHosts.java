@@ -1,187 +1,659 @@
 package io.xlogistx.jssh.ssh;
 
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.config.keys.OpenSshCertificate;
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Manager for SSH known_hosts file
+ * Manager for SSH known_hosts file.
+ *
+ * The file is parsed once into an index shared by every lookup: plain host names in a map,
+ * OpenSSH hashed names (|1|salt|hash) matched by HMAC-SHA1 and remembered per host, and
+ * wildcard or negated patterns checked one by one. A host may have several keys, and
+ * {@code @cert-authority} and {@code @revoked} lines are honoured.
+ *
+ * Lookups read an immutable snapshot and never block, so they are safe on MINA's I/O
+ * threads. Shared instances watch the file: lines appended to it are read incrementally,
+ * anything else reloads it whole.
  */
 public class KnownHosts {
-    
+
+    private static final String CERT_AUTHORITY = "@cert-authority";
+    private static final String REVOKED = "@revoked";
+    private static final String HASH_MAGIC = "|1|";
+
+    /** Bytes before the end of what was read that must be unchanged to read only what follows */
+    private static final int TAIL = 64;
+
+    /** Host names whose hashed entries are remembered per index */
+    private static final int HASHED_CACHE = 4096;
+
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA1");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final Map<Path, KnownHosts> shared = new ConcurrentHashMap<>();
+
+    /**
+     * One line of the file
+     */
+    private static final class Entry {
+        final String marker;    // null, @cert-authority or @revoked
+        final String hosts;     // Host field as written
+        final String keyType;
+        final String keyData;
+        final byte[] salt;      // Hashed entries only
+        final byte[] hash;
+
+        Entry(String marker, String hosts, String keyType, String keyData) {
+            this.marker = marker;
+            this.hosts = hosts;
+            this.keyType = keyType;
+            this.keyData = keyData;
+
+            byte[][] decoded = hosts.startsWith(HASH_MAGIC) ? decodeHashed(hosts) : null;
+            salt = decoded != null ? decoded[0] : null;
+            hash = decoded != null ? decoded[1] : null;
+        }
+
+        boolean isHashed() {
+            return hosts.startsWith(HASH_MAGIC);
+        }
+
+        boolean isPattern() {
+            return hosts.indexOf('*') >= 0 || hosts.indexOf('?') >= 0 || hosts.indexOf('!') >= 0;
+        }
+    }
+
+    /**
+     * Lookup structures for one state of the file; replaced, never changed
+     */
+    private static final class Index {
+        final List<Entry> all;
+        final Map<String, List<Entry>> byHost = new HashMap<>();
+        final List<Entry> hashed = new ArrayList<>();
+        final List<Entry> patterns = new ArrayList<>();
+        final Map<String, List<Entry>> hashedMatches = new ConcurrentHashMap<>();
+
+        Index(List<Entry> all) {
+            this.all = all;
+            for (Entry entry : all) {
+                if (entry.isHashed()) {
+                    hashed.add(entry);
+                } else if (entry.isPattern()) {
+                    patterns.add(entry);
+                } else {
+                    for (String host : entry.hosts.split(",")) {
+                        byHost.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new ArrayList<>(1)).add(entry);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Entries whose host field covers the name, as formatted by {@link #formatHost}
+         */
+        List<Entry> lookup(String name) {
+            List<Entry> found = new ArrayList<>(byHost.getOrDefault(name, Collections.emptyList()));
+            if (!hashed.isEmpty()) {
+                if (hashedMatches.size() > HASHED_CACHE) {
+                    hashedMatches.clear();
+                }
+                found.addAll(hashedMatches.computeIfAbsent(name, this::matchHashed));
+            }
+            for (Entry entry : patterns) {
+                if (matchesHostList(entry.hosts, name)) {
+                    found.add(entry);
+                }
+            }
+            return found;
+        }
+
+        private List<Entry> matchHashed(String name) {
+            List<Entry> found = new ArrayList<>();
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            Mac mac = HMAC.get();
+            for (Entry entry : hashed) {
+                if (entry.salt != null && matchesHashed(entry.salt, entry.hash, bytes, mac)) {
+                    found.add(entry);
+                }
+            }
+            return found.isEmpty() ? Collections.emptyList() : found;
+        }
+    }
+
     private Path knownHostsFile;
-    private Map<String, String> hosts = new HashMap<>();
-    
+    private volatile Index index = new Index(Collections.emptyList());
+
+    // What has been read, so that appended lines can be read on their own
+    private long loadedLength;
+    private Object loadedFileKey;
+    private byte[] loadedTail = new byte[0];
+    private boolean watch;
+
     public KnownHosts() {
         String homeDir = System.getProperty("user.home");
         knownHostsFile = Paths.get(homeDir, ".ssh", "known_hosts");
-        load();
+        reload();
     }
-    
+
     public KnownHosts(String path) {
         knownHostsFile = Paths.get(path);
-        load();
+        reload();
     }
-    
-    private void load() {
-        hosts.clear();
-        
-        if (!Files.exists(knownHostsFile)) {
-            return;
-        }
-        
+
+    /**
+     * The user's ~/.ssh/known_hosts, loaded once and watched
+     */
+    public static KnownHosts getDefault() {
+        return getInstance(Paths.get(System.getProperty("user.home"), ".ssh", "known_hosts"));
+    }
+
+    /**
+     * Instance for a file shared by the whole process, loaded once and watched
+     */
+    public static KnownHosts getInstance(Path path) {
+        return shared.computeIfAbsent(path.toAbsolutePath().normalize(), p -> {
+            KnownHosts knownHosts = new KnownHosts(p.toString());
+            knownHosts.watch();
+            return knownHosts;
+        });
+    }
+
+    /**
+     * Pick up changes to the file as they happen
+     */
+    public synchronized void watch() {
+        watch = true;
+        Watcher.register(this);
+    }
+
+    /**
+     * Bring the index up to date with the file, reading only appended lines when possible
+     */
+    public synchronized void reload() {
         try {
-            List<String> lines = Files.readAllLines(knownHostsFile);
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
-                
-                String[] parts = line.split("\\s+");
-                if (parts.length >= 3) {
-                    String hostEntry = parts[0];
-                    String keyType = parts[1];
-                    String keyData = parts[2];
-                    
-                    // Host entry might be multiple hosts separated by commas
-                    for (String host : hostEntry.split(",")) {
-                        hosts.put(host + ":" + keyType, keyData);
+            if (!Files.exists(knownHostsFile)) {
+                index = new Index(Collections.emptyList());
+                loadedLength = 0;
+                loadedFileKey = null;
+                loadedTail = new byte[0];
+                return;
+            }
+
+            BasicFileAttributes attrs = Files.readAttributes(knownHostsFile, BasicFileAttributes.class);
+            boolean append = loadedLength > 0 && attrs.size() >= loadedLength &&
+                    attrs.fileKey() != null && attrs.fileKey().equals(loadedFileKey) && tailUnchanged();
+            if (append && attrs.size() == loadedLength) {
+                return;
+            }
+
+            List<Entry> entries = append ? new ArrayList<>(index.all) : new ArrayList<>();
+            long start = append ? loadedLength : 0;
+            long[] end = read(start, entries, !append);
+            index = new Index(entries);
+            // A last line without a newline may still be growing; reading resumes before it
+            // only if there is none, otherwise the next change reloads everything
+            loadedLength = end[1] == end[0] ? end[0] : 0;
+            loadedFileKey = attrs.fileKey();
+            loadedTail = readTail(loadedLength);
+        } catch (IOException e) {
+            System.err.println("Failed to read " + knownHostsFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse lines from an offset
+     * @param partial whether a last line without a newline is parsed too
+     * @return offset after the last complete line, and offset after everything read
+     */
+    private long[] read(long start, List<Entry> entries, boolean partial) throws IOException {
+        try (FileChannel channel = FileChannel.open(knownHostsFile, StandardOpenOption.READ)) {
+            channel.position(start);
+            ByteBuffer buffer = ByteBuffer.allocate(65536);
+            byte[] line = new byte[256];
+            int length = 0;
+            long offset = start;
+            long complete = start;
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                byte[] chunk = buffer.array();
+                int from = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (chunk[i] != '\n') {
+                        continue;
+                    }
+                    if (length == 0) {
+                        addEntry(entries, new String(chunk, from, i - from, StandardCharsets.ISO_8859_1));
+                    } else {
+                        // Line began in the previous chunk
+                        line = append(line, length, chunk, from, i - from);
+                        addEntry(entries, new String(line, 0, length + i - from, StandardCharsets.ISO_8859_1));
+                        length = 0;
                     }
+                    from = i + 1;
+                    complete = offset + from;
                 }
+                line = append(line, length, chunk, from, limit - from);
+                length += limit - from;
+                offset += limit;
+                buffer.clear();
             }
-        } catch (IOException e) {
-            // Ignore - file might not exist
+            if (length > 0 && partial) {
+                addEntry(entries, new String(line, 0, length, StandardCharsets.ISO_8859_1));
+            }
+            return new long[]{complete, offset};
+        }
+    }
+
+    private static byte[] append(byte[] line, int length, byte[] chunk, int from, int count) {
+        if (length + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+        }
+        System.arraycopy(chunk, from, line, length, count);
+        return line;
+    }
+
+    private byte[] readTail(long end) throws IOException {
+        int length = (int) Math.min(TAIL, end);
+        ByteBuffer tail = ByteBuffer.allocate(length);
+        if (length > 0) {
+            try (FileChannel channel = FileChannel.open(knownHostsFile, StandardOpenOption.READ)) {
+                while (tail.hasRemaining() && channel.read(tail, end - length + tail.position()) > 0) {
+                }
+            }
+        }
+        return tail.array();
+    }
+
+    private boolean tailUnchanged() throws IOException {
+        return Arrays.equals(readTail(loadedLength), loadedTail);
+    }
+
+    private static void addEntry(List<Entry> entries, String line) {
+        Entry entry = parse(line);
+        if (entry != null) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Fields of a line: [marker] hosts keytype key [comment]; null for blanks, comments
+     * and lines too short
+     */
+    private static Entry parse(String line) {
+        String[] fields = new String[4];
+        int count = 0;
+        int i = 0;
+        int n = line.length();
+        while (count < 4) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i >= n) break;
+            if (count == 0 && line.charAt(i) == '#') return null;
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) i++;
+            fields[count++] = line.substring(start, i);
+        }
+
+        if (count >= 1 && fields[0].startsWith("@")) {
+            return count >= 4 ? new Entry(fields[0], fields[1], fields[2], fields[3]) : null;
+        }
+        return count >= 3 ? new Entry(null, fields[0], fields[1], fields[2]) : null;
+    }
+
+    /**
+     * Check if a server's key is known and matches. A host certificate matches if it is
+     * valid for the host and signed by a {@code @cert-authority} key listed for it.
+     */
+    public VerifyResult verify(String host, int port, PublicKey key) {
+        if (key instanceof OpenSshCertificate) {
+            OpenSshCertificate cert = (OpenSshCertificate) key;
+            String caData = encodeKey(cert.getCaPubKey());
+            List<Entry> entries = index.lookup(formatHost(host, port).toLowerCase(Locale.ROOT));
+            for (Entry entry : entries) {
+                if (REVOKED.equals(entry.marker) && entry.keyData.equals(caData)) {
+                    return VerifyResult.REVOKED;
+                }
+            }
+            boolean valid = cert.getType() == OpenSshCertificate.Type.HOST &&
+                    OpenSshCertificate.isValidNow(cert) &&
+                    (cert.getPrincipals().isEmpty() || cert.getPrincipals().contains(host));
+            if (valid) {
+                for (Entry entry : entries) {
+                    if (CERT_AUTHORITY.equals(entry.marker) && entry.keyData.equals(caData)) {
+                        return VerifyResult.MATCH;
+                    }
+                }
+            }
+            // Otherwise the key inside the certificate may be listed on its own
+            key = cert.getCertPubKey();
         }
+        return verify(host, port, KeyUtils.getKeyType(key), encodeKey(key));
     }
-    
+
     /**
      * Check if a host key is known and matches
      */
     public VerifyResult verify(String host, int port, String keyType, String keyData) {
-        String key = formatHost(host, port) + ":" + keyType;
-        
-        String storedKey = hosts.get(key);
-        if (storedKey == null) {
-            // Also check without port for standard port 22
-            if (port == 22) {
-                storedKey = hosts.get(host + ":" + keyType);
-            }
-            if (storedKey == null) {
-                return VerifyResult.UNKNOWN;
+        List<Entry> entries = index.lookup(formatHost(host, port).toLowerCase(Locale.ROOT));
+
+        boolean sameType = false;
+        for (Entry entry : entries) {
+            if (REVOKED.equals(entry.marker) && entry.keyData.equals(keyData)) {
+                return VerifyResult.REVOKED;
             }
         }
-        
-        if (storedKey.equals(keyData)) {
-            return VerifyResult.MATCH;
-        } else {
-            return VerifyResult.CHANGED;
+        for (Entry entry : entries) {
+            if (entry.marker == null && entry.keyType.equals(keyType)) {
+                if (entry.keyData.equals(keyData)) {
+                    return VerifyResult.MATCH;
+                }
+                sameType = true;
+            }
         }
+        return sameType ? VerifyResult.CHANGED : VerifyResult.UNKNOWN;
+    }
+
+    /**
+     * Add a server's key to known_hosts
+     */
+    public void addHost(String host, int port, PublicKey key) throws IOException {
+        addHost(host, port, KeyUtils.getKeyType(key), encodeKey(key));
     }
-    
+
     /**
      * Add a host key to known_hosts
      */
-    public void addHost(String host, int port, String keyType, String keyData) throws IOException {
+    public synchronized void addHost(String host, int port, String keyType, String keyData) throws IOException {
         String hostEntry = formatHost(host, port);
-        
+
         // Ensure .ssh directory exists
-        Path sshDir = knownHostsFile.getParent();
+        Path sshDir = knownHostsFile.toAbsolutePath().getParent();
         if (!Files.exists(sshDir)) {
             Files.createDirectories(sshDir);
+            if (watch) {
+                Watcher.register(this);
+            }
         }
-        
-        // Append to file
+
+        // Append to file, after finishing a last line that has no newline
         String line = hostEntry + " " + keyType + " " + keyData + "\n";
-        Files.writeString(knownHostsFile, line, 
-            StandardOpenOption.CREATE, 
+        if (Files.exists(knownHostsFile) && Files.size(knownHostsFile) > 0) {
+            byte[] last = readTail(Files.size(knownHostsFile));
+            if (last[last.length - 1] != '\n') {
+                line = "\n" + line;
+            }
+        }
+        Files.writeString(knownHostsFile, line,
+            StandardOpenOption.CREATE,
             StandardOpenOption.APPEND);
-        
-        // Update cache
-        hosts.put(hostEntry + ":" + keyType, keyData);
+
+        // Reads just the new line
+        reload();
     }
-    
+
     /**
-     * Remove a host from known_hosts
+     * Remove a host from known_hosts, including hashed entries for it. Lines with
+     * wildcard patterns are left alone.
      */
-    public void removeHost(String host, int port) throws IOException {
+    public synchronized void removeHost(String host, int port) throws IOException {
         if (!Files.exists(knownHostsFile)) return;
-        
-        String hostEntry = formatHost(host, port);
-        
-        List<String> lines = Files.readAllLines(knownHostsFile);
-        List<String> newLines = new ArrayList<>();
-        
-        for (String line : lines) {
-            if (line.trim().isEmpty() || line.startsWith("#")) {
-                newLines.add(line);
-                continue;
-            }
-            
-            String[] parts = line.split("\\s+");
-            if (parts.length >= 1) {
-                boolean remove = false;
-                for (String h : parts[0].split(",")) {
-                    if (h.equals(hostEntry) || h.equals(host)) {
-                        remove = true;
-                        break;
+
+        String hostEntry = formatHost(host, port).toLowerCase(Locale.ROOT);
+        String bareHost = host.toLowerCase(Locale.ROOT);
+
+        Path dir = knownHostsFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, "known_hosts", ".tmp");
+        List<Entry> kept = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(knownHostsFile, StandardCharsets.ISO_8859_1);
+             BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry != null) {
+                    if (!entry.isPattern() &&
+                            (matchesHostList(entry.hosts, hostEntry) || matchesHostList(entry.hosts, bareHost))) {
+                        continue;
                     }
+                    kept.add(entry);
                 }
-                if (!remove) {
-                    newLines.add(line);
-                }
+                writer.write(line);
+                writer.newLine();
             }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
         }
-        
-        Files.write(knownHostsFile, newLines);
-        load(); // Reload
+        Files.move(temp, knownHostsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The kept lines are the new index; nothing to parse again
+        index = new Index(kept);
+        loadedLength = Files.size(knownHostsFile);
+        loadedFileKey = Files.readAttributes(knownHostsFile, BasicFileAttributes.class).fileKey();
+        loadedTail = readTail(loadedLength);
     }
-    
+
     /**
-     * Get all known hosts
+     * Get all known hosts; hashed entries can't be named and are left out
      */
     public Set<String> getHosts() {
-        Set<String> result = new HashSet<>();
-        for (String key : hosts.keySet()) {
-            int lastColon = key.lastIndexOf(':');
-            if (lastColon > 0) {
-                result.add(key.substring(0, lastColon));
-            }
+        Index current = index;
+        Set<String> result = new HashSet<>(current.byHost.keySet());
+        for (Entry entry : current.patterns) {
+            result.add(entry.hosts);
         }
         return result;
     }
-    
-    private String formatHost(String host, int port) {
+
+    /**
+     * Lines in the index
+     */
+    public int size() {
+        return index.all.size();
+    }
+
+    private static String formatHost(String host, int port) {
         if (port == 22) {
             return host;
         }
         return "[" + host + "]:" + port;
     }
-    
+
     /**
-     * Calculate fingerprint from public key
+     * Whether a comma-separated host field covers the name: a hashed entry by its HMAC,
+     * otherwise by glob patterns, where any matching negated pattern rules the name out
      */
-    public static String getFingerprint(PublicKey key) {
+    private static boolean matchesHostList(String hosts, String name) {
+        if (hosts.startsWith(HASH_MAGIC)) {
+            byte[][] decoded = decodeHashed(hosts);
+            return decoded != null &&
+                    matchesHashed(decoded[0], decoded[1], name.getBytes(StandardCharsets.UTF_8), HMAC.get());
+        }
+        boolean matched = false;
+        for (String pattern : hosts.split(",")) {
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            }
+            if (glob(pattern.toLowerCase(Locale.ROOT), 0, name, 0)) {
+                if (negated) {
+                    return false;
+                }
+                matched = true;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Salt and hash of |1|base64(salt)|base64(hash), as written by ssh-keygen -H; null if malformed
+     */
+    private static byte[][] decodeHashed(String hosts) {
+        int bar = hosts.indexOf('|', HASH_MAGIC.length());
+        if (bar < 0) {
+            return null;
+        }
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(key.getEncoded());
-            return "SHA256:" + Base64.getEncoder().encodeToString(digest)
-                                     .replace("=", "");
-        } catch (Exception e) {
-            return "unknown";
+            Base64.Decoder decoder = Base64.getDecoder();
+            return new byte[][]{decoder.decode(hosts.substring(HASH_MAGIC.length(), bar)),
+                    decoder.decode(hosts.substring(bar + 1))};
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
-    
+
+    /**
+     * Whether the hash is HMAC-SHA1(salt, name)
+     */
+    private static boolean matchesHashed(byte[] salt, byte[] hash, byte[] name, Mac mac) {
+        if (salt.length == 0) {
+            return false;
+        }
+        try {
+            mac.init(new SecretKeySpec(salt, "HmacSHA1"));
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(hash, mac.doFinal(name));
+    }
+
+    /**
+     * OpenSSH patterns: * for any run of characters, ? for one
+     */
+    private static boolean glob(String pattern, int p, String name, int n) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == '*') {
+                // Collapse runs of * and try every split
+                while (p < pattern.length() && pattern.charAt(p) == '*') p++;
+                if (p == pattern.length()) return true;
+                for (int i = n; i <= name.length(); i++) {
+                    if (glob(pattern, p, name, i)) return true;
+                }
+                return false;
+            }
+            if (n >= name.length() || (c != '?' && c != name.charAt(n))) {
+                return false;
+            }
+            p++;
+            n++;
+        }
+        return n == name.length();
+    }
+
+    /**
+     * SHA-256 fingerprint of the key as OpenSSH shows it
+     */
+    public static String getFingerprint(PublicKey key) {
+        String fingerprint = KeyUtils.getFingerPrint(key);
+        return fingerprint != null ? fingerprint : "unknown";
+    }
+
     /**
-     * Encode public key to Base64 string (for known_hosts)
+     * Encode public key to Base64 string in SSH wire format (for known_hosts)
      */
     public static String encodeKey(PublicKey key) {
-        return Base64.getEncoder().encodeToString(key.getEncoded());
+        String entry = PublicKeyEntry.toString(key);
+        return entry.substring(entry.indexOf(' ') + 1);
     }
-    
+
     public enum VerifyResult {
         MATCH,      // Key matches stored key
         CHANGED,    // Key exists but doesn't match (potential attack!)
-        UNKNOWN     // Host not in known_hosts
+        UNKNOWN,    // Host not in known_hosts
+        REVOKED     // Key marked @revoked
+    }
+
+    /**
+     * One thread watching the directories of shared instances
+     */
+    private static final class Watcher implements Runnable {
+
+        private static Watcher instance;
+
+        private final WatchService service;
+        private final Map<WatchKey, List<KnownHosts>> watched = new ConcurrentHashMap<>();
+
+        private Watcher() throws IOException {
+            service = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this, "known-hosts-watch");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        static synchronized void register(KnownHosts knownHosts) {
+            Path dir = knownHosts.knownHostsFile.toAbsolutePath().getParent();
+            if (dir == null || !Files.isDirectory(dir)) {
+                return; // Registered once addHost creates it
+            }
+            try {
+                if (instance == null) {
+                    instance = new Watcher();
+                }
+                WatchKey key = dir.register(instance.service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                List<KnownHosts> list = instance.watched.computeIfAbsent(key, k -> new ArrayList<>());
+                synchronized (list) {
+                    if (!list.contains(knownHosts)) {
+                        list.add(knownHosts);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot watch " + dir + ": " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = service.take();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        changed.add((Path) event.context());
+                    }
+                }
+                List<KnownHosts> list = watched.getOrDefault(key, Collections.emptyList());
+                List<KnownHosts> targets;
+                synchronized (list) {
+                    targets = new ArrayList<>(list);
+                }
+                for (KnownHosts knownHosts : targets) {
+                    if (overflow || changed.contains(knownHosts.knownHostsFile.getFileName())) {
+                        knownHosts.reload();
+                    }
+                }
+                if (!key.reset()) {
+                    watched.remove(key);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,305 @@
+package io.xlogistx.jssh.ssh;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.core.CoreModuleProperties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A command running on the server over an exec channel, with its output streamed as it
+ * arrives instead of collected.
+ *
+ * Output is held in the channel's receive window and nowhere else: the window is only
+ * opened again as the caller reads, so a command printing faster than it is consumed
+ * waits on the server and memory stays at one window whatever the output size.
+ * stdout and stderr share the window, so both must be read (or stderr redirected into
+ * stdout) or a command writing to the unread one stalls.
+ */
+public class RemoteCommand implements Closeable {
+
+    /** Receive window, the most output held at once; MINA's default, so throughput is as before */
+    public static final int DEFAULT_WINDOW = 2 * 1024 * 1024;
+
+    /** Largest chunk handed to a subscriber */
+    public static final int CHUNK_SIZE = 32768;
+
+    /**
+     * How a command ended
+     */
+    public static final class Result {
+        private final Integer exitStatus;
+        private final String exitSignal;
+
+        Result(Integer exitStatus, String exitSignal) {
+            this.exitStatus = exitStatus;
+            this.exitSignal = exitSignal;
+        }
+
+        /**
+         * Exit status, or null if the command was killed or the server didn't say
+         */
+        public Integer getExitStatus() {
+            return exitStatus;
+        }
+
+        /**
+         * Name of the signal that killed the command without "SIG", e.g. "TERM", or null
+         */
+        public String getExitSignal() {
+            return exitSignal;
+        }
+
+        public boolean isSuccess() {
+            return exitSignal == null && exitStatus != null && exitStatus == 0;
+        }
+
+        @Override
+        public String toString() {
+            return exitSignal != null ? "signal " + exitSignal : "exit " + exitStatus;
+        }
+    }
+
+    private final String command;
+    private final ChannelExec channel;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final StreamPublisher stdoutPublisher;
+    private final StreamPublisher stderrPublisher;
+
+    RemoteCommand(ClientSession session, String command, int window, boolean redirectErrorStream) throws IOException {
+        this.command = command;
+        channel = session.createExecChannel(command);
+        // Hear about servers that refuse exec instead of waiting for the timeout
+        CoreModuleProperties.REQUEST_EXEC_REPLY.set(channel, true);
+        // The window was sized from the session when the channel was created; size it again
+        CoreModuleProperties.WINDOW_SIZE.set(channel, (long) window);
+        channel.getLocalWindow().init(channel);
+        // A slow reader is backpressure, not a failure
+        CoreModuleProperties.WINDOW_TIMEOUT.set(channel, Duration.ZERO);
+        channel.setRedirectErrorStream(redirectErrorStream);
+        try {
+            channel.open().verify(30, TimeUnit.SECONDS);
+        } catch (IOException | RuntimeException e) {
+            channel.close(true);
+            throw e;
+        }
+        stdoutPublisher = new StreamPublisher(channel.getInvertedOut(), "ssh-exec-out");
+        stderrPublisher = new StreamPublisher(channel.getInvertedErr(), "ssh-exec-err");
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Command's standard output; reading it is what lets the server send more
+     */
+    public InputStream getStdout() {
+        return channel.getInvertedOut();
+    }
+
+    /**
+     * Command's standard error; empty if redirected into stdout
+     */
+    public InputStream getStderr() {
+        return channel.getInvertedErr();
+    }
+
+    /**
+     * Command's standard input; closing it sends EOF
+     */
+    public OutputStream getStdin() {
+        return channel.getInvertedIn();
+    }
+
+    /**
+     * Standard output as chunks for one subscriber. Chunks are read from the channel only
+     * as the subscriber requests them, and cancelling stops the command.
+     */
+    public Flow.Publisher<ByteBuffer> stdoutPublisher() {
+        return stdoutPublisher;
+    }
+
+    /**
+     * Standard error as chunks for one subscriber; cancelling stops the command
+     */
+    public Flow.Publisher<ByteBuffer> stderrPublisher() {
+        return stderrPublisher;
+    }
+
+    /**
+     * Wait for the command to end and its channel to close
+     * @throws IOException if it doesn't within the timeout; it is left running
+     */
+    public Result waitFor(long timeoutMs) throws IOException {
+        Set<ClientChannelEvent> events = channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), timeoutMs);
+        if (events.contains(ClientChannelEvent.TIMEOUT)) {
+            throw new IOException("Command timed out: " + command);
+        }
+        return getResult();
+    }
+
+    /**
+     * How the command ended so far; both null while it runs
+     */
+    public Result getResult() {
+        return new Result(channel.getExitStatus(), channel.getExitSignal());
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen() && !closed.get();
+    }
+
+    /**
+     * Stop early: close the channel at once, dropping unread output. The server hangs up
+     * on the command, which usually ends it.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            channel.close(true);
+        }
+    }
+
+    /**
+     * Copy a stream to a sink until EOF
+     */
+    static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            if (out != null) {
+                out.write(buffer, 0, n);
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Reads the stream on its own thread while the subscriber has demand
+     */
+    private final class StreamPublisher implements Flow.Publisher<ByteBuffer> {
+        private final InputStream in;
+        private final String threadName;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        StreamPublisher(InputStream in, String threadName) {
+            this.in = in;
+            this.threadName = threadName;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Output already has a subscriber"));
+                return;
+            }
+            Pump pump = new Pump(in, subscriber);
+            subscriber.onSubscribe(pump);
+            Thread thread = new Thread(pump, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private final class Pump implements Flow.Subscription, Runnable {
+        private final InputStream in;
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean cancelled;
+        private IllegalArgumentException invalid;
+
+        Pump(InputStream in, Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.in = in;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                invalid = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                notifyAll();
+            }
+            RemoteCommand.this.close();
+        }
+
+        /**
+         * Wait for demand; false once cancelled
+         */
+        private synchronized boolean awaitDemand() throws InterruptedException {
+            while (demand == 0 && !cancelled && invalid == null) {
+                wait();
+            }
+            if (invalid != null) {
+                throw invalid;
+            }
+            if (cancelled) {
+                return false;
+            }
+            demand--;
+            return true;
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                while (awaitDemand()) {
+                    int n = in.read(buffer);
+                    if (n < 0) {
+                        subscriber.onComplete();
+                        return;
+                    }
+                    // The subscriber may keep the chunk, so each one is a copy
+                    subscriber.onNext(ByteBuffer.wrap(Arrays.copyOf(buffer, n)));
+                }
+            } catch (IOException e) {
+                if (!isCancelled()) {
+                    subscriber.onError(e);
+                }
+            } catch (IllegalArgumentException e) {
+                RemoteCommand.this.close();
+                subscriber.onError(e);
+            } catch (InterruptedException e) {
+                RemoteCommand.this.close();
+            }
+        }
+    }
+}
@@ -1,18 +1,20 @@
 package io.xlogistx.jssh.ssh;
 
-import org.apache.sshd.client.SshClient;
-import org.apache.sshd.client.channel.ChannelExec;
+import io.xlogistx.jssh.sftp.SFTPMetrics;
 import org.apache.sshd.client.channel.ChannelShell;
-import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.future.ConnectFuture;
-import org.apache.sshd.client.keyverifier.ServerKeyVerifier;
 import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.kex.KexProposalOption;
 import org.apache.sshd.common.forward.PortForwardingEventListener;
 import org.apache.sshd.common.session.SessionHeartbeatController;
 import org.apache.sshd.common.util.net.SshdSocketAddress;
 import org.apache.sshd.sftp.client.SftpClient;
 import org.apache.sshd.sftp.client.SftpClientFactory;
-import org.apache.sshd.common.forward.DefaultForwarderFactory;
 
 import java.io.*;
 import java.net.SocketAddress;
@@ -20,17 +22,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Manages SSH connections using Apache MINA SSHD
+ * Manages SSH connections using Apache MINA SSHD.
+ *
+ * All connections share one client, and connections to the same user@host:port can share
+ * one session through the {@link SessionRegistry}.
  */
 public class SSHConnection {
 
-    private SshClient client;
     private ClientSession session;
+    private boolean holdsSession = false;
     private ChannelShell shellChannel;
 
     private String host;
@@ -38,11 +46,21 @@ public class SSHConnection {
     private String username;
     private String serverVersion;
     private boolean connected = false;
+    private int sftpWindow = 64;
+    private int sftpChunkSize = 32768;
+    private final SFTPMetrics sftpMetrics = new SFTPMetrics();
+    private List<NamedFactory<Compression>> compressionFactories;
 
     private HostKeyVerifier hostKeyVerifier;
+    private KnownHosts knownHosts = KnownHosts.getDefault();
+    private volatile PublicKey serverKey;
+    private volatile KnownHosts.VerifyResult serverKeyStatus;
 
+    /**
+     * Asks the user about a server key that isn't in known_hosts, or that differs from the one there
+     */
     public interface HostKeyVerifier {
-        boolean verify(String host, int port, String keyType, String fingerprint, PublicKey key);
+        boolean verify(String host, int port, String keyType, String fingerprint, PublicKey key, boolean changed);
     }
 
     public interface ConnectionListener {
@@ -56,63 +74,154 @@ public class SSHConnection {
     private ConnectionListener listener;
 
     public SSHConnection() {
-        client = SshClient.setUpDefaultClient();
-
-        // Enable port forwarding - accept all forwarding requests
-        client.setForwarderFactory(DefaultForwarderFactory.INSTANCE);
-        client.setForwardingFilter(org.apache.sshd.server.forward.AcceptAllForwardingFilter.INSTANCE);
-
-        // Set up host key verification
-        client.setServerKeyVerifier(new ServerKeyVerifier() {
-            @Override
-            public boolean verifyServerKey(ClientSession session, SocketAddress remoteAddress, PublicKey serverKey) {
-                if (hostKeyVerifier == null) {
-                    return true; // Accept all if no verifier
-                }
+    }
 
-                String keyType = getKeyType(serverKey);
-                String fingerprint = getFingerprint(serverKey);
+    /**
+     * Settings of this connection for a new session, before key exchange starts
+     */
+    private void setUpSession(ClientSession session) {
+        if (compressionFactories != null) {
+            session.setCompressionFactories(compressionFactories);
+        }
+        session.setServerKeyVerifier(this::verifyServerKey);
+    }
 
-                // Must run on EDT for Swing dialogs
-                if (javax.swing.SwingUtilities.isEventDispatchThread()) {
-                    return hostKeyVerifier.verify(host, port, keyType, fingerprint, serverKey);
-                } else {
-                    final java.util.concurrent.atomic.AtomicBoolean result =
-                            new java.util.concurrent.atomic.AtomicBoolean(false);
-                    try {
-                        javax.swing.SwingUtilities.invokeAndWait(() -> {
-                            result.set(hostKeyVerifier.verify(host, port, keyType, fingerprint, serverKey));
-                        });
-                    } catch (Exception e) {
-                        return false;
-                    }
-                    return result.get();
-                }
+    /**
+     * Runs during key exchange on a MINA I/O thread that every session shares, so it must
+     * not wait for the user. Known keys are settled here; unknown and changed ones are let
+     * through and put to the user by {@link #confirmServerKey} before anything is sent
+     * to authenticate.
+     */
+    private boolean verifyServerKey(ClientSession session, SocketAddress remoteAddress, PublicKey serverKey) {
+        PublicKey accepted = this.serverKey;
+        if (accepted != null) {
+            // Re-keying; the server must keep the key it was accepted with
+            return KeyUtils.compareKeys(accepted, serverKey);
+        }
+        this.serverKey = serverKey;
+        serverKeyStatus = knownHosts != null ?
+                knownHosts.verify(host, port, serverKey) : KnownHosts.VerifyResult.UNKNOWN;
+        return true;
+    }
+
+    /**
+     * Wait for key exchange, then ask the user about the server key unless known_hosts has it.
+     * Runs on the connecting thread; a key accepted for the first time is added to known_hosts.
+     */
+    private void confirmServerKey(long timeoutMs) throws IOException {
+        Set<ClientSession.ClientSessionEvent> events = session.waitFor(
+                EnumSet.of(ClientSession.ClientSessionEvent.WAIT_AUTH, ClientSession.ClientSessionEvent.CLOSED),
+                timeoutMs);
+        if (events.contains(ClientSession.ClientSessionEvent.TIMEOUT)) {
+            throw new IOException("Key exchange timeout");
+        }
+        if (events.contains(ClientSession.ClientSessionEvent.CLOSED) || serverKey == null) {
+            throw new IOException("Connection closed during key exchange");
+        }
+        if (serverKeyStatus == KnownHosts.VerifyResult.REVOKED) {
+            throw new IOException("Host key is marked @revoked in known_hosts");
+        }
+        if (hostKeyVerifier == null || serverKeyStatus == KnownHosts.VerifyResult.MATCH) {
+            return; // Accept all if no verifier
+        }
+
+        PublicKey key = serverKey;
+        boolean changed = serverKeyStatus == KnownHosts.VerifyResult.CHANGED;
+        String keyType = getKeyType(key);
+        String fingerprint = getFingerprint(key);
+
+        // Must run on EDT for Swing dialogs
+        boolean accepted;
+        if (javax.swing.SwingUtilities.isEventDispatchThread()) {
+            accepted = hostKeyVerifier.verify(host, port, keyType, fingerprint, key, changed);
+        } else {
+            final java.util.concurrent.atomic.AtomicBoolean result =
+                    new java.util.concurrent.atomic.AtomicBoolean(false);
+            try {
+                javax.swing.SwingUtilities.invokeAndWait(() -> {
+                    result.set(hostKeyVerifier.verify(host, port, keyType, fingerprint, key, changed));
+                });
+            } catch (Exception e) {
+                result.set(false);
             }
-        });
+            accepted = result.get();
+        }
+        if (!accepted) {
+            throw new IOException("Host key rejected");
+        }
 
-        client.start();
+        // A changed key is accepted for this connection only
+        if (!changed && knownHosts != null) {
+            try {
+                knownHosts.addHost(host, port, key);
+            } catch (IOException e) {
+                System.err.println("Failed to save host key: " + e.getMessage());
+            }
+        }
     }
 
     public void setHostKeyVerifier(HostKeyVerifier verifier) {
         this.hostKeyVerifier = verifier;
     }
 
+    /**
+     * Where server keys are looked up and saved; null to ask about every key
+     */
+    public void setKnownHosts(KnownHosts knownHosts) {
+        this.knownHosts = knownHosts;
+    }
+
     public void setConnectionListener(ConnectionListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Number of SFTP read requests kept in flight per file
+     */
+    public void setSftpWindow(int sftpWindow) {
+        this.sftpWindow = sftpWindow;
+    }
+
+    /**
+     * Size in bytes of each SFTP read request
+     */
+    public void setSftpChunkSize(int sftpChunkSize) {
+        this.sftpChunkSize = sftpChunkSize;
+    }
+
+    /**
+     * Offer zlib@openssh.com at the given deflate level, falling back to no compression
+     * if the server doesn't support it. Takes effect on the next connect; a shared session
+     * keeps what was agreed when it was opened.
+     */
+    public void setCompression(boolean enabled, int level) {
+        List<NamedFactory<Compression>> factories = new ArrayList<>();
+        if (enabled) {
+            factories.add(new ZlibCompressionFactory(level));
+        }
+        factories.add(BuiltinCompressions.none);
+        compressionFactories = factories;
+    }
+
+    /**
+     * Compression negotiated for data we send, such as "zlib@openssh.com" or "none"
+     */
+    public String getCompression() {
+        return session != null ? session.getNegotiatedKexParameter(KexProposalOption.C2SCOMP) : null;
+    }
+
     /**
      * Connect to SSH server
      */
     public void connect(String host, int port, long timeoutMs) throws IOException {
         this.host = host;
         this.port = port;
+        serverKey = null;
 
-        ConnectFuture connectFuture = client.connect(null, host, port);
+        ConnectFuture connectFuture = SessionRegistry.getInstance().getClient().connect(null, host, port,
+                AttributeRepository.ofKeyValuePair(SessionRegistry.SESSION_SETUP, this::setUpSession), null);
 
-        // Use longer timeout for connect since host key verification may require user interaction
-        if (!connectFuture.await(timeoutMs + 60000, TimeUnit.MILLISECONDS)) {
+        if (!connectFuture.await(timeoutMs, TimeUnit.MILLISECONDS)) {
             throw new IOException("Connection timeout");
         }
 
@@ -122,6 +231,11 @@ public class SSHConnection {
         }
 
         session = connectFuture.getSession();
+        holdsSession = true;
+
+        // Host key verification, which may wait for the user, happens here rather than on the I/O thread
+        confirmServerKey(timeoutMs);
+
         session.setSessionHeartbeat(SessionHeartbeatController.HeartbeatType.IGNORE, TimeUnit.SECONDS, 30);
 
         serverVersion = session.getServerVersion();
@@ -132,6 +246,39 @@ public class SSHConnection {
         }
     }
 
+    /**
+     * Use the logged-in session another connection holds to the same account, instead of
+     * connecting and authenticating
+     * @return false if there is none; connect and authenticate as usual then
+     */
+    public boolean connectShared(String username, String host, int port) {
+        ClientSession shared = SessionRegistry.getInstance().acquire(username, host, port);
+        if (shared == null) {
+            return false;
+        }
+        synchronized (this) {
+            this.host = host;
+            this.port = port;
+            this.username = username;
+            session = shared;
+            holdsSession = true;
+        }
+        serverVersion = session.getServerVersion();
+        connected = true;
+
+        if (listener != null) {
+            listener.onConnected(serverVersion);
+        }
+        return true;
+    }
+
+    /**
+     * Whether other connections use this connection's session too
+     */
+    public boolean isShared() {
+        return session != null && SessionRegistry.getInstance().getReferences(session) > 1;
+    }
+
     /**
      * Authenticate with password
      */
@@ -160,6 +307,7 @@ public class SSHConnection {
     private boolean authenticate(long timeoutMs) throws IOException {
         try {
             session.auth().verify(timeoutMs, TimeUnit.MILLISECONDS);
+            SessionRegistry.getInstance().register(username, host, port, session);
             return true;
         } catch (org.apache.sshd.common.SshException e) {
             e.printStackTrace();
@@ -203,6 +351,29 @@ public class SSHConnection {
         }
     }
 
+    /**
+     * Whether a key file needs a passphrase to load. False if it can't be read, leaving
+     * the error to the login that follows.
+     */
+    public static boolean isKeyEncrypted(String keyFile) {
+        if (keyFile == null || keyFile.isEmpty()) {
+            return false;
+        }
+        Path path = Path.of(keyFile.replace("~", System.getProperty("user.home")));
+        boolean[] asked = {false};
+        org.apache.sshd.common.config.keys.FilePasswordProvider passwordProvider = (session, resourceKey, retryIndex) -> {
+            asked[0] = true;
+            return null;
+        };
+        try (InputStream is = Files.newInputStream(path)) {
+            org.apache.sshd.common.util.security.SecurityUtils.getKeyPairResourceParser().loadKeyPairs(null,
+                    org.apache.sshd.common.NamedResource.ofName(path.toString()), passwordProvider, is);
+        } catch (IOException | java.security.GeneralSecurityException | RuntimeException e) {
+            // Refusing the passphrase makes an encrypted key fail to load
+        }
+        return asked[0];
+    }
+
     /**
      * Open interactive shell
      */
@@ -332,31 +503,121 @@ public class SSHConnection {
     }
 
     /**
-     * Execute command
+     * Start a command with its output streamed; see {@link RemoteCommand}
      */
-    public String executeCommand(String command, long timeoutMs) throws IOException {
-        ChannelExec channel = session.createExecChannel(command);
-
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    public RemoteCommand startCommand(String command) throws IOException {
+        return startCommand(command, RemoteCommand.DEFAULT_WINDOW, false);
+    }
 
-        channel.setOut(stdout);
-        channel.setErr(stderr);
+    /**
+     * Start a command with its output streamed
+     * @param window most output held in memory at once
+     * @param redirectErrorStream whether stderr is sent through stdout
+     */
+    public RemoteCommand startCommand(String command, int window, boolean redirectErrorStream) throws IOException {
+        return new RemoteCommand(session, command, window, redirectErrorStream);
+    }
 
-        channel.open().verify(30, TimeUnit.SECONDS);
+    /**
+     * Run a command with no input, writing its output to the sinks as it arrives, in
+     * constant memory however much there is. A sink throwing stops the command.
+     * @param out sink for stdout, or null to discard it
+     * @param err sink for stderr, or null to discard it
+     * @return exit status and signal; a non-zero status is not an error here
+     * @throws IOException if the command can't run, times out (and is stopped), or a sink fails
+     */
+    public RemoteCommand.Result executeCommand(String command, OutputStream out, OutputStream err,
+                                               long timeoutMs) throws IOException {
+        try (RemoteCommand remote = startCommand(command)) {
+            remote.getStdin().close();
+
+            // Both streams share the channel window, so both are read at once
+            IOException[] failure = new IOException[1];
+            Thread outPump = pump(remote, remote.getStdout(), out, failure, "ssh-exec-out");
+            Thread errPump = pump(remote, remote.getStderr(), err, failure, "ssh-exec-err");
+
+            // On a timeout the command is stopped as the exception leaves this block
+            RemoteCommand.Result result = remote.waitFor(timeoutMs);
+            try {
+                outPump.join();
+                errPump.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for command output");
+            }
+            synchronized (failure) {
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            return result;
+        }
+    }
 
-        channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), timeoutMs);
+    private static Thread pump(RemoteCommand remote, InputStream in, OutputStream sink,
+                               IOException[] failure, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                RemoteCommand.copy(in, sink);
+            } catch (IOException e) {
+                if (remote.isOpen()) {
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                    remote.close();
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
 
-        channel.close();
+    /**
+     * Execute command and return its output; fails if it exits non-zero or is killed.
+     * Output is collected in memory, so use the streaming overload for large output.
+     */
+    public String executeCommand(String command, long timeoutMs) throws IOException {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
-        String error = stderr.toString();
-        if (!error.isEmpty()) {
-            throw new IOException(error);
+        RemoteCommand.Result result = executeCommand(command, stdout, stderr, timeoutMs);
+        Integer status = result.getExitStatus();
+        if (result.getExitSignal() != null || (status != null && status != 0)) {
+            throw new IOException("Command failed (" + result + "): " + stderr.toString().trim());
         }
 
         return stdout.toString();
     }
 
+    /**
+     * MD5 of each {@code blockSize} block of a remote file, computed on the server with
+     * GNU split and md5sum
+     * @throws IOException if the server cannot run the command or it fails
+     */
+    public List<String> remoteBlockChecksums(String path, int blockSize, long timeoutMs) throws IOException {
+        String command = "split -b " + blockSize + " --filter=md5sum -- '" + path.replace("'", "'\\''") + "'";
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        RemoteCommand.Result result = executeCommand(command, stdout, stderr, timeoutMs);
+        if (!result.isSuccess()) {
+            throw new IOException("Checksum command failed (" + result + "): " + stderr.toString().trim());
+        }
+
+        List<String> checksums = new ArrayList<>();
+        for (String line : stdout.toString().split("\n")) {
+            int space = line.indexOf(' ');
+            if (space == 32) {
+                checksums.add(line.substring(0, space));
+            } else if (!line.trim().isEmpty()) {
+                throw new IOException("Unexpected checksum output: " + line);
+            }
+        }
+        return checksums;
+    }
+
     /**
      * Open SFTP client
      */
@@ -406,11 +667,14 @@ public class SSHConnection {
         } catch (IOException e) {
         }
 
-        try {
-            if (session != null) {
-                session.close();
-            }
-        } catch (IOException e) {
+        ClientSession held;
+        synchronized (this) {
+            held = holdsSession ? session : null;
+            holdsSession = false;
+        }
+        if (held != null) {
+            // Closes the session unless other connections still use it
+            SessionRegistry.getInstance().release(held);
         }
 
         if (listener != null) {
@@ -419,13 +683,10 @@ public class SSHConnection {
     }
 
     /**
-     * Close client
+     * Close the connection; the shared client keeps running
      */
     public void close() {
         disconnect();
-        if (client != null) {
-            client.stop();
-        }
     }
 
     // Getters
@@ -449,6 +710,21 @@ public class SSHConnection {
         return serverVersion;
     }
 
+    public int getSftpWindow() {
+        return sftpWindow;
+    }
+
+    public int getSftpChunkSize() {
+        return sftpChunkSize;
+    }
+
+    /**
+     * Transfer metrics of all SFTP channels on this connection
+     */
+    public SFTPMetrics getSftpMetrics() {
+        return sftpMetrics;
+    }
+
     public ClientSession getSession() {
         return session;
     }
@@ -476,12 +752,6 @@ public class SSHConnection {
     }
 
     private String getFingerprint(PublicKey key) {
-        try {
-            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(key.getEncoded());
-            return "SHA256:" + Base64.getEncoder().encodeToString(digest).replace("=", "");
-        } catch (Exception e) {
-            return "unknown";
-        }
+        return KnownHosts.getFingerprint(key);
     }
 }
@@ -0,0 +1,196 @@
+package io.xlogistx.jssh.ssh;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.common.forward.DefaultForwarderFactory;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The process-wide SshClient, and its authenticated sessions by user@host:port.
+ *
+ * Like OpenSSH's ControlMaster, a new tab to an account that is already logged in opens
+ * its shell, SFTP or exec channels on the existing session instead of doing another TCP
+ * connect, key exchange and login. Every SSHConnection holding a session counts as one
+ * reference, and the session is closed when the last one is released.
+ */
+public class SessionRegistry {
+
+    /**
+     * Connection context attribute given each new session before key exchange starts,
+     * for settings that differ between connections on the shared client
+     */
+    public static final AttributeRepository.AttributeKey<Consumer<ClientSession>> SESSION_SETUP =
+            new AttributeRepository.AttributeKey<>();
+
+    private static SessionRegistry instance;
+
+    private static class Entry {
+        final String key;
+        final ClientSession session;
+        int references = 1;
+
+        Entry(String key, ClientSession session) {
+            this.key = key;
+            this.session = session;
+        }
+    }
+
+    private final SshClient client;
+    private final Map<String, Entry> byKey = new HashMap<>();
+    private final Map<ClientSession, Entry> bySession = new IdentityHashMap<>();
+
+    private SessionRegistry() {
+        client = SshClient.setUpDefaultClient();
+
+        // Enable port forwarding - accept all forwarding requests
+        client.setForwarderFactory(DefaultForwarderFactory.INSTANCE);
+        client.setForwardingFilter(org.apache.sshd.server.forward.AcceptAllForwardingFilter.INSTANCE);
+
+        client.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(Session session) {
+                if (session instanceof ClientSession) {
+                    AttributeRepository context = ((ClientSession) session).getConnectionContext();
+                    Consumer<ClientSession> setup = context != null ? context.getAttribute(SESSION_SETUP) : null;
+                    if (setup != null) {
+                        setup.accept((ClientSession) session);
+                    }
+                }
+            }
+        });
+
+        client.start();
+    }
+
+    public static synchronized SessionRegistry getInstance() {
+        if (instance == null) {
+            instance = new SessionRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Client that every connection opens its session with
+     */
+    public SshClient getClient() {
+        return client;
+    }
+
+    static String key(String username, String host, int port) {
+        return username + "@" + host + ":" + port;
+    }
+
+    /**
+     * Whether the account has a logged-in session to share
+     */
+    public synchronized boolean contains(String username, String host, int port) {
+        Entry entry = byKey.get(key(username, host, port));
+        return entry != null && entry.session.isOpen() && entry.session.isAuthenticated();
+    }
+
+    /**
+     * Logged-in session to the account with one more reference, or null if there is none
+     */
+    public synchronized ClientSession acquire(String username, String host, int port) {
+        Entry entry = byKey.get(key(username, host, port));
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.session.isOpen() || !entry.session.isAuthenticated()) {
+            remove(entry);
+            return null;
+        }
+        entry.references++;
+        return entry.session;
+    }
+
+    /**
+     * Offer a session that has just logged in for sharing, holding one reference for the caller.
+     * If the account already has a shared session, the new one stays private to the caller.
+     */
+    public synchronized void register(String username, String host, int port, ClientSession session) {
+        String key = key(username, host, port);
+        Entry existing = byKey.get(key);
+        if (existing != null && existing.session.isOpen()) {
+            return;
+        }
+        Entry entry = new Entry(key, session);
+        byKey.put(key, entry);
+        bySession.put(session, entry);
+
+        // Forget it if the server or the network ends it
+        session.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionClosed(Session closed) {
+                synchronized (SessionRegistry.this) {
+                    if (bySession.get(session) == entry) {
+                        remove(entry);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop one reference; the session is closed when none are left, or at once if it was never shared
+     */
+    public void release(ClientSession session) {
+        synchronized (this) {
+            Entry entry = bySession.get(session);
+            if (entry != null) {
+                if (--entry.references > 0) {
+                    return;
+                }
+                remove(entry);
+            }
+        }
+        try {
+            session.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * References held on a session, 0 if it isn't shared
+     */
+    public synchronized int getReferences(ClientSession session) {
+        Entry entry = bySession.get(session);
+        return entry != null ? entry.references : 0;
+    }
+
+    private void remove(Entry entry) {
+        bySession.remove(entry.session);
+        if (byKey.get(entry.key) == entry) {
+            byKey.remove(entry.key);
+        }
+    }
+
+    /**
+     * Close every shared session and stop the client, on exit
+     */
+    public void shutdown() {
+        List<ClientSession> open;
+        synchronized (this) {
+            open = new ArrayList<>(bySession.keySet());
+            byKey.clear();
+            bySession.clear();
+        }
+        for (ClientSession session : open) {
+            try {
+                session.close();
+            } catch (IOException e) {
+            }
+        }
+        client.stop();
+    }
+}
@@ -0,0 +1,70 @@
+package io.xlogistx.jssh.ssh;
+
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.compression.CompressionDelayedZlib;
+import org.apache.sshd.common.compression.CompressionFactory;
+
+import java.util.zip.Deflater;
+
+/**
+ * zlib@openssh.com with a chosen deflate level.
+ *
+ * MINA's built-in factory always deflates at the default level. Compression only starts
+ * once the user is authenticated, like OpenSSH, so nothing is compressed during key exchange.
+ * The level only affects what we send; the server picks its own.
+ */
+public class ZlibCompressionFactory implements CompressionFactory {
+
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private final int level;
+
+    /**
+     * @param level 1 (fastest) to 9 (smallest), or {@link #DEFAULT_LEVEL}
+     */
+    public ZlibCompressionFactory(int level) {
+        if (level != DEFAULT_LEVEL && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Compression level must be 1 to 9: " + level);
+        }
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return "zlib@openssh.com";
+    }
+
+    @Override
+    public boolean isDelayed() {
+        return true;
+    }
+
+    @Override
+    public boolean isCompressionExecuted() {
+        return true;
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public Compression create() {
+        return new CompressionDelayedZlib() {
+            @Override
+            public void init(Type type, int ignored) {
+                super.init(type, level);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "(" + level + ")";
+    }
+}
@@ -0,0 +1,98 @@
+package io.xlogistx.jssh.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Packed terminal cell: one long per cell holding the code point, colours and attributes.
+ * <pre>
+ *   bits  0-20  Unicode code point
+ *   bits 21-36  foreground colour
+ *   bits 37-52  background colour
+ *   bits 53-63  attribute flags
+ * </pre>
+ * Colours below 256 are palette indices. Colours with {@link #RGB_COLOR} set are reserved
+ * for references into a 24-bit colour table, so true colour fits without widening cells.
+ */
+public final class Cell {
+
+    // Attribute flags
+    public static final int BOLD = 1;
+    public static final int REVERSE = 1 << 1;
+
+    public static final int RGB_COLOR = 0x8000;
+
+    public static final int DEFAULT_FG = 7;  // White
+    public static final int DEFAULT_BG = 0;  // Black
+
+    private static final int FG_SHIFT = 21;
+    private static final int BG_SHIFT = 37;
+    private static final int ATTR_SHIFT = 53;
+
+    private static final long CODE_POINT_MASK = 0x1FFFFFL;
+    private static final long COLOR_MASK = 0xFFFFL;
+    private static final long ATTR_MASK = 0x7FFL;
+
+    /** Space with default colours and no attributes */
+    public static final long BLANK = pack(' ', DEFAULT_FG, DEFAULT_BG, 0);
+
+    private Cell() {
+    }
+
+    public static long pack(int codePoint, int fg, int bg, int attrs) {
+        return (codePoint & CODE_POINT_MASK)
+                | ((fg & COLOR_MASK) << FG_SHIFT)
+                | ((bg & COLOR_MASK) << BG_SHIFT)
+                | ((attrs & ATTR_MASK) << ATTR_SHIFT);
+    }
+
+    public static int codePoint(long cell) {
+        return (int) (cell & CODE_POINT_MASK);
+    }
+
+    public static int fg(long cell) {
+        return (int) ((cell >>> FG_SHIFT) & COLOR_MASK);
+    }
+
+    public static int bg(long cell) {
+        return (int) ((cell >>> BG_SHIFT) & COLOR_MASK);
+    }
+
+    public static int attrs(long cell) {
+        return (int) ((cell >>> ATTR_SHIFT) & ATTR_MASK);
+    }
+
+    public static boolean isBold(long cell) {
+        return (attrs(cell) & BOLD) != 0;
+    }
+
+    public static boolean isReverse(long cell) {
+        return (attrs(cell) & REVERSE) != 0;
+    }
+
+    /**
+     * Colours and attributes of a cell without its character
+     */
+    public static long style(long cell) {
+        return cell & ~CODE_POINT_MASK;
+    }
+
+    /**
+     * New line of blank cells
+     */
+    public static long[] blankLine(int cols) {
+        long[] line = new long[cols];
+        Arrays.fill(line, BLANK);
+        return line;
+    }
+
+    /**
+     * Length of a line without its trailing blank cells
+     */
+    public static int trimmedLength(long[] line) {
+        int length = line.length;
+        while (length > 0 && line[length - 1] == BLANK) {
+            length--;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,380 @@
+package io.xlogistx.jssh.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold scrollback tier. Lines are grouped into fixed-size blocks, deflated and appended
+ * to a temp file, so only a small index per block stays on the heap. Blocks are inflated
+ * lazily when a line is read, and the last few inflated blocks are cached.
+ */
+class CompressedLineStore {
+
+    static final int BLOCK_LINES = 256;
+
+    private static final int CACHED_BLOCKS = 4;
+    private static final long MIN_COMPACT_BYTES = 4 * 1024 * 1024;
+    private static final long[] EMPTY_LINE = new long[0];
+
+    private int capacity;
+
+    // Lines waiting to fill the next block
+    private final long[][] pending = new long[BLOCK_LINES][];
+    private int pendingCount = 0;
+
+    // Index of the blocks written to the file
+    private long[] offsets = new long[64];
+    private int[] compressedLengths = new int[64];
+    private int[] rawLengths = new int[64];
+    private int firstBlock = 0;
+    private int blockCount = 0;
+    private int skip = 0;  // Lines already dropped from the first block
+
+    private File file;
+    private FileChannel channel;
+    private long fileLength = 0;
+    private long deadBytes = 0;  // Bytes of dropped blocks at the start of the file
+    private boolean failed = false;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] raw = new byte[BLOCK_LINES * 64];
+    private byte[] compressed = new byte[BLOCK_LINES * 64];
+
+    // Inflated blocks, keyed by block number since the store was created
+    private long blockBase = 0;  // Block number of index 0
+    private final Map<Long, long[][]> cache = new LinkedHashMap<Long, long[][]>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[][]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    CompressedLineStore(int capacity) {
+        this.capacity = capacity;
+    }
+
+    int size() {
+        return (blockCount * BLOCK_LINES - skip) + pendingCount;
+    }
+
+    /**
+     * Bytes written to the temp file, dropped blocks not yet compacted away included
+     */
+    long fileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Append a line, dropping the oldest line once the store is full
+     */
+    void add(long[] line) {
+        pending[pendingCount++] = line;
+        if (pendingCount == BLOCK_LINES) {
+            writeBlock();
+        }
+        while (size() > capacity) {
+            dropOldest();
+        }
+    }
+
+    /**
+     * Change the capacity, dropping the oldest lines that no longer fit
+     */
+    void setCapacity(int capacity) {
+        this.capacity = capacity;
+        while (size() > capacity) {
+            dropOldest();
+        }
+    }
+
+    /**
+     * Get a line, 0 being the oldest
+     */
+    long[] get(int index) {
+        int cold = blockCount * BLOCK_LINES - skip;
+        if (index >= cold) {
+            return pending[index - cold];
+        }
+
+        int line = skip + index;
+        int block = firstBlock + line / BLOCK_LINES;
+        long[][] lines = readBlock(block);
+        return lines != null ? lines[line % BLOCK_LINES] : EMPTY_LINE;
+    }
+
+    void clear() {
+        Arrays.fill(pending, null);
+        pendingCount = 0;
+        blockBase += firstBlock + blockCount;
+        firstBlock = 0;
+        blockCount = 0;
+        skip = 0;
+        cache.clear();
+        if (channel != null) {
+            try {
+                channel.truncate(0);
+            } catch (IOException e) {
+                System.err.println("Failed to truncate scrollback file: " + e.getMessage());
+            }
+        }
+        fileLength = 0;
+        deadBytes = 0;
+    }
+
+    /**
+     * Release the temp file and the compressor
+     */
+    void close() {
+        clear();
+        closeFile();
+        deflater.end();
+        inflater.end();
+    }
+
+    private void dropOldest() {
+        if (blockCount == 0) {
+            // Only reachable with a capacity below one block
+            System.arraycopy(pending, 1, pending, 0, pendingCount - 1);
+            pending[--pendingCount] = null;
+            return;
+        }
+
+        if (++skip == BLOCK_LINES) {
+            cache.remove(blockBase + firstBlock);
+            deadBytes += compressedLengths[firstBlock];
+            firstBlock++;
+            blockCount--;
+            skip = 0;
+            if (deadBytes > MIN_COMPACT_BYTES && deadBytes > fileLength - deadBytes) {
+                compact();
+            }
+        }
+    }
+
+    private void writeBlock() {
+        int rawLength = encode();
+        if (failed || !openFile()) {
+            // No file - the block is lost but the buffer keeps working
+            Arrays.fill(pending, null);
+            pendingCount = 0;
+            return;
+        }
+
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLength);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, length);
+            long position = fileLength;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write scrollback block: " + e.getMessage());
+            failed = true;
+            closeFile();
+            Arrays.fill(pending, null);
+            pendingCount = 0;
+            return;
+        }
+
+        ensureIndexCapacity();
+        int index = firstBlock + blockCount;
+        offsets[index] = fileLength;
+        compressedLengths[index] = length;
+        rawLengths[index] = rawLength;
+        blockCount++;
+        fileLength += length;
+
+        // The block is likely to be read back soon when scrolling, keep it inflated
+        cache.put(blockBase + index, pending.clone());
+        Arrays.fill(pending, null);
+        pendingCount = 0;
+    }
+
+    /**
+     * Serialize the pending lines into the raw buffer: per line a cell count followed by the cells
+     */
+    private int encode() {
+        int required = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            required += 4 + pending[i].length * 8;
+        }
+        if (raw.length < required) {
+            raw = new byte[required];
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        for (int i = 0; i < pendingCount; i++) {
+            long[] line = pending[i];
+            buffer.putInt(line.length);
+            for (long cell : line) {
+                buffer.putLong(cell);
+            }
+        }
+        return buffer.position();
+    }
+
+    private long[][] readBlock(int block) {
+        long key = blockBase + block;
+        long[][] lines = cache.get(key);
+        if (lines != null || failed) {
+            return lines;
+        }
+
+        int length = compressedLengths[block];
+        int rawLength = rawLengths[block];
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(compressed, 0, length);
+            long position = offsets[block];
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) throw new IOException("Unexpected end of scrollback file");
+                position += n;
+            }
+
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                n += inflater.inflate(raw, n, rawLength - n);
+            }
+        } catch (IOException | DataFormatException e) {
+            System.err.println("Failed to read scrollback block: " + e.getMessage());
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw, 0, rawLength);
+        lines = new long[BLOCK_LINES][];
+        for (int i = 0; i < BLOCK_LINES; i++) {
+            long[] line = new long[buffer.getInt()];
+            for (int j = 0; j < line.length; j++) {
+                line[j] = buffer.getLong();
+            }
+            lines[i] = line;
+        }
+        cache.put(key, lines);
+        return lines;
+    }
+
+    private void ensureIndexCapacity() {
+        if (firstBlock + blockCount < offsets.length) return;
+
+        if (firstBlock > 0) {
+            // Reuse the slots of dropped blocks
+            System.arraycopy(offsets, firstBlock, offsets, 0, blockCount);
+            System.arraycopy(compressedLengths, firstBlock, compressedLengths, 0, blockCount);
+            System.arraycopy(rawLengths, firstBlock, rawLengths, 0, blockCount);
+            blockBase += firstBlock;  // Keeps the cache keys valid
+            firstBlock = 0;
+        }
+        if (blockCount == offsets.length) {
+            int size = offsets.length * 2;
+            offsets = Arrays.copyOf(offsets, size);
+            compressedLengths = Arrays.copyOf(compressedLengths, size);
+            rawLengths = Arrays.copyOf(rawLengths, size);
+        }
+    }
+
+    /**
+     * Move the live blocks to a fresh file once most of the file belongs to dropped blocks
+     */
+    private void compact() {
+        File oldFile = file;
+        FileChannel oldChannel = channel;
+        long start = offsets[firstBlock];
+        long liveBytes = fileLength - start;
+
+        file = null;
+        channel = null;
+        if (!openFile()) {
+            // Keep using the old file
+            file = oldFile;
+            channel = oldChannel;
+            failed = false;
+            return;
+        }
+
+        try {
+            long copied = 0;
+            while (copied < liveBytes) {
+                copied += oldChannel.transferTo(start + copied, liveBytes - copied, channel);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to compact scrollback file: " + e.getMessage());
+            closeFile();
+            file = oldFile;
+            channel = oldChannel;
+            return;
+        }
+
+        for (int i = firstBlock; i < firstBlock + blockCount; i++) {
+            offsets[i] -= start;
+        }
+        fileLength = liveBytes;
+        deadBytes = 0;
+
+        try {
+            oldChannel.close();
+        } catch (IOException ignored) {
+        }
+        oldFile.delete();
+    }
+
+    private boolean openFile() {
+        if (channel != null) return true;
+        try {
+            file = File.createTempFile("jssh-scrollback", ".bin");
+            // Deleted by closeFile() or compact() when replaced; DELETE_ON_CLOSE covers an exit
+            // without close() and, unlike deleteOnExit(), keeps nothing per file until then
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to create scrollback file: " + e.getMessage());
+            failed = true;
+            if (file != null) file.delete();
+            file = null;
+            return false;
+        }
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+}
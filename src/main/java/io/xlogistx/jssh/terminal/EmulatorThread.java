@@ -0,0 +1,59 @@
+package io.xlogistx.jssh.terminal;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Per-session thread that reads remote output and runs the terminal emulation on it.
+ * The EDT is only involved for painting the frames the emulator produces.
+ */
+public class EmulatorThread extends Thread {
+
+    /**
+     * Notified on the EDT once the remote stream has ended
+     */
+    public interface CloseListener {
+        /**
+         * @param error the error message, or null if the remote host closed the stream
+         */
+        void onClosed(String error);
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final TerminalPanel terminal;
+    private final CloseListener closeListener;
+
+    public EmulatorThread(InputStream in, TerminalPanel terminal, CloseListener closeListener) {
+        super("Terminal emulator");
+        this.in = in;
+        this.terminal = terminal;
+        this.closeListener = closeListener;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        byte[] buf = new byte[BUFFER_SIZE];
+        String error = null;
+        try {
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                terminal.write(buf, 0, n);
+            }
+            // Stream ended normally - connection closed
+            terminal.displayMessage("*** Connection closed by remote host ***", 9); // Bright red
+        } catch (IOException e) {
+            // Connection error
+            error = e.getMessage() != null ? e.getMessage() : "Unknown error";
+            terminal.displayMessage("*** Connection lost: " + error + " ***", 9);
+        }
+
+        if (closeListener != null) {
+            final String closeError = error;
+            SwingUtilities.invokeLater(() -> closeListener.onClosed(closeError));
+        }
+    }
+}
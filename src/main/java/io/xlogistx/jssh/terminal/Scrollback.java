@@ -0,0 +1,134 @@
+package io.xlogistx.jssh.terminal;
+
+import java.util.Arrays;
+
+/**
+ * Scrollback lines in two tiers. The most recent lines are kept in a circular array on
+ * the heap; appending, evicting the oldest line and indexed access are all O(1). Lines
+ * evicted from it move to a compressed store backed by a temp file once the capacity
+ * exceeds {@link #HOT_LINES}, so million-line histories keep a bounded heap.
+ */
+public class Scrollback {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /** Lines kept uncompressed on the heap */
+    public static final int HOT_LINES = 10000;
+
+    private long[][] lines;
+    private int head = 0;  // Slot of the oldest line
+    private int size = 0;
+
+    private int capacity;
+    private CompressedLineStore cold;
+
+    public Scrollback() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Scrollback(int capacity) {
+        lines = new long[0][];
+        setCapacity(capacity);
+    }
+
+    /**
+     * Append the first length cells of a line, evicting the oldest line when full
+     */
+    public void add(long[] line, int length) {
+        int hotCapacity = lines.length;
+        if (hotCapacity == 0) return;
+
+        long[] copy = Arrays.copyOf(line, length);
+        if (size < hotCapacity) {
+            int slot = head + size;
+            if (slot >= hotCapacity) slot -= hotCapacity;
+            lines[slot] = copy;
+            size++;
+        } else {
+            // Full - the oldest line moves to the cold tier, if any
+            if (cold != null) {
+                cold.add(lines[head]);
+            }
+            lines[head] = copy;
+            head = head + 1 == hotCapacity ? 0 : head + 1;
+        }
+    }
+
+    /**
+     * Get a line, 0 being the oldest
+     */
+    public long[] get(int index) {
+        int coldSize = cold != null ? cold.size() : 0;
+        if (index < 0 || index >= coldSize + size) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + (coldSize + size));
+        }
+        if (index < coldSize) {
+            return cold.get(index);
+        }
+
+        int slot = head + index - coldSize;
+        if (slot >= lines.length) slot -= lines.length;
+        return lines[slot];
+    }
+
+    public int size() {
+        return (cold != null ? cold.size() : 0) + size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        if (cold != null) {
+            cold.clear();
+        }
+    }
+
+    /**
+     * Change the capacity, keeping the most recent lines
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(0, capacity);
+        if (capacity == this.capacity && lines.length > 0) return;
+        this.capacity = capacity;
+
+        int hotCapacity = Math.min(capacity, HOT_LINES);
+        if (hotCapacity != lines.length) {
+            int keep = Math.min(size, hotCapacity);
+            long[][] resized = new long[hotCapacity][];
+            for (int i = 0; i < keep; i++) {
+                int slot = (head + size - keep + i) % lines.length;
+                resized[i] = lines[slot];
+            }
+            lines = resized;
+            head = 0;
+            size = keep;
+        }
+
+        if (capacity > hotCapacity) {
+            if (cold == null) {
+                cold = new CompressedLineStore(capacity - hotCapacity);
+            } else {
+                cold.setCapacity(capacity - hotCapacity);
+            }
+        } else if (cold != null) {
+            cold.close();
+            cold = null;
+        }
+    }
+
+    /**
+     * Release the cold tier and its temp file
+     */
+    public void close() {
+        clear();
+        if (cold != null) {
+            cold.close();
+            cold = null;
+        }
+    }
+}
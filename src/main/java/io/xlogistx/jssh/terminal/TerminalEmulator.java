@@ -0,0 +1,890 @@
+package io.xlogistx.jssh.terminal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Headless VT100/ANSI terminal emulator: screen model, scrollback and escape sequence
+ * processing, without any AWT dependency. Output may be fed from any thread; readers of
+ * the screen model accessors must hold {@link #getLock()}.
+ */
+public class TerminalEmulator {
+    
+    /**
+     * Notified on the thread feeding the emulator, with the lock held
+     */
+    public interface Listener {
+        void onTitleChange(String title);
+        void onBell();
+    }
+    
+    private int cols;
+    private int rows;
+    
+    // One packed row of cells per line (see Cell)
+    private long[][] screen;
+    
+    // Damaged columns per row since the last clearDamage, dirtyStart > dirtyEnd if the row is clean
+    private int[] dirtyStart;
+    private int[] dirtyEnd;
+    
+    // Scrollback buffer, lines are stored without trailing blanks
+    private final Scrollback scrollback;
+    
+    private int cursorX = 0;
+    private int cursorY = 0;
+    private boolean cursorVisible = true;
+    
+    private int scrollTop = 0;
+    private int scrollBottom;
+    
+    private int savedCursorX = 0;
+    private int savedCursorY = 0;
+    
+    private int currentFg = Cell.DEFAULT_FG;
+    private int currentBg = Cell.DEFAULT_BG;
+    private boolean currentBold = false;
+    private boolean currentReverse = false;  // Reverse video mode
+    
+    private volatile boolean applicationCursorKeys = false;
+    private boolean alternateScreen = false;
+    
+    // Saved screen for alternate buffer
+    private long[][] savedScreen;
+    
+    // ANSI escape sequence parsing
+    private final VTParser parser = new VTParser(new ParserHandler());
+    private static final String DEVICE_ATTRIBUTES = "\u001b[?1;2c";
+    
+    private volatile OutputStream responseStream;
+    private volatile Listener listener;
+    
+    // Guards the screen model
+    private final Object lock = new Object();
+    
+    public TerminalEmulator(int cols, int rows) {
+        this(cols, rows, Scrollback.DEFAULT_CAPACITY);
+    }
+    
+    public TerminalEmulator(int cols, int rows, int scrollbackLines) {
+        this.cols = cols;
+        this.rows = rows;
+        this.scrollBottom = rows - 1;
+        this.scrollback = new Scrollback(scrollbackLines);
+        
+        initScreen();
+    }
+    
+    /**
+     * Lock guarding the screen model
+     */
+    public Object getLock() {
+        return lock;
+    }
+    
+    /**
+     * Stream for replies to terminal queries (device attributes, cursor position)
+     */
+    public void setResponseStream(OutputStream out) {
+        this.responseStream = out;
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    private void damage(int y, int from, int to) {
+        if (from < dirtyStart[y]) dirtyStart[y] = from;
+        if (to > dirtyEnd[y]) dirtyEnd[y] = to;
+    }
+    
+    private void damageRows(int from, int to) {
+        for (int y = Math.max(0, from); y <= Math.min(to, rows - 1); y++) {
+            dirtyStart[y] = 0;
+            dirtyEnd[y] = cols - 1;
+        }
+    }
+    
+    private void initScreen() {
+        screen = new long[rows][];
+        for (int y = 0; y < rows; y++) {
+            screen[y] = Cell.blankLine(cols);
+        }
+        dirtyStart = new int[rows];
+        dirtyEnd = new int[rows];
+        damageRows(0, rows - 1);
+    }
+    
+    /**
+     * Display a message in the terminal (not sent to remote)
+     * Used for local notifications like disconnect messages
+     */
+    public void displayMessage(String message) {
+        displayMessage(message, 1); // Default red color
+    }
+    
+    /**
+     * Display a message with specified color
+     * @param message the message to display
+     * @param color ANSI color code (0-15)
+     */
+    public void displayMessage(String message, int color) {
+        synchronized (lock) {
+            // Save current colors
+            int savedFg = currentFg;
+            int savedBg = currentBg;
+            
+            // Set message color
+            currentFg = color;
+            
+            // Add newlines before and after for visibility, bypassing the parser
+            // so a sequence left unfinished by the remote side doesn't swallow the message
+            processControl('\r');
+            processControl('\n');
+            
+            for (int i = 0; i < message.length(); i++) {
+                putChar(message.charAt(i));
+            }
+            
+            processControl('\r');
+            processControl('\n');
+            
+            // Restore colors
+            currentFg = savedFg;
+            currentBg = savedBg;
+        }
+    }
+    
+    // UTF-8 decoding state
+    private int utf8State = 0;      // 0 = expecting first byte, 1-3 = expecting continuation bytes
+    private int utf8Char = 0;       // Character being built
+    private int utf8Remaining = 0;  // Remaining continuation bytes expected
+    
+    /**
+     * Feed output from the remote side. Safe to call from any thread.
+     */
+    public void write(byte[] data, int offset, int length) {
+        synchronized (lock) {
+            decode(data, offset, length);
+        }
+    }
+    
+    private void decode(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xff;
+            
+            // UTF-8 decoding
+            if (utf8Remaining > 0) {
+                // Expecting continuation byte (10xxxxxx)
+                if ((b & 0xC0) == 0x80) {
+                    utf8Char = (utf8Char << 6) | (b & 0x3F);
+                    utf8Remaining--;
+                    if (utf8Remaining == 0) {
+                        // Complete character
+                        parser.advance(utf8Char);
+                    }
+                } else {
+                    // Invalid continuation, reset and process as new byte
+                    utf8Remaining = 0;
+                    processUtf8Start(b);
+                }
+            } else {
+                processUtf8Start(b);
+            }
+        }
+    }
+    
+    private void processUtf8Start(int b) {
+        if ((b & 0x80) == 0) {
+            // ASCII (0xxxxxxx)
+            parser.advance(b);
+        } else if ((b & 0xE0) == 0xC0) {
+            // 2-byte sequence (110xxxxx)
+            utf8Char = b & 0x1F;
+            utf8Remaining = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            // 3-byte sequence (1110xxxx)
+            utf8Char = b & 0x0F;
+            utf8Remaining = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            // 4-byte sequence (11110xxx)
+            utf8Char = b & 0x07;
+            utf8Remaining = 3;
+        } else {
+            // Invalid UTF-8 start byte, display replacement character or skip
+            parser.advance(0xFFFD);
+        }
+    }
+    
+    public void write(int c) {
+        synchronized (lock) {
+            parser.advance((char) c);
+        }
+    }
+    
+    /**
+     * Receives actions from the VT parser
+     */
+    private class ParserHandler implements VTParser.Handler {
+        @Override
+        public void print(int codePoint) {
+            putChar(codePoint);
+        }
+        
+        @Override
+        public void execute(int control) {
+            processControl(control);
+        }
+        
+        @Override
+        public void escDispatch(int intermediate, int finalChar) {
+            processEscape(intermediate, finalChar);
+        }
+        
+        @Override
+        public void csiDispatch(int privateMarker, int intermediate, int finalChar, int[] params, int paramCount) {
+            processCSI(privateMarker, intermediate, finalChar, params, paramCount);
+        }
+        
+        @Override
+        public void oscDispatch(char[] data, int length) {
+            processOSC(data, length);
+        }
+    }
+    
+    private void processControl(int c) {
+        switch (c) {
+            case 0x07: // Bell
+                final Listener bellListener = listener;
+                if (bellListener != null) bellListener.onBell();
+                break;
+            case 0x08: // Backspace
+                if (cursorX > 0) cursorX--;
+                break;
+            case 0x09: // Tab
+                cursorX = ((cursorX / 8) + 1) * 8;
+                if (cursorX >= cols) cursorX = cols - 1;
+                break;
+            case 0x0A: // Line feed
+                lineFeed();
+                break;
+            case 0x0D: // Carriage return
+                cursorX = 0;
+                break;
+        }
+    }
+    
+    private void processEscape(int intermediate, int c) {
+        if (intermediate != 0) {
+            // Character set designation (ESC ( B, ESC ) 0, ...) - we ignore but consume the sequence
+            return;
+        }
+        
+        switch (c) {
+            case '7': // Save cursor
+                savedCursorX = cursorX;
+                savedCursorY = cursorY;
+                break;
+            case '8': // Restore cursor
+                cursorX = savedCursorX;
+                cursorY = savedCursorY;
+                break;
+            case 'M': // Reverse index
+                if (cursorY > scrollTop) {
+                    cursorY--;
+                } else {
+                    scrollDown();
+                }
+                break;
+            case 'D': // Index
+                lineFeed();
+                break;
+            case 'E': // Next line
+                cursorX = 0;
+                lineFeed();
+                break;
+            case '=': // Application keypad mode
+            case '>': // Normal keypad mode
+                break;
+            case 'c': // Reset terminal
+                initScreen();
+                cursorX = 0;
+                cursorY = 0;
+                currentFg = Cell.DEFAULT_FG;
+                currentBg = Cell.DEFAULT_BG;
+                currentBold = false;
+                currentReverse = false;
+                scrollTop = 0;
+                scrollBottom = rows - 1;
+                break;
+        }
+    }
+    
+    private static int arg(int[] params, int count, int index) {
+        return index < count ? params[index] : 0;
+    }
+    
+    private void processCSI(int marker, int intermediate, int cmd, int[] params, int count) {
+        // Sequences with intermediates (DECSCUSR, DECSTR, ...) are not supported
+        if (intermediate != 0) return;
+        // Only DEC private ('?') sequences and device attribute queries are understood
+        if (marker != 0 && marker != '?' && cmd != 'c') return;
+        
+        int arg0 = params[0];
+        
+        switch (cmd) {
+            case 'A': // Cursor up
+                cursorY = Math.max(0, cursorY - Math.max(1, arg0));
+                break;
+            case 'B': // Cursor down
+                cursorY = Math.min(rows - 1, cursorY + Math.max(1, arg0));
+                break;
+            case 'C': // Cursor forward
+                cursorX = Math.min(cols - 1, cursorX + Math.max(1, arg0));
+                break;
+            case 'D': // Cursor back
+                cursorX = Math.max(0, cursorX - Math.max(1, arg0));
+                break;
+            case 'E': // Cursor next line
+                cursorX = 0;
+                cursorY = Math.min(rows - 1, cursorY + Math.max(1, arg0));
+                break;
+            case 'F': // Cursor previous line
+                cursorX = 0;
+                cursorY = Math.max(0, cursorY - Math.max(1, arg0));
+                break;
+            case 'G': // Cursor horizontal absolute
+                cursorX = Math.max(0, Math.min(cols - 1, arg0 - 1));
+                break;
+            case 'H': case 'f': // Cursor position
+                cursorY = Math.max(0, Math.min(rows - 1, arg0 - 1));
+                cursorX = Math.max(0, Math.min(cols - 1, (count > 1 ? params[1] : 1) - 1));
+                break;
+            case 'J': // Erase display
+                eraseDisplay(arg0);
+                break;
+            case 'K': // Erase line
+                eraseLine(arg0);
+                break;
+            case 'L': // Insert lines
+                insertLines(Math.max(1, arg0));
+                break;
+            case 'M': // Delete lines
+                deleteLines(Math.max(1, arg0));
+                break;
+            case 'P': // Delete chars
+                deleteChars(Math.max(1, arg0));
+                break;
+            case 'S': // Scroll up
+                for (int i = 0; i < Math.max(1, arg0); i++) {
+                    scrollUp();
+                }
+                break;
+            case 'T': // Scroll down
+                for (int i = 0; i < Math.max(1, arg0); i++) {
+                    scrollDown();
+                }
+                break;
+            case 'X': // Erase characters
+                eraseChars(Math.max(1, arg0));
+                break;
+            case '@': // Insert chars
+                insertChars(Math.max(1, arg0));
+                break;
+            case 'd': // Cursor vertical absolute
+                cursorY = Math.max(0, Math.min(rows - 1, arg0 - 1));
+                break;
+            case 'm': // SGR - Set Graphics Rendition
+                if (marker == 0) {
+                    processSGR(params, count);
+                }
+                break;
+            case 'r': // Set scroll region
+                int bottom = arg(params, count, 1);
+                int newTop = Math.max(0, arg0 - 1);
+                int newBottom = Math.min(rows - 1, (bottom > 0 ? bottom : rows) - 1);
+                if (newTop >= newBottom) {
+                    break; // Ignored like xterm; a region needs at least two lines
+                }
+                scrollTop = newTop;
+                scrollBottom = newBottom;
+                cursorX = 0;
+                cursorY = 0;
+                break;
+            case 's': // Save cursor position
+                savedCursorX = cursorX;
+                savedCursorY = cursorY;
+                break;
+            case 'u': // Restore cursor position
+                cursorX = savedCursorX;
+                cursorY = savedCursorY;
+                break;
+            case 'h': // Set mode
+                if (marker == '?') {
+                    for (int i = 0; i < count; i++) {
+                        processPrivateMode(params[i], true);
+                    }
+                }
+                break;
+            case 'l': // Reset mode
+                if (marker == '?') {
+                    for (int i = 0; i < count; i++) {
+                        processPrivateMode(params[i], false);
+                    }
+                }
+                break;
+            case 'c': // Device attributes
+                sendResponse(DEVICE_ATTRIBUTES);
+                break;
+            case 'n': // Device status
+                if (arg0 == 6) {
+                    sendResponse("\u001b[" + (cursorY + 1) + ";" + (cursorX + 1) + "R");
+                }
+                break;
+        }
+    }
+    
+    private void processPrivateMode(int mode, boolean set) {
+        switch (mode) {
+            case 1: // Application cursor keys
+                applicationCursorKeys = set;
+                break;
+            case 7: // Auto-wrap mode
+                // Auto-wrap is always on in our implementation
+                break;
+            case 25: // Cursor visibility
+                cursorVisible = set;
+                break;
+            case 47: // Alternate screen buffer (older)
+            case 1047: // Alternate screen buffer
+                if (set && !alternateScreen) {
+                    // Save main screen and switch to alternate
+                    savedScreen = screen;
+                    initScreen();
+                    alternateScreen = true;
+                } else if (!set && alternateScreen) {
+                    // Restore main screen
+                    if (savedScreen != null) {
+                        screen = savedScreen;
+                    }
+                    damageRows(0, rows - 1);
+                    alternateScreen = false;
+                }
+                break;
+            case 1048: // Save/restore cursor
+                if (set) {
+                    savedCursorX = cursorX;
+                    savedCursorY = cursorY;
+                } else {
+                    cursorX = savedCursorX;
+                    cursorY = savedCursorY;
+                }
+                break;
+            case 1049: // Alternate screen buffer with cursor save/restore
+                if (set && !alternateScreen) {
+                    // Save cursor and main screen, switch to alternate
+                    savedCursorX = cursorX;
+                    savedCursorY = cursorY;
+                    savedScreen = screen;
+                    initScreen();
+                    alternateScreen = true;
+                } else if (!set && alternateScreen) {
+                    // Restore main screen and cursor
+                    if (savedScreen != null) {
+                        screen = savedScreen;
+                    }
+                    damageRows(0, rows - 1);
+                    cursorX = savedCursorX;
+                    cursorY = savedCursorY;
+                    alternateScreen = false;
+                }
+                break;
+            case 2004: // Bracketed paste mode - just acknowledge it
+                break;
+        }
+    }
+    
+    private void processOSC(char[] data, int length) {
+        // OSC sequences: Ps;Pt - only window/icon title (Ps = 0 or 2) is handled
+        if (length >= 2 && data[1] == ';' && (data[0] == '0' || data[0] == '2')) {
+            final Listener titleListener = listener;
+            if (titleListener != null) {
+                titleListener.onTitleChange(new String(data, 2, length - 2));
+            }
+        }
+    }
+    
+    private void processSGR(int[] args, int count) {
+        for (int i = 0; i < count; i++) {
+            int arg = args[i];
+            if (arg == 0) {
+                // Reset all attributes
+                currentFg = Cell.DEFAULT_FG;
+                currentBg = Cell.DEFAULT_BG;
+                currentBold = false;
+                currentReverse = false;
+            } else if (arg == 1) {
+                currentBold = true;
+            } else if (arg == 7) {
+                // Reverse video (swap fg/bg when rendering)
+                currentReverse = true;
+            } else if (arg == 22) {
+                currentBold = false;
+            } else if (arg == 27) {
+                // Reverse off
+                currentReverse = false;
+            } else if (arg >= 30 && arg <= 37) {
+                currentFg = arg - 30;
+            } else if (arg == 39) {
+                currentFg = Cell.DEFAULT_FG;
+            } else if (arg >= 40 && arg <= 47) {
+                currentBg = arg - 40;
+            } else if (arg == 49) {
+                currentBg = Cell.DEFAULT_BG;
+            } else if (arg >= 90 && arg <= 97) {
+                currentFg = arg - 90 + 8;
+            } else if (arg >= 100 && arg <= 107) {
+                currentBg = arg - 100 + 8;
+            } else if (arg == 38 && i + 2 < count && args[i + 1] == 5) {
+                // 256 color foreground
+                currentFg = Math.min(15, args[i + 2]);
+                i += 2;
+            } else if (arg == 48 && i + 2 < count && args[i + 1] == 5) {
+                // 256 color background
+                currentBg = Math.min(15, args[i + 2]);
+                i += 2;
+            }
+        }
+    }
+    
+    private void putChar(int c) {
+        // Ensure cursor is within bounds
+        if (cursorY < 0) cursorY = 0;
+        if (cursorY >= rows) cursorY = rows - 1;
+        
+        if (cursorX >= cols) {
+            cursorX = 0;
+            lineFeed();
+        }
+        if (cursorX < 0) cursorX = 0;
+        
+        // Double-check after lineFeed
+        if (cursorY >= rows) cursorY = rows - 1;
+        
+        int attrs = (currentBold ? Cell.BOLD : 0) | (currentReverse ? Cell.REVERSE : 0);
+        screen[cursorY][cursorX] = Cell.pack(c, currentFg, currentBg, attrs);
+        damage(cursorY, cursorX, cursorX);
+        
+        cursorX++;
+    }
+    
+    private void lineFeed() {
+        if (cursorY >= scrollBottom) {
+            scrollUp();
+        } else {
+            cursorY++;
+        }
+    }
+    
+    private void scrollUp() {
+        int safeTop = Math.max(0, Math.min(scrollTop, rows - 1));
+        int safeBottom = Math.max(0, Math.min(scrollBottom, rows - 1));
+        if (safeBottom <= safeTop) {
+            return;
+        }
+        
+        long[] top = screen[safeTop];
+        
+        // Save top line to scrollback buffer (only if scrolling the whole screen)
+        if (scrollTop == 0 && !alternateScreen) {
+            // Trailing blanks are not kept, most lines are much shorter than the screen
+            // The oldest line is evicted once the scrollback is full
+            scrollback.add(top, Cell.trimmedLength(top));
+        }
+        
+        // Rows move as whole blocks; the old top row is reused as the new bottom row
+        System.arraycopy(screen, safeTop + 1, screen, safeTop, safeBottom - safeTop);
+        Arrays.fill(top, Cell.BLANK);
+        screen[safeBottom] = top;
+        damageRows(safeTop, safeBottom);
+    }
+    
+    private void scrollDown() {
+        int safeTop = Math.max(0, Math.min(scrollTop, rows - 1));
+        int safeBottom = Math.max(0, Math.min(scrollBottom, rows - 1));
+        if (safeBottom <= safeTop) {
+            return;
+        }
+        
+        long[] bottom = screen[safeBottom];
+        System.arraycopy(screen, safeTop, screen, safeTop + 1, safeBottom - safeTop);
+        Arrays.fill(bottom, Cell.BLANK);
+        screen[safeTop] = bottom;
+        damageRows(safeTop, safeBottom);
+    }
+    
+    private void eraseDisplay(int mode) {
+        // Ensure cursor is within bounds
+        int safeY = Math.max(0, Math.min(cursorY, rows - 1));
+        
+        switch (mode) {
+            case 0: // Cursor to end
+                eraseLine(0);
+                for (int y = safeY + 1; y < rows; y++) {
+                    Arrays.fill(screen[y], Cell.BLANK);
+                }
+                damageRows(safeY + 1, rows - 1);
+                break;
+            case 1: // Start to cursor
+                eraseLine(1);
+                for (int y = 0; y < safeY; y++) {
+                    Arrays.fill(screen[y], Cell.BLANK);
+                }
+                damageRows(0, safeY - 1);
+                break;
+            case 2: case 3: // Entire screen
+                for (int y = 0; y < rows; y++) {
+                    Arrays.fill(screen[y], Cell.BLANK);
+                }
+                damageRows(0, rows - 1);
+                break;
+        }
+    }
+    
+    private void eraseLine(int mode) {
+        // Ensure cursor is within bounds
+        if (cursorY < 0 || cursorY >= rows) return;
+        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
+        
+        switch (mode) {
+            case 0: // Cursor to end
+                Arrays.fill(screen[cursorY], safeX, cols, Cell.BLANK);
+                damage(cursorY, safeX, cols - 1);
+                break;
+            case 1: // Start to cursor
+                Arrays.fill(screen[cursorY], 0, safeX + 1, Cell.BLANK);
+                damage(cursorY, 0, safeX);
+                break;
+            case 2: // Entire line
+                Arrays.fill(screen[cursorY], Cell.BLANK);
+                damage(cursorY, 0, cols - 1);
+                break;
+        }
+    }
+    
+    private void eraseChars(int n) {
+        if (cursorY < 0 || cursorY >= rows) return;
+        int from = Math.max(0, Math.min(cursorX, cols));
+        Arrays.fill(screen[cursorY], from, Math.min(cols, from + n), Cell.BLANK);
+        damage(cursorY, from, Math.min(cols, from + n) - 1);
+    }
+    
+    private void insertLines(int n) {
+        int safeBottom = Math.min(scrollBottom, rows - 1);
+        if (cursorY < 0 || cursorY > safeBottom) return;
+        n = Math.min(n, safeBottom - cursorY + 1);
+        
+        for (int i = 0; i < n; i++) {
+            long[] bottom = screen[safeBottom];
+            System.arraycopy(screen, cursorY, screen, cursorY + 1, safeBottom - cursorY);
+            Arrays.fill(bottom, Cell.BLANK);
+            screen[cursorY] = bottom;
+        }
+        damageRows(cursorY, safeBottom);
+    }
+    
+    private void deleteLines(int n) {
+        int safeBottom = Math.min(scrollBottom, rows - 1);
+        if (cursorY < 0 || cursorY > safeBottom) return;
+        n = Math.min(n, safeBottom - cursorY + 1);
+        
+        for (int i = 0; i < n; i++) {
+            long[] removed = screen[cursorY];
+            System.arraycopy(screen, cursorY + 1, screen, cursorY, safeBottom - cursorY);
+            Arrays.fill(removed, Cell.BLANK);
+            screen[safeBottom] = removed;
+        }
+        damageRows(cursorY, safeBottom);
+    }
+    
+    private void insertChars(int n) {
+        if (cursorY < 0 || cursorY >= rows) return;
+        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
+        n = Math.min(n, cols - safeX);
+        
+        long[] line = screen[cursorY];
+        System.arraycopy(line, safeX, line, safeX + n, cols - safeX - n);
+        Arrays.fill(line, safeX, safeX + n, Cell.BLANK);
+        damage(cursorY, safeX, cols - 1);
+    }
+    
+    private void deleteChars(int n) {
+        if (cursorY < 0 || cursorY >= rows) return;
+        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
+        n = Math.min(n, cols - safeX);
+        
+        long[] line = screen[cursorY];
+        System.arraycopy(line, safeX + n, line, safeX, cols - safeX - n);
+        Arrays.fill(line, cols - n, cols, Cell.BLANK);
+        damage(cursorY, safeX, cols - 1);
+    }
+    
+    private void sendResponse(String response) {
+        OutputStream out = responseStream;
+        if (out != null) {
+            try {
+                out.write(response.getBytes());
+                out.flush();
+            } catch (IOException e) { }
+        }
+    }
+    
+
+    /**
+     * Resize the screen, keeping the top-left content
+     * @return false if the size is unchanged
+     */
+    public boolean resize(int newCols, int newRows) {
+        synchronized (lock) {
+            if (newCols == cols && newRows == rows) return false;
+            resizeScreen(newCols, newRows);
+        }
+        return true;
+    }
+    
+    private void resizeScreen(int newCols, int newRows) {
+        screen = resizeLines(screen, newCols, newRows);
+        if (savedScreen != null) {
+            savedScreen = resizeLines(savedScreen, newCols, newRows);
+        }
+        
+        cols = newCols;
+        rows = newRows;
+        scrollBottom = rows - 1;
+        
+        dirtyStart = new int[rows];
+        dirtyEnd = new int[rows];
+        damageRows(0, rows - 1);
+        
+        cursorX = Math.min(cursorX, cols - 1);
+        cursorY = Math.min(cursorY, rows - 1);
+    }
+    
+    private static long[][] resizeLines(long[][] lines, int newCols, int newRows) {
+        long[][] resized = new long[newRows][];
+        for (int y = 0; y < newRows; y++) {
+            resized[y] = Cell.blankLine(newCols);
+            if (y < lines.length) {
+                System.arraycopy(lines[y], 0, resized[y], 0, Math.min(lines[y].length, newCols));
+            }
+        }
+        return resized;
+    }
+    
+    public void clear() {
+        synchronized (lock) {
+            initScreen();
+            cursorX = 0;
+            cursorY = 0;
+        }
+    }
+    
+    public String getScreenText() {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder line = new StringBuilder(cols);
+        synchronized (lock) {
+            for (int y = 0; y < rows; y++) {
+                line.setLength(0);
+                for (long cell : screen[y]) {
+                    line.appendCodePoint(Cell.codePoint(cell));
+                }
+                sb.append(line.toString().stripTrailing());
+                if (y < rows - 1) sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Get scrollback buffer size
+     */
+    public int getScrollbackSize() {
+        synchronized (lock) {
+            return scrollback.size();
+        }
+    }
+    
+    /**
+     * Scrollback line, 0 being the oldest; trailing blanks are not stored. Callers hold the lock.
+     */
+    public long[] getScrollbackLine(int index) {
+        return scrollback.get(index);
+    }
+    
+    /**
+     * Clear scrollback buffer
+     */
+    public void clearScrollback() {
+        synchronized (lock) {
+            scrollback.clear();
+        }
+    }
+    
+    /**
+     * Set the maximum number of scrollback lines, keeping the most recent ones
+     */
+    public void setScrollbackLines(int lines) {
+        synchronized (lock) {
+            scrollback.setCapacity(lines);
+        }
+    }
+    
+    /**
+     * Release the scrollback, including its temp file
+     */
+    public void close() {
+        synchronized (lock) {
+            scrollback.close();
+        }
+    }
+    
+    // Screen model accessors - callers hold the lock
+    
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+    public int getCursorX() { return cursorX; }
+    public int getCursorY() { return cursorY; }
+    public boolean isCursorVisible() { return cursorVisible; }
+    public boolean isAlternateScreen() { return alternateScreen; }
+    public boolean isApplicationCursorKeys() { return applicationCursorKeys; }
+    
+    /**
+     * Screen row y; the array is live and must not be modified
+     */
+    public long[] getLine(int y) {
+        return screen[y];
+    }
+    
+    /**
+     * First damaged column of row y, greater than {@link #getDamageEnd(int)} if the row is clean
+     */
+    public int getDamageStart(int y) {
+        return dirtyStart[y];
+    }
+    
+    /**
+     * Last damaged column of row y
+     */
+    public int getDamageEnd(int y) {
+        return dirtyEnd[y];
+    }
+    
+    /**
+     * Mark row y as clean once it has been rendered
+     */
+    public void clearDamage(int y) {
+        dirtyStart[y] = Integer.MAX_VALUE;
+        dirtyEnd[y] = -1;
+    }
+}
@@ -4,72 +4,32 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.datatransfer.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
-import java.util.Arrays;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * VT100/ANSI Terminal Emulator Component with scrollback
+ * Swing view of a {@link TerminalEmulator}, handling painting, keyboard input and selection.
+ * Emulation may run on any thread (see {@link EmulatorThread}); the EDT repaints at most
+ * once per display refresh.
  */
 public class TerminalPanel extends JPanel implements KeyListener, MouseListener, MouseMotionListener, MouseWheelListener {
     
-    private int cols = 80;
-    private int rows = 24;
     private int charWidth = 8;
     private int charHeight = 16;
     
-    private char[][] screen;
-    private int[][] colors;
-    private int[][] bgColors;
-    private boolean[][] bold;
-    private boolean[][] reverse;  // Reverse video attribute
-    
-    // Scrollback buffer
-    private static final int MAX_SCROLLBACK = 10000;  // Maximum lines to keep
-    private List<char[]> scrollbackChars = new ArrayList<>();
-    private List<int[]> scrollbackColors = new ArrayList<>();
-    private List<int[]> scrollbackBgColors = new ArrayList<>();
-    private List<boolean[]> scrollbackBold = new ArrayList<>();
-    private List<boolean[]> scrollbackReverse = new ArrayList<>();
+    private final TerminalEmulator emulator;
+    
+    private static final long[] EMPTY_LINE = new long[0];
     private int scrollOffset = 0;  // How many lines we're scrolled back (0 = at bottom)
     
-    private int cursorX = 0;
-    private int cursorY = 0;
-    private boolean cursorVisible = true;
     private boolean cursorBlink = true;
     
-    private int scrollTop = 0;
-    private int scrollBottom;
-    
-    private int savedCursorX = 0;
-    private int savedCursorY = 0;
-    
-    private int currentFg = 7;  // White
-    private int currentBg = 0;  // Black
-    private boolean currentBold = false;
-    private boolean currentReverse = false;  // Reverse video mode
-    
-    private boolean applicationCursorKeys = false;
-    private boolean alternateScreen = false;
-    
-    // Saved screen for alternate buffer
-    private char[][] savedScreen;
-    private int[][] savedColors;
-    private int[][] savedBgColors;
-    private boolean[][] savedBold;
-    private boolean[][] savedReverse;
-    
     // Selection
     private int selStartX = -1, selStartY = -1;
     private int selEndX = -1, selEndY = -1;
     private boolean selecting = false;
     
-    // ANSI escape sequence parsing
-    private StringBuilder escapeBuffer = new StringBuilder();
-    private boolean inEscape = false;
-    private boolean inCSI = false;
-    
     // Colors (ANSI 16 colors)
     private static final Color[] ANSI_COLORS = {
         new Color(0, 0, 0),        // 0 Black
@@ -91,7 +51,32 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
     };
     
     private OutputStream outputStream;
-    private TerminalListener listener;
+    private volatile TerminalListener listener;
+    
+    // Guards the emulator's screen model, which is written by the emulator thread and read by the EDT
+    private final Object lock;
+    // Set when the model changed since the last frame was painted
+    private final AtomicBoolean frameReady = new AtomicBoolean();
+    private final Timer frameTimer;
+    
+    // Rows rendered so far, painted without the cursor and scroll indicator
+    private BufferedImage frame;
+    private int paintedScrollOffset = 0;
+    private int paintedSelStartX = -1, paintedSelStartY = -1;
+    private int paintedSelEndX = -1, paintedSelEndY = -1;
+    private int paintedCursorX = 0, paintedCursorY = 0;
+    // Area rendered into the frame but not yet copied to the screen, or null
+    private Rectangle unblitted;
+    
+    // Text batching in paintRow
+    private boolean uniformAscii = false;  // Printable ASCII advances exactly one cell
+    private char[] textBuffer = new char[0];
+    private final char[] glyphBuffer = new char[2];
+    
+    // Paint timing, in nanoseconds
+    private long frameCount = 0;
+    private long frameTimeTotal = 0;
+    private long frameTimeMax = 0;
     
     public interface TerminalListener {
         void onTitleChange(String title);
@@ -104,11 +89,27 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
     }
     
     public TerminalPanel(int cols, int rows) {
-        this.cols = cols;
-        this.rows = rows;
-        this.scrollBottom = rows - 1;
-        
-        initScreen();
+        this(cols, rows, Scrollback.DEFAULT_CAPACITY);
+    }
+    
+    public TerminalPanel(int cols, int rows, int scrollbackLines) {
+        this.emulator = new TerminalEmulator(cols, rows, scrollbackLines);
+        this.lock = emulator.getLock();
+        emulator.setListener(new TerminalEmulator.Listener() {
+            @Override
+            public void onTitleChange(String title) {
+                final TerminalListener titleListener = listener;
+                if (titleListener != null) {
+                    SwingUtilities.invokeLater(() -> titleListener.onTitleChange(title));
+                }
+            }
+            
+            @Override
+            public void onBell() {
+                final TerminalListener bellListener = listener;
+                if (bellListener != null) SwingUtilities.invokeLater(bellListener::onBell);
+            }
+        });
         
         setBackground(Color.BLACK);
         setForeground(Color.WHITE);
@@ -127,6 +128,15 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         if (charWidth < 1) charWidth = 8;
         if (charHeight < 1) charHeight = 16;
         
+        // Runs of ASCII text can only be drawn at once if every character is one cell wide
+        uniformAscii = true;
+        for (char c = '!'; c < 0x7F; c++) {
+            if (fm.charWidth(c) != charWidth) {
+                uniformAscii = false;
+                break;
+            }
+        }
+        
         setPreferredSize(new Dimension(cols * charWidth, rows * charHeight));
         setMinimumSize(new Dimension(40 * charWidth, 10 * charHeight));
         setFocusable(true);
@@ -142,10 +152,17 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         // Cursor blink timer
         Timer blinkTimer = new Timer(500, e -> {
             cursorBlink = !cursorBlink;
-            repaint();
+            repaint(paintedCursorX * charWidth, paintedCursorY * charHeight, charWidth, charHeight);
         });
         blinkTimer.start();
         
+        // Coalesce model updates into at most one repaint per display refresh
+        frameTimer = new Timer(getFrameInterval(), e -> {
+            if (frameReady.getAndSet(false)) {
+                repaintDamage();
+            }
+        });
+        
         // Request focus when clicked
         addMouseListener(new MouseAdapter() {
             @Override
@@ -155,6 +172,76 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         });
     }
     
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        frameTimer.start();
+    }
+    
+    @Override
+    public void removeNotify() {
+        frameTimer.stop();
+        super.removeNotify();
+    }
+    
+    /**
+     * Frame interval in milliseconds matching the display refresh rate
+     */
+    private static int getFrameInterval() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        if (!GraphicsEnvironment.isHeadless()) {
+            refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        }
+        if (refreshRate <= 0) {
+            refreshRate = 60;
+        }
+        return Math.max(1, 1000 / refreshRate);
+    }
+    
+    /**
+     * Mark the model as changed; the frame timer repaints on its next tick
+     */
+    private void frameReady() {
+        frameReady.set(true);
+    }
+    
+    /**
+     * Repaint only the cells damaged since the last paint, plus the old and new cursor cells
+     */
+    private void repaintDamage() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        synchronized (lock) {
+            for (int y = 0; y < emulator.getRows(); y++) {
+                int start = emulator.getDamageStart(y);
+                int end = emulator.getDamageEnd(y);
+                if (start <= end) {
+                    minX = Math.min(minX, start);
+                    maxX = Math.max(maxX, end);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+            if (maxY >= 0 && scrollOffset > 0) {
+                // Scrolled back views shift as lines arrive
+                repaint();
+                return;
+            }
+            int cursorX = emulator.getCursorX();
+            int cursorY = emulator.getCursorY();
+            if (cursorX != paintedCursorX || cursorY != paintedCursorY) {
+                minX = Math.min(minX, Math.min(cursorX, paintedCursorX));
+                maxX = Math.max(maxX, Math.max(cursorX, paintedCursorX));
+                minY = Math.min(minY, Math.min(cursorY, paintedCursorY));
+                maxY = Math.max(maxY, Math.max(cursorY, paintedCursorY));
+            }
+        }
+        if (maxY >= 0) {
+            repaint(minX * charWidth, minY * charHeight,
+                    (maxX - minX + 1) * charWidth, (maxY - minY + 1) * charHeight);
+        }
+    }
+    
     /**
      * Find a good monospace font with Unicode/box-drawing character support
      */
@@ -193,24 +280,16 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         return new Font(Font.MONOSPACED, Font.PLAIN, 14);
     }
     
-    private void initScreen() {
-        screen = new char[rows][cols];
-        colors = new int[rows][cols];
-        bgColors = new int[rows][cols];
-        bold = new boolean[rows][cols];
-        reverse = new boolean[rows][cols];
-        
-        for (int y = 0; y < rows; y++) {
-            Arrays.fill(screen[y], ' ');
-            Arrays.fill(colors[y], 7);
-            Arrays.fill(bgColors[y], 0);
-            Arrays.fill(bold[y], false);
-            Arrays.fill(reverse[y], false);
-        }
-    }
-    
     public void setOutputStream(OutputStream out) {
         this.outputStream = out;
+        emulator.setResponseStream(out);
+    }
+    
+    /**
+     * Emulator behind this view
+     */
+    public TerminalEmulator getEmulator() {
+        return emulator;
     }
     
     public void setTerminalListener(TerminalListener listener) {
@@ -231,859 +310,297 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
      * @param color ANSI color code (0-15)
      */
     public void displayMessage(String message, int color) {
-        // Save current colors
-        int savedFg = currentFg;
-        int savedBg = currentBg;
-        
-        // Set message color
-        currentFg = color;
-        
-        // Add newlines before and after for visibility
-        processChar('\r');
-        processChar('\n');
-        
-        for (char c : message.toCharArray()) {
-            processChar(c);
-        }
-        
-        processChar('\r');
-        processChar('\n');
-        
-        // Restore colors
-        currentFg = savedFg;
-        currentBg = savedBg;
-        
-        repaint();
+        emulator.displayMessage(message, color);
+        frameReady();
     }
     
-    // UTF-8 decoding state
-    private int utf8State = 0;      // 0 = expecting first byte, 1-3 = expecting continuation bytes
-    private int utf8Char = 0;       // Character being built
-    private int utf8Remaining = 0;  // Remaining continuation bytes expected
-    
     /**
-     * Write data to terminal (from SSH)
+     * Write data to terminal (from SSH). Safe to call from any thread.
      */
     public void write(byte[] data, int offset, int length) {
-        for (int i = offset; i < offset + length; i++) {
-            int b = data[i] & 0xff;
-            
-            // UTF-8 decoding
-            if (utf8Remaining > 0) {
-                // Expecting continuation byte (10xxxxxx)
-                if ((b & 0xC0) == 0x80) {
-                    utf8Char = (utf8Char << 6) | (b & 0x3F);
-                    utf8Remaining--;
-                    if (utf8Remaining == 0) {
-                        // Complete character
-                        processChar((char) utf8Char);
-                    }
-                } else {
-                    // Invalid continuation, reset and process as new byte
-                    utf8Remaining = 0;
-                    processUtf8Start(b);
-                }
-            } else {
-                processUtf8Start(b);
-            }
-        }
-        repaint();
-    }
-    
-    private void processUtf8Start(int b) {
-        if ((b & 0x80) == 0) {
-            // ASCII (0xxxxxxx)
-            processChar((char) b);
-        } else if ((b & 0xE0) == 0xC0) {
-            // 2-byte sequence (110xxxxx)
-            utf8Char = b & 0x1F;
-            utf8Remaining = 1;
-        } else if ((b & 0xF0) == 0xE0) {
-            // 3-byte sequence (1110xxxx)
-            utf8Char = b & 0x0F;
-            utf8Remaining = 2;
-        } else if ((b & 0xF8) == 0xF0) {
-            // 4-byte sequence (11110xxx)
-            utf8Char = b & 0x07;
-            utf8Remaining = 3;
-        } else {
-            // Invalid UTF-8 start byte, display replacement character or skip
-            processChar('\uFFFD');
-        }
+        emulator.write(data, offset, length);
+        frameReady();
     }
     
     public void write(int c) {
-        processChar((char) c);
-        repaint();
+        emulator.write(c);
+        frameReady();
     }
     
-    private void processChar(char c) {
-        if (inEscape) {
-            processEscape(c);
-            return;
-        }
-        
-        switch (c) {
-            case 0x07: // Bell
-                if (listener != null) listener.onBell();
-                break;
-            case 0x08: // Backspace
-                if (cursorX > 0) cursorX--;
-                break;
-            case 0x09: // Tab
-                cursorX = ((cursorX / 8) + 1) * 8;
-                if (cursorX >= cols) cursorX = cols - 1;
-                break;
-            case 0x0A: // Line feed
-                lineFeed();
-                break;
-            case 0x0D: // Carriage return
-                cursorX = 0;
-                break;
-            case 0x1B: // Escape
-                inEscape = true;
-                escapeBuffer.setLength(0);
-                break;
-            default:
-                if (c >= 32) {
-                    putChar(c);
-                }
-                break;
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        long start = System.nanoTime();
+        // Hold the lock so the frame is painted from a consistent model
+        synchronized (lock) {
+            paintScreen(g);
         }
+        recordFrameTime(System.nanoTime() - start);
     }
     
-    private void processEscape(char c) {
-        escapeBuffer.append(c);
-        String seq = escapeBuffer.toString();
+    private void paintScreen(Graphics g) {
+        updateFrame();
+        g.drawImage(frame, 0, 0, null);
         
-        if (seq.length() == 1) {
-            if (c == '[') {
-                inCSI = true;
-                return;
-            } else if (c == ']') {
-                // OSC sequence
-                return;
-            } else if (c == '(' || c == ')' || c == '*' || c == '+') {
-                // Character set designation - wait for next char
-                return;
-            } else if (c == '7') {
-                // Save cursor
-                savedCursorX = cursorX;
-                savedCursorY = cursorY;
-                inEscape = false;
-            } else if (c == '8') {
-                // Restore cursor
-                cursorX = savedCursorX;
-                cursorY = savedCursorY;
-                inEscape = false;
-            } else if (c == 'M') {
-                // Reverse index
-                if (cursorY > scrollTop) {
-                    cursorY--;
-                } else {
-                    scrollDown();
-                }
-                inEscape = false;
-            } else if (c == 'D') {
-                // Index
-                lineFeed();
-                inEscape = false;
-            } else if (c == 'E') {
-                // Next line
-                cursorX = 0;
-                lineFeed();
-                inEscape = false;
-            } else if (c == '=') {
-                // Application keypad mode
-                inEscape = false;
-            } else if (c == '>') {
-                // Normal keypad mode
-                inEscape = false;
-            } else if (c == 'c') {
-                // Reset terminal
-                initScreen();
-                cursorX = 0;
-                cursorY = 0;
-                currentFg = 7;
-                currentBg = 0;
-                currentBold = false;
-                currentReverse = false;
-                scrollTop = 0;
-                scrollBottom = rows - 1;
-                inEscape = false;
-            } else {
-                inEscape = false;
+        // A clipped paint (e.g. the blink timer's cursor cell) renders all damage into the
+        // frame but shows only the clip; the rest needs a paint of its own
+        Rectangle clip = g.getClipBounds();
+        if (unblitted != null) {
+            if (clip != null && !clip.contains(unblitted)) {
+                repaint(unblitted);
             }
-            return;
+            unblitted = null;
         }
         
-        // Character set designation sequences (ESC ( X, ESC ) X, etc.)
-        if (seq.length() == 2 && (seq.charAt(0) == '(' || seq.charAt(0) == ')' || 
-                                   seq.charAt(0) == '*' || seq.charAt(0) == '+')) {
-            // Character set selected - we ignore but consume the sequence
-            // B = US ASCII, 0 = DEC Special Graphics, etc.
-            inEscape = false;
-            return;
-        }
+        FontMetrics fm = g.getFontMetrics();
+        int ascent = fm.getAscent();
+        int cursorX = emulator.getCursorX();
+        int cursorY = emulator.getCursorY();
         
-        // OSC sequences (title, etc.)
-        if (seq.startsWith("]")) {
-            if (c == 0x07 || seq.endsWith("\u001b\\")) {
-                processOSC(seq);
-                inEscape = false;
-            }
-            return;
+        // Draw cursor (only when not scrolled back)
+        if (scrollOffset == 0 && emulator.isCursorVisible() && cursorBlink
+                && cursorY < emulator.getRows() && cursorX < emulator.getCols()) {
+            g.setColor(ANSI_COLORS[7]);
+            g.fillRect(cursorX * charWidth, cursorY * charHeight, charWidth, charHeight);
+            g.setColor(ANSI_COLORS[0]);
+            int n = Character.toChars(Cell.codePoint(emulator.getLine(cursorY)[cursorX]), glyphBuffer, 0);
+            g.drawChars(glyphBuffer, 0, n, cursorX * charWidth, cursorY * charHeight + ascent);
         }
-        
-        // CSI sequences
-        if (inCSI) {
-            if (Character.isLetter(c) || c == '@' || c == '`') {
-                processCSI(seq);
-                inEscape = false;
-                inCSI = false;
-            }
+        // The cursor cell counts as painted once it is inside the clip
+        if (clip == null || clip.intersects(cursorX * charWidth, cursorY * charHeight, charWidth, charHeight)) {
+            paintedCursorX = cursorX;
+            paintedCursorY = cursorY;
         }
-    }
-    
-    private void processCSI(String seq) {
-        // Remove leading [
-        seq = seq.substring(1);
-        char cmd = seq.charAt(seq.length() - 1);
-        String params = seq.substring(0, seq.length() - 1);
         
-        int[] args = parseArgs(params);
-        
-        switch (cmd) {
-            case 'A': // Cursor up
-                cursorY = Math.max(0, cursorY - Math.max(1, args[0]));
-                break;
-            case 'B': // Cursor down
-                cursorY = Math.min(rows - 1, cursorY + Math.max(1, args[0]));
-                break;
-            case 'C': // Cursor forward
-                cursorX = Math.min(cols - 1, cursorX + Math.max(1, args[0]));
-                break;
-            case 'D': // Cursor back
-                cursorX = Math.max(0, cursorX - Math.max(1, args[0]));
-                break;
-            case 'E': // Cursor next line
-                cursorX = 0;
-                cursorY = Math.min(rows - 1, cursorY + Math.max(1, args[0]));
-                break;
-            case 'F': // Cursor previous line
-                cursorX = 0;
-                cursorY = Math.max(0, cursorY - Math.max(1, args[0]));
-                break;
-            case 'G': // Cursor horizontal absolute
-                cursorX = Math.max(0, Math.min(cols - 1, args[0] - 1));
-                break;
-            case 'H': case 'f': // Cursor position
-                cursorY = Math.max(0, Math.min(rows - 1, args[0] - 1));
-                cursorX = Math.max(0, Math.min(cols - 1, (args.length > 1 ? args[1] : 1) - 1));
-                break;
-            case 'J': // Erase display
-                eraseDisplay(args[0]);
-                break;
-            case 'K': // Erase line
-                eraseLine(args[0]);
-                break;
-            case 'L': // Insert lines
-                insertLines(Math.max(1, args[0]));
-                break;
-            case 'M': // Delete lines
-                deleteLines(Math.max(1, args[0]));
-                break;
-            case 'P': // Delete chars
-                deleteChars(Math.max(1, args[0]));
-                break;
-            case 'S': // Scroll up
-                for (int i = 0; i < Math.max(1, args[0]); i++) {
-                    scrollUp();
-                }
-                break;
-            case 'T': // Scroll down
-                for (int i = 0; i < Math.max(1, args[0]); i++) {
-                    scrollDown();
-                }
-                break;
-            case 'X': // Erase characters
-                int count = Math.max(1, args[0]);
-                for (int i = 0; i < count && cursorX + i < cols; i++) {
-                    if (cursorY >= 0 && cursorY < rows) {
-                        screen[cursorY][cursorX + i] = ' ';
-                        colors[cursorY][cursorX + i] = 7;
-                        bgColors[cursorY][cursorX + i] = 0;
-                        reverse[cursorY][cursorX + i] = false;
-                    }
-                }
-                break;
-            case '@': // Insert chars
-                insertChars(Math.max(1, args[0]));
-                break;
-            case 'd': // Cursor vertical absolute
-                cursorY = Math.max(0, Math.min(rows - 1, args[0] - 1));
-                break;
-            case 'm': // SGR - Set Graphics Rendition
-                processSGR(args);
-                break;
-            case 'r': // Set scroll region
-                scrollTop = Math.max(0, args[0] - 1);
-                scrollBottom = Math.min(rows - 1, (args.length > 1 ? args[1] : rows) - 1);
-                cursorX = 0;
-                cursorY = 0;
-                break;
-            case 's': // Save cursor position
-                savedCursorX = cursorX;
-                savedCursorY = cursorY;
-                break;
-            case 'u': // Restore cursor position
-                cursorX = savedCursorX;
-                cursorY = savedCursorY;
-                break;
-            case 'h': // Set mode
-                if (params.startsWith("?")) {
-                    processPrivateMode(params.substring(1), true);
-                }
-                break;
-            case 'l': // Reset mode
-                if (params.startsWith("?")) {
-                    processPrivateMode(params.substring(1), false);
-                }
-                break;
-            case 'c': // Device attributes
-                sendResponse("\u001b[?1;2c");
-                break;
-            case 'n': // Device status
-                if (args[0] == 6) {
-                    sendResponse("\u001b[" + (cursorY + 1) + ";" + (cursorX + 1) + "R");
-                }
-                break;
+        // Draw scroll indicator if scrolled back
+        if (scrollOffset > 0) {
+            g.setColor(new Color(100, 100, 100, 200));
+            String indicator = "↑ " + scrollOffset + " lines ↑";
+            int indicatorWidth = fm.stringWidth(indicator);
+            g.fillRect(getWidth() - indicatorWidth - 20, 5, indicatorWidth + 10, charHeight);
+            g.setColor(Color.WHITE);
+            g.drawString(indicator, getWidth() - indicatorWidth - 15, 5 + ascent);
         }
     }
     
-    private void processPrivateMode(String params, boolean set) {
-        int mode = 0;
-        try {
-            mode = Integer.parseInt(params.replaceAll("[^0-9]", ""));
-        } catch (NumberFormatException e) {
-            return;
-        }
-        switch (mode) {
-            case 1: // Application cursor keys
-                applicationCursorKeys = set;
-                break;
-            case 7: // Auto-wrap mode
-                // Auto-wrap is always on in our implementation
-                break;
-            case 25: // Cursor visibility
-                cursorVisible = set;
-                break;
-            case 47: // Alternate screen buffer (older)
-            case 1047: // Alternate screen buffer
-                if (set && !alternateScreen) {
-                    // Save main screen and switch to alternate
-                    savedScreen = screen;
-                    savedColors = colors;
-                    savedBgColors = bgColors;
-                    savedBold = bold;
-                    savedReverse = reverse;
-                    initScreen();
-                    alternateScreen = true;
-                } else if (!set && alternateScreen) {
-                    // Restore main screen
-                    if (savedScreen != null) {
-                        screen = savedScreen;
-                        colors = savedColors;
-                        bgColors = savedBgColors;
-                        bold = savedBold;
-                        reverse = savedReverse;
-                    }
-                    alternateScreen = false;
-                }
-                break;
-            case 1048: // Save/restore cursor
-                if (set) {
-                    savedCursorX = cursorX;
-                    savedCursorY = cursorY;
-                } else {
-                    cursorX = savedCursorX;
-                    cursorY = savedCursorY;
-                }
-                break;
-            case 1049: // Alternate screen buffer with cursor save/restore
-                if (set && !alternateScreen) {
-                    // Save cursor and main screen, switch to alternate
-                    savedCursorX = cursorX;
-                    savedCursorY = cursorY;
-                    savedScreen = screen;
-                    savedColors = colors;
-                    savedBgColors = bgColors;
-                    savedBold = bold;
-                    savedReverse = reverse;
-                    initScreen();
-                    alternateScreen = true;
-                } else if (!set && alternateScreen) {
-                    // Restore main screen and cursor
-                    if (savedScreen != null) {
-                        screen = savedScreen;
-                        colors = savedColors;
-                        bgColors = savedBgColors;
-                        bold = savedBold;
-                        reverse = savedReverse;
-                    }
-                    cursorX = savedCursorX;
-                    cursorY = savedCursorY;
-                    alternateScreen = false;
-                }
-                break;
-            case 2004: // Bracketed paste mode - just acknowledge it
-                break;
+    /**
+     * Bring the cached frame up to date, rendering only damaged cells unless
+     * the view was scrolled, the selection changed or the frame was resized
+     */
+    private void updateFrame() {
+        int cols = emulator.getCols();
+        int rows = emulator.getRows();
+        int width = cols * charWidth;
+        int height = rows * charHeight;
+        boolean full = false;
+        
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            frame = gc != null
+                ? gc.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            full = true;
+        }
+        if (textBuffer.length < cols) {
+            textBuffer = new char[cols];
+        }
+        if (scrollOffset != paintedScrollOffset
+                || selStartX != paintedSelStartX || selStartY != paintedSelStartY
+                || selEndX != paintedSelEndX || selEndY != paintedSelEndY) {
+            full = true;
+        }
+        if (!full && scrollOffset > 0) {
+            // Damage is kept by screen row, but scrolled back views show screen row
+            // y - scrollOffset at row y, and new output shifts every row
+            for (int y = 0; y < rows && !full; y++) {
+                full = emulator.getDamageStart(y) <= emulator.getDamageEnd(y);
+            }
         }
-    }
-    
-    private void processOSC(String seq) {
-        // OSC sequences: ]Ps;Pt BEL or ]Ps;Pt ST
-        int semicolon = seq.indexOf(';');
-        if (semicolon > 0) {
-            String code = seq.substring(1, semicolon);
-            String text = seq.substring(semicolon + 1);
-            // Remove terminator
-            text = text.replace("\u0007", "").replace("\u001b\\", "");
+        
+        Graphics2D g = frame.createGraphics();
+        try {
+            g.setFont(getFont());
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                               RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            int ascent = g.getFontMetrics().getAscent();
             
-            if ("0".equals(code) || "2".equals(code)) {
-                // Set title
-                if (listener != null) {
-                    listener.onTitleChange(text);
+            for (int y = 0; y < rows; y++) {
+                int start = emulator.getDamageStart(y);
+                int end = emulator.getDamageEnd(y);
+                if (full) {
+                    paintRow(g, ascent, y, 0, cols - 1);
+                    addUnblitted(0, y, cols - 1);
+                } else if (start <= end) {
+                    paintRow(g, ascent, y, start, Math.min(end, cols - 1));
+                    addUnblitted(start, y, Math.min(end, cols - 1));
                 }
+                emulator.clearDamage(y);
             }
+        } finally {
+            g.dispose();
         }
-    }
-    
-    private int[] parseArgs(String params) {
-        if (params.isEmpty() || params.equals("?")) {
-            return new int[] { 0 };
-        }
-        params = params.replace("?", "");
-        String[] parts = params.split(";");
-        int[] args = new int[Math.max(parts.length, 1)];
-        for (int i = 0; i < parts.length; i++) {
-            try {
-                args[i] = parts[i].isEmpty() ? 0 : Integer.parseInt(parts[i]);
-            } catch (NumberFormatException e) {
-                args[i] = 0;
-            }
-        }
-        return args;
-    }
-    
-    private void processSGR(int[] args) {
-        for (int i = 0; i < args.length; i++) {
-            int arg = args[i];
-            if (arg == 0) {
-                // Reset all attributes
-                currentFg = 7;
-                currentBg = 0;
-                currentBold = false;
-                currentReverse = false;
-            } else if (arg == 1) {
-                currentBold = true;
-            } else if (arg == 7) {
-                // Reverse video (swap fg/bg when rendering)
-                currentReverse = true;
-            } else if (arg == 22) {
-                currentBold = false;
-            } else if (arg == 27) {
-                // Reverse off
-                currentReverse = false;
-            } else if (arg >= 30 && arg <= 37) {
-                currentFg = arg - 30;
-            } else if (arg == 39) {
-                currentFg = 7;
-            } else if (arg >= 40 && arg <= 47) {
-                currentBg = arg - 40;
-            } else if (arg == 49) {
-                currentBg = 0;
-            } else if (arg >= 90 && arg <= 97) {
-                currentFg = arg - 90 + 8;
-            } else if (arg >= 100 && arg <= 107) {
-                currentBg = arg - 100 + 8;
-            } else if (arg == 38 && i + 2 < args.length && args[i + 1] == 5) {
-                // 256 color foreground
-                currentFg = Math.min(15, args[i + 2]);
-                i += 2;
-            } else if (arg == 48 && i + 2 < args.length && args[i + 1] == 5) {
-                // 256 color background
-                currentBg = Math.min(15, args[i + 2]);
-                i += 2;
-            }
-        }
-    }
-    
-    private void putChar(char c) {
-        // Ensure cursor is within bounds
-        if (cursorY < 0) cursorY = 0;
-        if (cursorY >= rows) cursorY = rows - 1;
         
-        if (cursorX >= cols) {
-            cursorX = 0;
-            lineFeed();
-        }
-        if (cursorX < 0) cursorX = 0;
-        
-        // Double-check after lineFeed
-        if (cursorY >= rows) cursorY = rows - 1;
-        
-        screen[cursorY][cursorX] = c;
-        colors[cursorY][cursorX] = currentBold ? currentFg + 8 : currentFg;
-        bgColors[cursorY][cursorX] = currentBg;
-        bold[cursorY][cursorX] = currentBold;
-        reverse[cursorY][cursorX] = currentReverse;
-        
-        cursorX++;
+        paintedScrollOffset = scrollOffset;
+        paintedSelStartX = selStartX;
+        paintedSelStartY = selStartY;
+        paintedSelEndX = selEndX;
+        paintedSelEndY = selEndY;
     }
     
-    private void lineFeed() {
-        if (cursorY >= scrollBottom) {
-            scrollUp();
+    private void addUnblitted(int fromX, int y, int toX) {
+        Rectangle cells = new Rectangle(fromX * charWidth, y * charHeight, (toX - fromX + 1) * charWidth, charHeight);
+        if (unblitted == null) {
+            unblitted = cells;
         } else {
-            cursorY++;
+            unblitted.add(cells);
         }
     }
     
-    private void scrollUp() {
-        // Save top line to scrollback buffer (only if scrolling the whole screen)
-        if (scrollTop == 0 && !alternateScreen) {
-            scrollbackChars.add(screen[0].clone());
-            scrollbackColors.add(colors[0].clone());
-            scrollbackBgColors.add(bgColors[0].clone());
-            scrollbackBold.add(bold[0].clone());
-            scrollbackReverse.add(reverse[0].clone());
-            
-            // Trim scrollback if too large
-            while (scrollbackChars.size() > MAX_SCROLLBACK) {
-                scrollbackChars.remove(0);
-                scrollbackColors.remove(0);
-                scrollbackBgColors.remove(0);
-                scrollbackBold.remove(0);
-                scrollbackReverse.remove(0);
-            }
-        }
-        
-        int safeTop = Math.max(0, Math.min(scrollTop, rows - 1));
-        int safeBottom = Math.max(0, Math.min(scrollBottom, rows - 1));
-        
-        for (int y = safeTop; y < safeBottom && y + 1 < rows; y++) {
-            screen[y] = screen[y + 1];
-            colors[y] = colors[y + 1];
-            bgColors[y] = bgColors[y + 1];
-            bold[y] = bold[y + 1];
-            reverse[y] = reverse[y + 1];
-        }
-        if (safeBottom < rows) {
-            screen[safeBottom] = new char[cols];
-            colors[safeBottom] = new int[cols];
-            bgColors[safeBottom] = new int[cols];
-            bold[safeBottom] = new boolean[cols];
-            reverse[safeBottom] = new boolean[cols];
-            Arrays.fill(screen[safeBottom], ' ');
-            Arrays.fill(colors[safeBottom], 7);
+    private void paintRow(Graphics g, int ascent, int y, int fromX, int toX) {
+        long[] line = getDisplayLine(y);
+        if (line == null) {
+            // Beyond screen - skip this line
+            return;
         }
-    }
-    
-    private void scrollDown() {
-        int safeTop = Math.max(0, Math.min(scrollTop, rows - 1));
-        int safeBottom = Math.max(0, Math.min(scrollBottom, rows - 1));
         
-        for (int y = safeBottom; y > safeTop && y > 0; y--) {
-            screen[y] = screen[y - 1];
-            colors[y] = colors[y - 1];
-            bgColors[y] = bgColors[y - 1];
-            bold[y] = bold[y - 1];
-            reverse[y] = reverse[y - 1];
-        }
-        if (safeTop < rows) {
-            screen[safeTop] = new char[cols];
-            colors[safeTop] = new int[cols];
-            bgColors[safeTop] = new int[cols];
-            bold[safeTop] = new boolean[cols];
-            reverse[safeTop] = new boolean[cols];
-            Arrays.fill(screen[safeTop], ' ');
-            Arrays.fill(colors[safeTop], 7);
+        int py = y * charHeight;
+        int x = fromX;
+        while (x <= toX) {
+            // Extend the run while cells share the same colours
+            int color = cellColors(line, x, y);
+            int end = x + 1;
+            while (end <= toX && cellColors(line, end, y) == color) {
+                end++;
+            }
+            
+            // One background fill for the whole run
+            g.setColor(ANSI_COLORS[color & 0xF]);
+            g.fillRect(x * charWidth, py, (end - x) * charWidth, charHeight);
+            
+            g.setColor(ANSI_COLORS[color >>> 4]);
+            paintText(g, line, x, end, py + ascent);
+            x = end;
         }
     }
     
-    private void eraseDisplay(int mode) {
-        // Ensure cursor is within bounds
-        int safeY = Math.max(0, Math.min(cursorY, rows - 1));
-        
-        switch (mode) {
-            case 0: // Cursor to end
-                eraseLine(0);
-                for (int y = safeY + 1; y < rows; y++) {
-                    Arrays.fill(screen[y], ' ');
-                    Arrays.fill(colors[y], 7);
-                    Arrays.fill(bgColors[y], 0);
-                    Arrays.fill(reverse[y], false);
-                }
-                break;
-            case 1: // Start to cursor
-                eraseLine(1);
-                for (int y = 0; y < safeY; y++) {
-                    Arrays.fill(screen[y], ' ');
-                    Arrays.fill(colors[y], 7);
-                    Arrays.fill(bgColors[y], 0);
-                    Arrays.fill(reverse[y], false);
+    /**
+     * Draw the characters of cells [from, to) that share one colour. Printable ASCII is
+     * batched into a single drawChars call when the font advances it by exactly one cell;
+     * other characters may come from fallback fonts and are placed cell by cell.
+     */
+    private void paintText(Graphics g, long[] line, int from, int to, int baseline) {
+        int runStart = -1;
+        int length = 0;
+        for (int x = from; x <= to; x++) {
+            int c = x < to && x < line.length ? Cell.codePoint(line[x]) : ' ';
+            boolean batch = x < to && uniformAscii && c >= ' ' && c < 0x7F;
+            
+            if (batch && c != ' ') {
+                if (runStart < 0) {
+                    runStart = x;
+                    length = 0;
                 }
-                break;
-            case 2: case 3: // Entire screen
-                for (int y = 0; y < rows; y++) {
-                    Arrays.fill(screen[y], ' ');
-                    Arrays.fill(colors[y], 7);
-                    Arrays.fill(bgColors[y], 0);
-                    Arrays.fill(reverse[y], false);
+                // Spaces inside a run are kept so the following characters stay aligned
+                while (runStart + length < x) {
+                    textBuffer[length++] = ' ';
                 }
-                break;
+                textBuffer[length++] = (char) c;
+                continue;
+            }
+            
+            if (runStart >= 0 && (!batch || x == to)) {
+                g.drawChars(textBuffer, 0, length, runStart * charWidth, baseline);
+                runStart = -1;
+            }
+            if (x < to && !batch && c != ' ' && c != 0) {
+                int n = Character.toChars(c, glyphBuffer, 0);
+                g.drawChars(glyphBuffer, 0, n, x * charWidth, baseline);
+            }
         }
     }
     
-    private void eraseLine(int mode) {
-        // Ensure cursor is within bounds
-        if (cursorY < 0 || cursorY >= rows) return;
-        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
-        
-        switch (mode) {
-            case 0: // Cursor to end
-                for (int x = safeX; x < cols; x++) {
-                    screen[cursorY][x] = ' ';
-                    colors[cursorY][x] = 7;
-                    bgColors[cursorY][x] = 0;
-                    reverse[cursorY][x] = false;
-                }
-                break;
-            case 1: // Start to cursor
-                for (int x = 0; x <= safeX; x++) {
-                    screen[cursorY][x] = ' ';
-                    colors[cursorY][x] = 7;
-                    bgColors[cursorY][x] = 0;
-                    reverse[cursorY][x] = false;
-                }
-                break;
-            case 2: // Entire line
-                Arrays.fill(screen[cursorY], ' ');
-                Arrays.fill(colors[cursorY], 7);
-                Arrays.fill(bgColors[cursorY], 0);
-                Arrays.fill(reverse[cursorY], false);
-                break;
+    /**
+     * Effective colours of a cell as (fg << 4) | bg, after bold, reverse video and selection
+     */
+    private int cellColors(long[] line, int x, int y) {
+        if (isSelected(x, y)) {
+            return 7;  // Black on white
+        }
+        long cell = x < line.length ? line[x] : Cell.BLANK;
+        
+        // Get colors, bold brightens the normal colors
+        int fg = Cell.fg(cell);
+        int bg = Cell.bg(cell);
+        if (Cell.isBold(cell) && fg < 8) {
+            fg += 8;
+        }
+        fg %= 16;
+        bg %= 16;
+        
+        // Swap fg/bg if reverse video
+        if (Cell.isReverse(cell)) {
+            int tmp = fg;
+            fg = bg;
+            bg = tmp;
+            // Make sure we have visible colors
+            if (fg == bg) {
+                fg = 0;  // Black text
+                bg = 7;  // White background
+            }
         }
+        return (fg << 4) | bg;
     }
     
-    private void insertLines(int n) {
-        if (cursorY < 0 || cursorY >= rows) return;
-        int safeBottom = Math.min(scrollBottom, rows - 1);
-        
-        for (int i = 0; i < n; i++) {
-            for (int y = safeBottom; y > cursorY && y > 0; y--) {
-                screen[y] = screen[y - 1];
-                colors[y] = colors[y - 1];
-                bgColors[y] = bgColors[y - 1];
-                reverse[y] = reverse[y - 1];
-            }
-            screen[cursorY] = new char[cols];
-            colors[cursorY] = new int[cols];
-            bgColors[cursorY] = new int[cols];
-            reverse[cursorY] = new boolean[cols];
-            Arrays.fill(screen[cursorY], ' ');
-            Arrays.fill(colors[cursorY], 7);
-        }
+    private void recordFrameTime(long nanos) {
+        frameCount++;
+        frameTimeTotal += nanos;
+        frameTimeMax = Math.max(frameTimeMax, nanos);
     }
     
-    private void deleteLines(int n) {
-        if (cursorY < 0 || cursorY >= rows) return;
-        int safeBottom = Math.min(scrollBottom, rows - 1);
-        
-        for (int i = 0; i < n; i++) {
-            for (int y = cursorY; y < safeBottom && y + 1 < rows; y++) {
-                screen[y] = screen[y + 1];
-                colors[y] = colors[y + 1];
-                bgColors[y] = bgColors[y + 1];
-                reverse[y] = reverse[y + 1];
-            }
-            if (safeBottom < rows) {
-                screen[safeBottom] = new char[cols];
-                colors[safeBottom] = new int[cols];
-                bgColors[safeBottom] = new int[cols];
-                reverse[safeBottom] = new boolean[cols];
-                Arrays.fill(screen[safeBottom], ' ');
-                Arrays.fill(colors[safeBottom], 7);
-            }
-        }
+    /**
+     * Average paintComponent time in nanoseconds since the last reset
+     */
+    public long getAverageFrameTime() {
+        return frameCount > 0 ? frameTimeTotal / frameCount : 0;
     }
     
-    private void insertChars(int n) {
-        if (cursorY < 0 || cursorY >= rows) return;
-        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
-        
-        for (int x = cols - 1; x >= safeX + n && x >= n; x--) {
-            screen[cursorY][x] = screen[cursorY][x - n];
-            colors[cursorY][x] = colors[cursorY][x - n];
-            bgColors[cursorY][x] = bgColors[cursorY][x - n];
-            reverse[cursorY][x] = reverse[cursorY][x - n];
-        }
-        for (int x = safeX; x < safeX + n && x < cols; x++) {
-            screen[cursorY][x] = ' ';
-            colors[cursorY][x] = 7;
-            bgColors[cursorY][x] = 0;
-            reverse[cursorY][x] = false;
-        }
+    public long getMaxFrameTime() {
+        return frameTimeMax;
     }
     
-    private void deleteChars(int n) {
-        if (cursorY < 0 || cursorY >= rows) return;
-        int safeX = Math.max(0, Math.min(cursorX, cols - 1));
-        
-        for (int x = safeX; x < cols - n && x + n < cols; x++) {
-            screen[cursorY][x] = screen[cursorY][x + n];
-            colors[cursorY][x] = colors[cursorY][x + n];
-            bgColors[cursorY][x] = bgColors[cursorY][x + n];
-        }
-        for (int x = Math.max(safeX, cols - n); x < cols; x++) {
-            screen[cursorY][x] = ' ';
-            colors[cursorY][x] = 7;
-            bgColors[cursorY][x] = 0;
-        }
+    public long getFrameCount() {
+        return frameCount;
     }
     
-    private void sendResponse(String response) {
-        if (outputStream != null) {
-            try {
-                outputStream.write(response.getBytes());
-                outputStream.flush();
-            } catch (IOException e) { }
-        }
+    public void resetFrameTimes() {
+        frameCount = 0;
+        frameTimeTotal = 0;
+        frameTimeMax = 0;
     }
     
-
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, 
-                           RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        
-        FontMetrics fm = g.getFontMetrics();
-        int ascent = fm.getAscent();
-        
-        int scrollbackSize = scrollbackChars.size();
-        
-        for (int y = 0; y < rows; y++) {
-            // Calculate which line to display based on scroll offset
-            int displayLine = y - scrollOffset;
-            
-            char[] lineChars;
-            int[] lineColors;
-            int[] lineBgColors;
-            boolean[] lineBold;
-            boolean[] lineReverse;
-            
-            if (displayLine < 0) {
-                // Drawing from scrollback buffer
-                int scrollbackIndex = scrollbackSize + displayLine;
-                if (scrollbackIndex >= 0 && scrollbackIndex < scrollbackSize) {
-                    lineChars = scrollbackChars.get(scrollbackIndex);
-                    lineColors = scrollbackColors.get(scrollbackIndex);
-                    lineBgColors = scrollbackBgColors.get(scrollbackIndex);
-                    lineBold = scrollbackBold.get(scrollbackIndex);
-                    lineReverse = scrollbackReverse.size() > scrollbackIndex ? 
-                                  scrollbackReverse.get(scrollbackIndex) : new boolean[cols];
-                } else {
-                    // Empty line
-                    lineChars = new char[cols];
-                    lineColors = new int[cols];
-                    lineBgColors = new int[cols];
-                    lineBold = new boolean[cols];
-                    lineReverse = new boolean[cols];
-                    Arrays.fill(lineChars, ' ');
-                    Arrays.fill(lineColors, 7);
-                }
-            } else if (displayLine >= 0 && displayLine < rows && 
-                       screen != null && reverse != null &&
-                       displayLine < screen.length && displayLine < reverse.length) {
-                // Drawing from current screen
-                lineChars = screen[displayLine];
-                lineColors = colors[displayLine];
-                lineBgColors = bgColors[displayLine];
-                lineBold = bold[displayLine];
-                lineReverse = reverse[displayLine];
-            } else {
-                // Beyond screen or arrays not ready - skip this line
-                continue;
-            }
-            
-            for (int x = 0; x < cols && x < lineChars.length; x++) {
-                int px = x * charWidth;
-                int py = y * charHeight;
-                
-                // Check selection
-                boolean selected = isSelected(x, y);
-                
-                // Get colors, handling reverse video
-                int fg = lineColors[x] % 16;
-                int bg = lineBgColors[x] % 16;
-                boolean isReverse = lineReverse != null && x < lineReverse.length && lineReverse[x];
-                
-                // Swap fg/bg if reverse video
-                if (isReverse) {
-                    int tmp = fg;
-                    fg = bg;
-                    bg = tmp;
-                    // Make sure we have visible colors
-                    if (fg == bg) {
-                        fg = 0;  // Black text
-                        bg = 7;  // White background
-                    }
-                }
-                
-                // Draw background
-                Color bgColor = selected ? ANSI_COLORS[7] : ANSI_COLORS[bg];
-                g.setColor(bgColor);
-                g.fillRect(px, py, charWidth, charHeight);
-                
-                // Draw character
-                char c = lineChars[x];
-                if (c != ' ' && c != 0) {
-                    Color fgColor = selected ? ANSI_COLORS[0] : ANSI_COLORS[fg];
-                    g.setColor(fgColor);
-                    g.drawString(String.valueOf(c), px, py + ascent);
-                }
-            }
-        }
-        
-        // Draw cursor (only when not scrolled back)
-        if (scrollOffset == 0 && cursorVisible && cursorBlink && cursorY < rows && cursorX < cols) {
-            g.setColor(ANSI_COLORS[7]);
-            g.fillRect(cursorX * charWidth, cursorY * charHeight, charWidth, charHeight);
-            g.setColor(ANSI_COLORS[0]);
-            char c = screen[cursorY][cursorX];
-            g.drawString(String.valueOf(c), cursorX * charWidth, cursorY * charHeight + ascent);
-        }
-        
-        // Draw scroll indicator if scrolled back
-        if (scrollOffset > 0) {
-            g.setColor(new Color(100, 100, 100, 200));
-            String indicator = "↑ " + scrollOffset + " lines ↑";
-            int indicatorWidth = fm.stringWidth(indicator);
-            g.fillRect(getWidth() - indicatorWidth - 20, 5, indicatorWidth + 10, charHeight);
-            g.setColor(Color.WHITE);
-            g.drawString(indicator, getWidth() - indicatorWidth - 15, 5 + ascent);
-        }
+    /**
+     * Line shown at view row y, taking the scroll offset into account.
+     * Returns null for rows beyond the screen.
+     */
+    private long[] getDisplayLine(int y) {
+        int displayLine = y - scrollOffset;
+        if (displayLine < 0) {
+            // From scrollback buffer
+            int scrollbackIndex = emulator.getScrollbackSize() + displayLine;
+            return scrollbackIndex >= 0 ? emulator.getScrollbackLine(scrollbackIndex) : EMPTY_LINE;
+        } else if (displayLine < emulator.getRows()) {
+            // From current screen
+            return emulator.getLine(displayLine);
+        }
+        return null;
     }
     
     private boolean isSelected(int x, int y) {
         if (selStartX < 0 || selStartY < 0) return false;
         
-        int startPos = selStartY * cols + selStartX;
-        int endPos = selEndY * cols + selEndX;
-        int pos = y * cols + x;
+        int startPos = selStartY * emulator.getCols() + selStartX;
+        int endPos = selEndY * emulator.getCols() + selEndX;
+        int pos = y * emulator.getCols() + x;
         
         if (startPos > endPos) {
             int tmp = startPos;
@@ -1122,7 +639,7 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
     @Override
     public void keyPressed(KeyEvent e) {
         String seq = null;
-        String prefix = applicationCursorKeys ? "\u001bO" : "\u001b[";
+        String prefix = emulator.isApplicationCursorKeys() ? "\u001bO" : "\u001b[";
         
         int keyCode = e.getKeyCode();
         
@@ -1192,16 +709,16 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         // Handle Shift+PageUp/PageDown for scrollback
         if (e.isShiftDown()) {
             if (keyCode == KeyEvent.VK_PAGE_UP) {
-                scrollUp(rows - 1);
+                scrollUp(emulator.getRows() - 1);
                 e.consume();
                 return;
             } else if (keyCode == KeyEvent.VK_PAGE_DOWN) {
-                scrollDown(rows - 1);
+                scrollDown(emulator.getRows() - 1);
                 e.consume();
                 return;
             } else if (keyCode == KeyEvent.VK_HOME) {
                 // Scroll to top of scrollback
-                scrollOffset = scrollbackChars.size();
+                scrollOffset = getScrollbackSize();
                 repaint();
                 e.consume();
                 return;
@@ -1340,8 +857,8 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
     @Override
     public void mouseDragged(MouseEvent e) {
         if (selecting) {
-            selEndX = Math.min(cols - 1, Math.max(0, e.getX() / charWidth));
-            selEndY = Math.min(rows - 1, Math.max(0, e.getY() / charHeight));
+            selEndX = Math.min(emulator.getCols() - 1, Math.max(0, e.getX() / charWidth));
+            selEndY = Math.min(emulator.getRows() - 1, Math.max(0, e.getY() / charHeight));
             repaint();
         }
     }
@@ -1375,7 +892,7 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
         
         if (notches < 0) {
             // Scroll up (back in history)
-            scrollOffset = Math.min(scrollOffset + scrollAmount, scrollbackChars.size());
+            scrollOffset = Math.min(scrollOffset + scrollAmount, getScrollbackSize());
         } else {
             // Scroll down (toward current)
             scrollOffset = Math.max(scrollOffset - scrollAmount, 0);
@@ -1395,7 +912,7 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
      * Scroll up by specified number of lines
      */
     public void scrollUp(int lines) {
-        scrollOffset = Math.min(scrollOffset + lines, scrollbackChars.size());
+        scrollOffset = Math.min(scrollOffset + lines, getScrollbackSize());
         repaint();
     }
     
@@ -1411,36 +928,54 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
      * Get scrollback buffer size
      */
     public int getScrollbackSize() {
-        return scrollbackChars.size();
+        return emulator.getScrollbackSize();
     }
     
     /**
      * Clear scrollback buffer
      */
     public void clearScrollback() {
-        scrollbackChars.clear();
-        scrollbackColors.clear();
-        scrollbackBgColors.clear();
-        scrollbackBold.clear();
+        emulator.clearScrollback();
         scrollOffset = 0;
         repaint();
     }
     
+    /**
+     * Set the maximum number of scrollback lines, keeping the most recent ones
+     */
+    public void setScrollbackLines(int lines) {
+        emulator.setScrollbackLines(lines);
+        scrollOffset = Math.min(scrollOffset, emulator.getScrollbackSize());
+        repaint();
+    }
+    
+    /**
+     * Release the scrollback, including its temp file
+     */
+    public void dispose() {
+        emulator.close();
+        scrollOffset = 0;
+    }
+    
     private void selectLine(int y) {
-        if (y >= rows) return;
+        if (y >= emulator.getRows()) return;
         selStartX = 0;
-        selEndX = cols - 1;
+        selEndX = emulator.getCols() - 1;
         selStartY = selEndY = y;
         repaint();
     }
     
     private void selectWord(int x, int y) {
-        if (y >= rows || x >= cols) return;
+        if (y >= emulator.getRows() || x >= emulator.getCols()) return;
         
         // Find word boundaries
         int start = x, end = x;
-        while (start > 0 && !Character.isWhitespace(screen[y][start - 1])) start--;
-        while (end < cols - 1 && !Character.isWhitespace(screen[y][end + 1])) end++;
+        synchronized (lock) {
+            if (y >= emulator.getRows() || x >= emulator.getCols()) return;
+            long[] line = emulator.getLine(y);
+            while (start > 0 && !Character.isWhitespace(Cell.codePoint(line[start - 1]))) start--;
+            while (end < emulator.getCols() - 1 && !Character.isWhitespace(Cell.codePoint(line[end + 1]))) end++;
+        }
         
         selStartX = start;
         selEndX = end;
@@ -1459,6 +994,18 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
     }
     
     private void copySelection() {
+        String text;
+        synchronized (lock) {
+            text = getSelectedText();
+        }
+        
+        if (!text.isEmpty()) {
+            Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+            clipboard.setContents(new StringSelection(text), null);
+        }
+    }
+    
+    private String getSelectedText() {
         StringBuilder sb = new StringBuilder();
         
         int sy = selStartY, sx = selStartX;
@@ -1470,45 +1017,24 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
             ey = ty; ex = tx;
         }
         
-        int scrollbackSize = scrollbackChars.size();
-        
         for (int y = sy; y <= ey; y++) {
             int startX = (y == sy) ? sx : 0;
-            int endX = (y == ey) ? ex : cols - 1;
-            
-            // Calculate which line to read based on scroll offset
-            int displayLine = y - scrollOffset;
-            char[] lineChars;
+            int endX = (y == ey) ? ex : emulator.getCols() - 1;
             
-            if (displayLine < 0) {
-                // Reading from scrollback buffer
-                int scrollbackIndex = scrollbackSize + displayLine;
-                if (scrollbackIndex >= 0 && scrollbackIndex < scrollbackSize) {
-                    lineChars = scrollbackChars.get(scrollbackIndex);
-                } else {
-                    lineChars = new char[cols];
-                    Arrays.fill(lineChars, ' ');
-                }
-            } else if (displayLine < rows) {
-                // Reading from current screen
-                lineChars = screen[displayLine];
-            } else {
+            // Line to read based on scroll offset
+            long[] line = getDisplayLine(y);
+            if (line == null) {
                 continue;
             }
             
-            for (int x = startX; x <= endX && x < lineChars.length; x++) {
-                char c = lineChars[x];
-                sb.append(c != 0 ? c : ' ');
+            for (int x = startX; x <= endX; x++) {
+                int c = x < line.length ? Cell.codePoint(line[x]) : ' ';
+                sb.appendCodePoint(c != 0 ? c : ' ');
             }
             if (y < ey) sb.append('\n');
         }
         
-        String text = sb.toString().stripTrailing();
-        
-        if (!text.isEmpty()) {
-            Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-            clipboard.setContents(new StringSelection(text), null);
-        }
+        return sb.toString().stripTrailing();
     }
     
     private void paste() {
@@ -1527,73 +1053,29 @@ public class TerminalPanel extends JPanel implements KeyListener, MouseListener,
             }
         } catch (Exception e) { }
     }
-    
     public void resize(int newCols, int newRows) {
-        if (newCols == cols && newRows == rows) return;
-        
-        char[][] newScreen = new char[newRows][newCols];
-        int[][] newColors = new int[newRows][newCols];
-        int[][] newBgColors = new int[newRows][newCols];
-        boolean[][] newBold = new boolean[newRows][newCols];
-        boolean[][] newReverse = new boolean[newRows][newCols];
-        
-        for (int y = 0; y < newRows; y++) {
-            Arrays.fill(newScreen[y], ' ');
-            Arrays.fill(newColors[y], 7);
-            Arrays.fill(newBgColors[y], 0);
-        }
-        
-        int copyRows = Math.min(rows, newRows);
-        int copyCols = Math.min(cols, newCols);
-        
-        for (int y = 0; y < copyRows; y++) {
-            System.arraycopy(screen[y], 0, newScreen[y], 0, copyCols);
-            System.arraycopy(colors[y], 0, newColors[y], 0, copyCols);
-            System.arraycopy(bgColors[y], 0, newBgColors[y], 0, copyCols);
-            System.arraycopy(bold[y], 0, newBold[y], 0, copyCols);
-            System.arraycopy(reverse[y], 0, newReverse[y], 0, copyCols);
-        }
-        
-        screen = newScreen;
-        colors = newColors;
-        bgColors = newBgColors;
-        bold = newBold;
-        reverse = newReverse;
+        if (!emulator.resize(newCols, newRows)) return;
         
-        cols = newCols;
-        rows = newRows;
-        scrollBottom = rows - 1;
-        
-        cursorX = Math.min(cursorX, cols - 1);
-        cursorY = Math.min(cursorY, rows - 1);
-        
-        setPreferredSize(new Dimension(cols * charWidth, rows * charHeight));
+        setPreferredSize(new Dimension(newCols * charWidth, newRows * charHeight));
         
         if (listener != null) {
-            listener.onResize(cols, rows);
+            listener.onResize(newCols, newRows);
         }
         
         repaint();
     }
     
-    public int getCols() { return cols; }
-    public int getRows() { return rows; }
+    public int getCols() { return emulator.getCols(); }
+    public int getRows() { return emulator.getRows(); }
     public int getCharWidth() { return charWidth; }
     public int getCharHeight() { return charHeight; }
     
     public void clear() {
-        initScreen();
-        cursorX = 0;
-        cursorY = 0;
+        emulator.clear();
         repaint();
     }
     
     public String getScreenText() {
-        StringBuilder sb = new StringBuilder();
-        for (int y = 0; y < rows; y++) {
-            sb.append(new String(screen[y]).stripTrailing());
-            if (y < rows - 1) sb.append('\n');
-        }
-        return sb.toString();
+        return emulator.getScreenText();
     }
 }
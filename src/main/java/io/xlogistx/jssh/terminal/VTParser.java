@@ -0,0 +1,262 @@
+package io.xlogistx.jssh.terminal;
+
+/**
+ * Table-driven VT escape sequence parser based on the DEC ANSI state model
+ * (as described by Paul Williams). Parameters and OSC strings are collected into
+ * reusable arrays, so parsing and dispatching allocate nothing.
+ */
+public class VTParser {
+
+    /**
+     * Receives the actions produced by the parser
+     */
+    public interface Handler {
+        /** Printable character in the ground state */
+        void print(int codePoint);
+
+        /** C0 or C1 control character */
+        void execute(int control);
+
+        /** ESC sequence; intermediate is 0 if none was given */
+        void escDispatch(int intermediate, int finalChar);
+
+        /**
+         * CSI sequence; privateMarker and intermediate are 0 if none was given.
+         * The params array is reused, only the first paramCount entries are valid
+         * and omitted parameters are 0.
+         */
+        void csiDispatch(int privateMarker, int intermediate, int finalChar, int[] params, int paramCount);
+
+        /** OSC string without terminator; the data array is reused */
+        void oscDispatch(char[] data, int length);
+    }
+
+    private static final int MAX_PARAMS = 32;
+    private static final int MAX_PARAM_VALUE = 65535;
+    private static final int MAX_OSC_LENGTH = 4096;
+
+    // States
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int OSC_STRING = 7;
+    private static final int STRING_IGNORE = 8;  // DCS, SOS, PM and APC payloads
+    private static final int STATE_COUNT = 9;
+
+    // Actions
+    private static final int IGNORE = 0;
+    private static final int PRINT = 1;
+    private static final int EXECUTE = 2;
+    private static final int CLEAR = 3;
+    private static final int COLLECT = 4;
+    private static final int MARKER = 5;
+    private static final int PARAM = 6;
+    private static final int ESC_DISPATCH = 7;
+    private static final int CSI_DISPATCH = 8;
+    private static final int OSC_PUT = 9;
+
+    // Transition table for code points below 0xA0: (action << 4) | next state
+    private static final int TABLE_WIDTH = 0xA0;
+    private static final byte[] TABLE = new byte[STATE_COUNT * TABLE_WIDTH];
+
+    static {
+        for (int s = 0; s < STATE_COUNT; s++) {
+            // By default stay in the current state and ignore the character
+            set(s, 0x00, 0x9F, IGNORE, s);
+        }
+
+        // Ground
+        setC0(GROUND, EXECUTE, GROUND);
+        set(GROUND, 0x20, 0x7E, PRINT, GROUND);
+
+        // Escape
+        setC0(ESCAPE, EXECUTE, ESCAPE);
+        set(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        set(ESCAPE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+        set(ESCAPE, '[', '[', CLEAR, CSI_ENTRY);
+        set(ESCAPE, ']', ']', CLEAR, OSC_STRING);
+        set(ESCAPE, 'P', 'P', IGNORE, STRING_IGNORE);
+        set(ESCAPE, 'X', 'X', IGNORE, STRING_IGNORE);
+        set(ESCAPE, '^', '^', IGNORE, STRING_IGNORE);
+        set(ESCAPE, '_', '_', IGNORE, STRING_IGNORE);
+
+        // Escape intermediate
+        setC0(ESCAPE_INTERMEDIATE, EXECUTE, ESCAPE_INTERMEDIATE);
+        set(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        set(ESCAPE_INTERMEDIATE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+
+        // CSI entry - ':' is accepted as a parameter separator like ';'
+        setC0(CSI_ENTRY, EXECUTE, CSI_ENTRY);
+        set(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_ENTRY, 0x30, 0x3B, PARAM, CSI_PARAM);
+        set(CSI_ENTRY, 0x3C, 0x3F, MARKER, CSI_PARAM);
+        set(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        // CSI parameters
+        setC0(CSI_PARAM, EXECUTE, CSI_PARAM);
+        set(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_PARAM, 0x30, 0x3B, PARAM, CSI_PARAM);
+        set(CSI_PARAM, 0x3C, 0x3F, IGNORE, CSI_IGNORE);
+        set(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        // CSI intermediate
+        setC0(CSI_INTERMEDIATE, EXECUTE, CSI_INTERMEDIATE);
+        set(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        set(CSI_INTERMEDIATE, 0x30, 0x3F, IGNORE, CSI_IGNORE);
+        set(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        // Malformed CSI - swallow until the final byte
+        setC0(CSI_IGNORE, EXECUTE, CSI_IGNORE);
+        set(CSI_IGNORE, 0x40, 0x7E, IGNORE, GROUND);
+
+        // OSC string, terminated by BEL or ST
+        set(OSC_STRING, 0x07, 0x07, IGNORE, GROUND);
+        set(OSC_STRING, 0x20, 0x7F, OSC_PUT, OSC_STRING);
+
+        // Transitions from anywhere
+        for (int s = 0; s < STATE_COUNT; s++) {
+            set(s, 0x18, 0x18, EXECUTE, GROUND);
+            set(s, 0x1A, 0x1A, EXECUTE, GROUND);
+            set(s, 0x1B, 0x1B, CLEAR, ESCAPE);
+            set(s, 0x80, 0x9F, EXECUTE, GROUND);
+            set(s, 0x90, 0x90, IGNORE, STRING_IGNORE);
+            set(s, 0x98, 0x98, IGNORE, STRING_IGNORE);
+            set(s, 0x9B, 0x9B, CLEAR, CSI_ENTRY);
+            set(s, 0x9C, 0x9C, IGNORE, GROUND);
+            set(s, 0x9D, 0x9D, CLEAR, OSC_STRING);
+            set(s, 0x9E, 0x9F, IGNORE, STRING_IGNORE);
+        }
+    }
+
+    private static void set(int state, int from, int to, int action, int next) {
+        for (int c = from; c <= to; c++) {
+            TABLE[state * TABLE_WIDTH + c] = (byte) ((action << 4) | next);
+        }
+    }
+
+    private static void setC0(int state, int action, int next) {
+        set(state, 0x00, 0x17, action, next);
+        set(state, 0x19, 0x19, action, next);
+        set(state, 0x1C, 0x1F, action, next);
+    }
+
+    private final Handler handler;
+    private int state = GROUND;
+
+    private final int[] params = new int[MAX_PARAMS];
+    private int paramIndex;
+    private int privateMarker;
+    private int intermediate;
+
+    private final char[] osc = new char[MAX_OSC_LENGTH];
+    private int oscLength;
+
+    public VTParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Feed one decoded character into the parser
+     */
+    public void advance(int codePoint) {
+        // Fast path for plain text
+        if (state == GROUND && codePoint >= 0x20 && codePoint != 0x7F
+                && (codePoint < 0x80 || codePoint >= TABLE_WIDTH)) {
+            handler.print(codePoint);
+            return;
+        }
+
+        int action;
+        int next;
+        if (codePoint >= 0 && codePoint < TABLE_WIDTH) {
+            int entry = TABLE[state * TABLE_WIDTH + codePoint] & 0xFF;
+            action = entry >>> 4;
+            next = entry & 0x0F;
+        } else {
+            // Non-ASCII text is only meaningful as printable data or OSC payload
+            action = state == OSC_STRING ? OSC_PUT : IGNORE;
+            next = state;
+        }
+
+        // Exit action of the OSC state
+        if (state == OSC_STRING && next != OSC_STRING) {
+            handler.oscDispatch(osc, oscLength);
+        }
+
+        switch (action) {
+            case PRINT:
+                handler.print(codePoint);
+                break;
+            case EXECUTE:
+                handler.execute(codePoint);
+                break;
+            case CLEAR:
+                clear();
+                break;
+            case COLLECT:
+                intermediate = codePoint;
+                break;
+            case MARKER:
+                privateMarker = codePoint;
+                break;
+            case PARAM:
+                param(codePoint);
+                break;
+            case ESC_DISPATCH:
+                handler.escDispatch(intermediate, codePoint);
+                break;
+            case CSI_DISPATCH:
+                handler.csiDispatch(privateMarker, intermediate, codePoint, params, paramIndex + 1);
+                break;
+            case OSC_PUT:
+                oscPut(codePoint);
+                break;
+            default:
+                break;
+        }
+
+        state = next;
+    }
+
+    /**
+     * Abandon any sequence in progress
+     */
+    public void reset() {
+        state = GROUND;
+        clear();
+    }
+
+    private void clear() {
+        paramIndex = 0;
+        params[0] = 0;
+        privateMarker = 0;
+        intermediate = 0;
+        oscLength = 0;
+    }
+
+    private void param(int c) {
+        if (c == ';' || c == ':') {
+            if (paramIndex < MAX_PARAMS - 1) {
+                params[++paramIndex] = 0;
+            }
+        } else {
+            int value = params[paramIndex] * 10 + (c - '0');
+            params[paramIndex] = Math.min(value, MAX_PARAM_VALUE);
+        }
+    }
+
+    private void oscPut(int codePoint) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            if (oscLength < MAX_OSC_LENGTH) {
+                osc[oscLength++] = (char) codePoint;
+            }
+        } else if (oscLength < MAX_OSC_LENGTH - 1) {
+            osc[oscLength++] = Character.highSurrogate(codePoint);
+            osc[oscLength++] = Character.lowSurrogate(codePoint);
+        }
+    }
+}
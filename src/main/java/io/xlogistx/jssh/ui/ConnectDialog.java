@@ -2,6 +2,7 @@ package io.xlogistx.jssh.ui;
 
 import io.xlogistx.jssh.config.ConnectionConfig;
 import io.xlogistx.jssh.config.ConnectionManager;
+import io.xlogistx.jssh.ssh.ConnectionLauncher;
 import io.xlogistx.jssh.ssh.SSHConnection;
 import io.xlogistx.jssh.terminal.TerminalPanel;
 
@@ -24,9 +25,16 @@ public class ConnectDialog extends JDialog {
     private JCheckBox useKeyAuth;
     private JTextField keyFileField;
     private JPasswordField passphraseField;
+    private JTextField groupField;
+    private JCheckBox keepWarmCheckbox;
     private JComboBox<String> termTypeCombo;
     private JSpinner colsSpinner;
     private JSpinner rowsSpinner;
+    private JSpinner scrollbackSpinner;
+    private JSpinner sftpWindowSpinner;
+    private JSpinner sftpChunkSpinner;
+    private JCheckBox compressionCheckbox;
+    private JSpinner compressionLevelSpinner;
     private JCheckBox x11ForwardingCheckbox;
     private JTextField x11DisplayField;
 
@@ -62,6 +70,10 @@ public class ConnectDialog extends JDialog {
         JPanel termPanel = createTerminalPanel();
         tabs.addTab("Terminal", termPanel);
 
+        // SFTP tab
+        JPanel sftpPanel = createSftpPanel();
+        tabs.addTab("SFTP", sftpPanel);
+
         add(tabs, BorderLayout.CENTER);
 
         // Buttons
@@ -162,14 +174,22 @@ public class ConnectDialog extends JDialog {
         usernameField.setText(config.getUsername() != null ? config.getUsername() : "");
         useKeyAuth.setSelected(config.isUseKeyAuth());
         keyFileField.setText(config.getKeyFile() != null ? config.getKeyFile() : "");
+        groupField.setText(config.getGroup() != null ? config.getGroup() : "");
+        keepWarmCheckbox.setSelected(config.isKeepWarm());
         termTypeCombo.setSelectedItem(config.getTerminalType());
         colsSpinner.setValue(config.getColumns());
         rowsSpinner.setValue(config.getRows());
+        scrollbackSpinner.setValue(config.getScrollbackLines());
+        sftpWindowSpinner.setValue(config.getSftpWindow());
+        sftpChunkSpinner.setValue(config.getSftpChunkSize() / 1024);
+        compressionCheckbox.setSelected(config.isCompression());
+        compressionLevelSpinner.setValue(config.getCompressionLevel());
         x11ForwardingCheckbox.setSelected(config.isX11Forwarding());
         x11DisplayField.setText(config.getX11Display() != null ? config.getX11Display() : "localhost:0");
 
         updateKeyFields();
         updateX11Fields();
+        updateCompressionFields();
 
         loadingProfile = false;
     }
@@ -184,14 +204,22 @@ public class ConnectDialog extends JDialog {
         useKeyAuth.setSelected(false);
         keyFileField.setText(getDefaultKeyFile());
         passphraseField.setText("");
+        groupField.setText("");
+        keepWarmCheckbox.setSelected(false);
         termTypeCombo.setSelectedItem("xterm-256color");
         colsSpinner.setValue(80);
         rowsSpinner.setValue(24);
+        scrollbackSpinner.setValue(10000);
+        sftpWindowSpinner.setValue(64);
+        sftpChunkSpinner.setValue(32);
+        compressionCheckbox.setSelected(false);
+        compressionLevelSpinner.setValue(6);
         x11ForwardingCheckbox.setSelected(false);
         x11DisplayField.setText(System.getenv("DISPLAY") != null ? System.getenv("DISPLAY") : "localhost:0");
 
         updateKeyFields();
         updateX11Fields();
+        updateCompressionFields();
 
         loadingProfile = false;
     }
@@ -203,9 +231,16 @@ public class ConnectDialog extends JDialog {
         config.setUsername(usernameField.getText().trim());
         config.setUseKeyAuth(useKeyAuth.isSelected());
         config.setKeyFile(keyFileField.getText().trim());
+        config.setGroup(groupField.getText().trim());
+        config.setKeepWarm(keepWarmCheckbox.isSelected());
         config.setTerminalType((String) termTypeCombo.getSelectedItem());
         config.setColumns((Integer) colsSpinner.getValue());
         config.setRows((Integer) rowsSpinner.getValue());
+        config.setScrollbackLines((Integer) scrollbackSpinner.getValue());
+        config.setSftpWindow((Integer) sftpWindowSpinner.getValue());
+        config.setSftpChunkSize((Integer) sftpChunkSpinner.getValue() * 1024);
+        config.setCompression(compressionCheckbox.isSelected());
+        config.setCompressionLevel((Integer) compressionLevelSpinner.getValue());
         config.setX11Forwarding(x11ForwardingCheckbox.isSelected());
         config.setX11Display(x11DisplayField.getText().trim());
         return config;
@@ -394,6 +429,27 @@ public class ConnectDialog extends JDialog {
         passphraseField.setEnabled(false);
         panel.add(passphraseField, gbc);
 
+        // Connect group, opened together from File > Connect Group
+        gbc.gridx = 0;
+        gbc.gridy = 6;
+        gbc.gridwidth = 1;
+        gbc.fill = GridBagConstraints.NONE;
+        panel.add(new JLabel("Group:"), gbc);
+
+        gbc.gridx = 1;
+        gbc.gridwidth = 3;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        groupField = new JTextField();
+        groupField.setToolTipText("Connections with the same group are opened together");
+        panel.add(groupField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 7;
+        gbc.gridwidth = 4;
+        keepWarmCheckbox = new JCheckBox("Keep a session ready (key without passphrase)");
+        keepWarmCheckbox.setToolTipText("Log in at startup so new tabs to this account open at once");
+        panel.add(keepWarmCheckbox, gbc);
+
         // Store references for enabling/disabling
         useKeyAuth.putClientProperty("browseBtn", browseBtn);
 
@@ -436,13 +492,21 @@ public class ConnectDialog extends JDialog {
         rowsSpinner = new JSpinner(new SpinnerNumberModel(24, 10, 100, 1));
         panel.add(rowsSpinner, gbc);
 
-        // X11 Forwarding section
         gbc.gridx = 0;
         gbc.gridy = 3;
+        panel.add(new JLabel("Scrollback lines:"), gbc);
+
+        gbc.gridx = 1;
+        scrollbackSpinner = new JSpinner(new SpinnerNumberModel(10000, 0, 10000000, 10000));
+        panel.add(scrollbackSpinner, gbc);
+
+        // X11 Forwarding section
+        gbc.gridx = 0;
+        gbc.gridy = 4;
         gbc.gridwidth = 2;
         panel.add(new JSeparator(), gbc);
 
-        gbc.gridy = 4;
+        gbc.gridy = 5;
         gbc.gridwidth = 1;
         x11ForwardingCheckbox = new JCheckBox("Enable X11 Forwarding");
         x11ForwardingCheckbox.setToolTipText("Forward X11 graphical applications to local display");
@@ -450,7 +514,7 @@ public class ConnectDialog extends JDialog {
         panel.add(x11ForwardingCheckbox, gbc);
 
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         panel.add(new JLabel("X11 Display:"), gbc);
 
         gbc.gridx = 1;
@@ -468,7 +532,7 @@ public class ConnectDialog extends JDialog {
 
         // X11 availability note
         gbc.gridx = 0;
-        gbc.gridy = 6;
+        gbc.gridy = 7;
         gbc.gridwidth = 2;
         JLabel x11Note = new JLabel();
         if (SSHConnection.isX11Available()) {
@@ -482,6 +546,64 @@ public class ConnectDialog extends JDialog {
         return panel;
     }
 
+    private JPanel createSftpPanel() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(5, 5, 5, 5);
+        gbc.anchor = GridBagConstraints.WEST;
+
+        // Requests kept in flight per file
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        panel.add(new JLabel("Requests in flight:"), gbc);
+
+        gbc.gridx = 1;
+        sftpWindowSpinner = new JSpinner(new SpinnerNumberModel(64, 1, 1024, 8));
+        sftpWindowSpinner.setToolTipText("Read requests kept outstanding per file; raise for high-latency links");
+        panel.add(sftpWindowSpinner, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        panel.add(new JLabel("Chunk size (KB):"), gbc);
+
+        gbc.gridx = 1;
+        sftpChunkSpinner = new JSpinner(new SpinnerNumberModel(32, 4, 256, 4));
+        sftpChunkSpinner.setToolTipText("Bytes requested per SFTP read");
+        panel.add(sftpChunkSpinner, gbc);
+
+        // Compression, worth it for text such as logs and dumps on slow links
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        compressionCheckbox = new JCheckBox("Enable compression (zlib@openssh.com)");
+        compressionCheckbox.setToolTipText("Compress after login; speeds up text on slow links, "
+                + "costs CPU and slows already-compressed files on fast ones");
+        compressionCheckbox.addActionListener(e -> updateCompressionFields());
+        panel.add(compressionCheckbox, gbc);
+
+        gbc.gridy = 3;
+        gbc.gridwidth = 1;
+        panel.add(new JLabel("Compression level:"), gbc);
+
+        gbc.gridx = 1;
+        compressionLevelSpinner = new JSpinner(new SpinnerNumberModel(6, 1, 9, 1));
+        compressionLevelSpinner.setToolTipText("1 is fastest, 9 compresses most");
+        panel.add(compressionLevelSpinner, gbc);
+        updateCompressionFields();
+
+        // Push fields to the top
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        gbc.weighty = 1;
+        panel.add(Box.createGlue(), gbc);
+
+        return panel;
+    }
+
+    private void updateCompressionFields() {
+        compressionLevelSpinner.setEnabled(compressionCheckbox.isSelected());
+    }
+
     private void updateX11Fields() {
         x11DisplayField.setEnabled(x11ForwardingCheckbox.isSelected());
     }
@@ -491,6 +613,7 @@ public class ConnectDialog extends JDialog {
         keyFileField.setEnabled(useKey);
         passphraseField.setEnabled(useKey);
         passwordField.setEnabled(!useKey);
+        keepWarmCheckbox.setEnabled(useKey);
 
         JButton browseBtn = (JButton) useKeyAuth.getClientProperty("browseBtn");
         if (browseBtn != null) {
@@ -548,108 +671,17 @@ public class ConnectDialog extends JDialog {
         }
 
         setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final ConnectionConfig config = createConfigFromFields();
 
-        // Run connection in background thread
-        Thread connectThread = new Thread(() -> {
+        // Run connection in the background, on the pool shared with connect groups
+        ConnectionLauncher.getInstance().getExecutor().execute(() -> {
             SSHConnection conn = null;
             try {
-                conn = new SSHConnection();
-
-                // Host key verification - this will block for user input via invokeAndWait
-                conn.setHostKeyVerifier((h, p, keyType, fingerprint, key) -> {
-                    int result = JOptionPane.showConfirmDialog(this,
-                            "Host key for " + h + ":\n\n" +
-                                    "Type: " + keyType + "\n" +
-                                    "Fingerprint: " + fingerprint + "\n\n" +
-                                    "Accept this key?",
-                            "Host Key Verification",
-                            JOptionPane.YES_NO_OPTION,
-                            JOptionPane.WARNING_MESSAGE);
-                    return result == JOptionPane.YES_OPTION;
-                });
+                // Shares the session if another tab is logged in to this account; host key
+                // verification blocks for user input via invokeAndWait
+                conn = ConnectionLauncher.open(config, password, passphrase, new HostKeyDialog(this));
 
-                // Connect (includes host key verification)
-                conn.connect(host, port, 30000);
-
-                // Now authenticate (separate from connect)
-                boolean authenticated;
-                if (useKey) {
-                    authenticated = conn.authenticatePublicKey(username, keyFile,
-                            passphrase.isEmpty() ? null : passphrase, 30000);
-                } else {
-                    authenticated = conn.authenticatePassword(username, password, 30000);
-                }
-
-                if (!authenticated) {
-                    throw new IOException("Authentication failed - check username/password");
-                }
-
-                // Create terminal
-                int cols = (Integer) colsSpinner.getValue();
-                int rows = (Integer) rowsSpinner.getValue();
-                String termType = (String) termTypeCombo.getSelectedItem();
-
-                // X11 forwarding settings
-                boolean enableX11 = x11ForwardingCheckbox.isSelected();
-                String x11Display = x11DisplayField.getText().trim();
-                String x11Host = null;
-                int x11DisplayNum = 0;
-
-                if (enableX11 && !x11Display.isEmpty()) {
-                    // Parse display string (format: [host]:display[.screen])
-                    int colonIdx = x11Display.lastIndexOf(':');
-                    if (colonIdx >= 0) {
-                        x11Host = colonIdx > 0 ? x11Display.substring(0, colonIdx) : "localhost";
-                        try {
-                            String dispNum = x11Display.substring(colonIdx + 1);
-                            int dotIdx = dispNum.indexOf('.');
-                            if (dotIdx > 0) {
-                                dispNum = dispNum.substring(0, dotIdx);
-                            }
-                            x11DisplayNum = Integer.parseInt(dispNum);
-                        } catch (NumberFormatException ex) {
-                            x11DisplayNum = 0;
-                        }
-                    }
-                }
-
-                TerminalPanel terminal = new TerminalPanel(cols, rows);
-
-                // Open shell with X11 forwarding if enabled
-                final String fx11Host = x11Host;
-                final int fx11DisplayNum = x11DisplayNum;
-                var shell = conn.openShell(termType, cols, rows, enableX11, fx11Host, fx11DisplayNum);
-
-                // Connect streams
-                terminal.setOutputStream(shell.getInvertedIn());
-
-                // Read from shell in background
-                final SSHConnection finalConn = conn;
-                final TerminalPanel finalTerminal = terminal;
-                Thread reader = new Thread(() -> {
-                    byte[] buf = new byte[8192];
-                    try {
-                        InputStream in = shell.getInvertedOut();
-                        int n;
-                        while ((n = in.read(buf)) >= 0) {
-                            final byte[] data = buf.clone();
-                            final int len = n;
-                            SwingUtilities.invokeLater(() -> finalTerminal.write(data, 0, len));
-                        }
-                        // Stream ended normally - connection closed
-                        SwingUtilities.invokeLater(() -> {
-                            finalTerminal.displayMessage("*** Connection closed by remote host ***", 9); // Bright red
-                        });
-                    } catch (IOException e) {
-                        // Connection error
-                        final String errorMsg = e.getMessage();
-                        SwingUtilities.invokeLater(() -> {
-                            finalTerminal.displayMessage("*** Connection lost: " + (errorMsg != null ? errorMsg : "Unknown error") + " ***", 9);
-                        });
-                    }
-                });
-                reader.setDaemon(true);
-                reader.start();
+                TerminalPanel terminal = MainFrame.openTerminal(conn, config);
 
                 // Success - update UI on EDT
                 final SSHConnection successConn = conn;
@@ -676,7 +708,6 @@ public class ConnectDialog extends JDialog {
                 });
             }
         });
-        connectThread.start();
     }
 
     /**
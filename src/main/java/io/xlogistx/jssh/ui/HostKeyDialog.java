@@ -0,0 +1,39 @@
+package io.xlogistx.jssh.ui;
+
+import io.xlogistx.jssh.ssh.SSHConnection;
+
+import javax.swing.*;
+import java.awt.*;
+import java.security.PublicKey;
+
+/**
+ * Asks the user whether to trust a server key that is new, or that differs from the one
+ * in known_hosts. Called on the EDT by {@link SSHConnection}.
+ */
+public class HostKeyDialog implements SSHConnection.HostKeyVerifier {
+    
+    private final Component parent;
+    
+    /**
+     * @param parent window the prompt is centred on
+     */
+    public HostKeyDialog(Component parent) {
+        this.parent = parent;
+    }
+    
+    @Override
+    public boolean verify(String host, int port, String keyType, String fingerprint, PublicKey key,
+                          boolean changed) {
+        int result = JOptionPane.showConfirmDialog(parent,
+            (changed ? "WARNING: the host key for " + host + " has CHANGED!\n" +
+                "Someone could be intercepting the connection.\n\n" :
+                "Host key for " + host + ":\n\n") +
+            "Type: " + keyType + "\n" +
+            "Fingerprint: " + fingerprint + "\n\n" +
+            (changed ? "Connect anyway, this once?" : "Accept this key?"),
+            "Host Key Verification",
+            JOptionPane.YES_NO_OPTION,
+            JOptionPane.WARNING_MESSAGE);
+        return result == JOptionPane.YES_OPTION;
+    }
+}
@@ -1,7 +1,12 @@
 package io.xlogistx.jssh.ui;
 
+import io.xlogistx.jssh.config.ConnectionConfig;
+import io.xlogistx.jssh.config.ConnectionManager;
 import io.xlogistx.jssh.sftp.SFTPPanel;
+import io.xlogistx.jssh.ssh.ConnectionLauncher;
 import io.xlogistx.jssh.ssh.SSHConnection;
+import io.xlogistx.jssh.ssh.SessionRegistry;
+import io.xlogistx.jssh.terminal.EmulatorThread;
 import io.xlogistx.jssh.terminal.TerminalPanel;
 
 import javax.swing.*;
@@ -10,6 +15,9 @@ import java.awt.event.*;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Main application frame for JSSH
@@ -19,6 +27,7 @@ public class MainFrame extends JFrame {
     private JTabbedPane tabbedPane;
     private List<SessionTab> sessions = new ArrayList<>();
     private JLabel statusLabel;
+    private final HostKeyDialog hostKeyDialog = new HostKeyDialog(this);
     
     public MainFrame() {
         super("JSSH - Java SSH Client");
@@ -97,6 +106,10 @@ public class MainFrame extends JFrame {
         JMenuItem quickConnectItem = new JMenuItem("Quick Connect...", KeyEvent.VK_Q);
         quickConnectItem.addActionListener(e -> showQuickConnectDialog());
         fileMenu.add(quickConnectItem);
+
+        JMenuItem groupItem = new JMenuItem("Connect Group...", KeyEvent.VK_G);
+        groupItem.addActionListener(e -> showConnectGroupDialog());
+        fileMenu.add(groupItem);
         
         fileMenu.addSeparator();
         
@@ -176,6 +189,169 @@ public class MainFrame extends JFrame {
         setJMenuBar(menuBar);
     }
     
+    /**
+     * Log in to the profiles marked to be kept warm, so their tabs open without waiting
+     */
+    public void warmUpSessions() {
+        for (ConnectionConfig config : ConnectionManager.getInstance().getAllConnections()) {
+            if (config.isKeepWarm()) {
+                ConnectionLauncher.getInstance().keepWarm(config, hostKeyDialog);
+            }
+        }
+    }
+    
+    private void showConnectGroupDialog() {
+        Set<String> groups = new TreeSet<>();
+        for (ConnectionConfig config : ConnectionManager.getInstance().getAllConnections()) {
+            if (config.getGroup() != null && !config.getGroup().trim().isEmpty()) {
+                groups.add(config.getGroup().trim());
+            }
+        }
+        if (groups.isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                "No connect groups yet; set a group on saved connections first",
+                "Connect Group",
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        Object group = JOptionPane.showInputDialog(this,
+            "Open every connection in group:",
+            "Connect Group",
+            JOptionPane.PLAIN_MESSAGE,
+            null,
+            groups.toArray(),
+            groups.iterator().next());
+        if (group != null) {
+            connectGroup((String) group);
+        }
+    }
+    
+    /**
+     * Open a tab for every saved connection in a group, connecting several at once.
+     * Passwords and key passphrases are asked for first, so the connections don't wait on
+     * each other.
+     */
+    public void connectGroup(String group) {
+        List<ConnectionConfig> configs = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        List<String> passphrases = new ArrayList<>();
+        for (ConnectionConfig config : ConnectionManager.getInstance().getAllConnections()) {
+            if (!group.equals(config.getGroup() != null ? config.getGroup().trim() : "")) {
+                continue;
+            }
+            String password = null;
+            String passphrase = null;
+            if (!SessionRegistry.getInstance().contains(config.getUsername(), config.getHost(), config.getPort())) {
+                if (!config.isUseKeyAuth()) {
+                    password = showPasswordDialog("Password for " + config.getUsername() + "@" + config.getHost());
+                    if (password == null) continue;
+                } else if (SSHConnection.isKeyEncrypted(config.getKeyFile())) {
+                    passphrase = showPasswordDialog("Passphrase for " + config.getKeyFile() +
+                        " (" + config.getUsername() + "@" + config.getHost() + ")");
+                    if (passphrase == null) continue;
+                }
+            }
+            configs.add(config);
+            passwords.add(password);
+            passphrases.add(passphrase);
+        }
+        if (configs.isEmpty()) return;
+        
+        AtomicInteger pending = new AtomicInteger(configs.size());
+        List<String> failures = new ArrayList<>();
+        statusLabel.setText(" Connecting " + configs.size() + " sessions in " + group + "...");
+        
+        for (int i = 0; i < configs.size(); i++) {
+            ConnectionConfig config = configs.get(i);
+            String password = passwords.get(i);
+            String passphrase = passphrases.get(i);
+            ConnectionLauncher.getInstance().getExecutor().execute(() -> {
+                SSHConnection conn = null;
+                String error = null;
+                TerminalPanel terminal = null;
+                try {
+                    conn = ConnectionLauncher.open(config, password, passphrase, hostKeyDialog);
+                    terminal = openTerminal(conn, config);
+                } catch (Exception e) {
+                    error = e.getMessage();
+                    if (conn != null) {
+                        conn.close();
+                    }
+                }
+                
+                final SSHConnection successConn = conn;
+                final TerminalPanel successTerminal = terminal;
+                final String failure = error;
+                SwingUtilities.invokeLater(() -> {
+                    if (failure == null) {
+                        SessionTab tab = new SessionTab(successConn, successTerminal);
+                        tab.setTitle(config.getUsername() + "@" + config.getHost());
+                        addSession(tab);
+                    } else {
+                        failures.add(config.getName() + ": " + failure);
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        statusLabel.setText(" Connected " + (configs.size() - failures.size()) +
+                            " of " + configs.size() + " sessions in " + group);
+                        if (!failures.isEmpty()) {
+                            JOptionPane.showMessageDialog(MainFrame.this,
+                                "Connection failed:\n" + String.join("\n", failures),
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                });
+            });
+        }
+    }
+    
+    /**
+     * Open a shell on a logged-in connection with a profile's terminal and X11 settings,
+     * and start its emulator. Blocks; the terminal goes into a SessionTab on the EDT.
+     */
+    static TerminalPanel openTerminal(SSHConnection conn, ConnectionConfig config) throws IOException {
+        int cols = config.getColumns();
+        int rows = config.getRows();
+        
+        // X11 forwarding settings
+        boolean enableX11 = config.isX11Forwarding();
+        String x11Display = config.getX11Display() != null ? config.getX11Display().trim() : "";
+        String x11Host = null;
+        int x11DisplayNum = 0;
+        
+        if (enableX11 && !x11Display.isEmpty()) {
+            // Parse display string (format: [host]:display[.screen])
+            int colonIdx = x11Display.lastIndexOf(':');
+            if (colonIdx >= 0) {
+                x11Host = colonIdx > 0 ? x11Display.substring(0, colonIdx) : "localhost";
+                try {
+                    String dispNum = x11Display.substring(colonIdx + 1);
+                    int dotIdx = dispNum.indexOf('.');
+                    if (dotIdx > 0) {
+                        dispNum = dispNum.substring(0, dotIdx);
+                    }
+                    x11DisplayNum = Integer.parseInt(dispNum);
+                } catch (NumberFormatException ex) {
+                    x11DisplayNum = 0;
+                }
+            }
+        }
+        
+        TerminalPanel terminal = new TerminalPanel(cols, rows, config.getScrollbackLines());
+        
+        // Open shell with X11 forwarding if enabled
+        var shell = conn.openShell(config.getTerminalType(), cols, rows, enableX11, x11Host, x11DisplayNum);
+        
+        // Connect streams
+        terminal.setOutputStream(shell.getInvertedIn());
+        
+        // Read from shell and run the emulation in background
+        EmulatorThread emulator = new EmulatorThread(shell.getInvertedOut(), terminal, null);
+        emulator.start();
+        return terminal;
+    }
+    
     public void showConnectDialog() {
         ConnectDialog dialog = new ConnectDialog(this);
         dialog.setVisible(true);
@@ -224,8 +400,12 @@ public class MainFrame extends JFrame {
             user = System.getProperty("user.name");
         }
         
-        String password = showPasswordDialog("Password for " + user + "@" + host);
-        if (password == null) return;
+        // No password needed if another tab is logged in to this account
+        String password = null;
+        if (!SessionRegistry.getInstance().contains(user, host, port)) {
+            password = showPasswordDialog("Password for " + user + "@" + host);
+            if (password == null) return;
+        }
         
         connectWithPassword(host, port, user, password);
     }
@@ -253,27 +433,24 @@ public class MainFrame extends JFrame {
                 SSHConnection conn = new SSHConnection();
                 
                 // Host key verification
-                conn.setHostKeyVerifier((h, p, keyType, fingerprint, key) -> {
-                    int result = JOptionPane.showConfirmDialog(MainFrame.this,
-                        "Host key for " + h + ":\n\n" +
-                        "Type: " + keyType + "\n" +
-                        "Fingerprint: " + fingerprint + "\n\n" +
-                        "Accept this key?",
-                        "Host Key Verification",
-                        JOptionPane.YES_NO_OPTION,
-                        JOptionPane.WARNING_MESSAGE);
-                    return result == JOptionPane.YES_OPTION;
-                });
+                conn.setHostKeyVerifier(hostKeyDialog);
                 
                 try {
-                    statusLabel.setText(" Connecting to " + host + "...");
-                    conn.connect(host, port, 30000);
-                    
-                    statusLabel.setText(" Authenticating...");
-                    if (!conn.authenticatePassword(username, password, 30000)) {
-                        error = "Authentication failed";
-                        conn.close();
+                    if (conn.connectShared(username, host, port)) {
+                        statusLabel.setText(" Sharing session to " + host + "...");
+                    } else if (password == null) {
+                        error = "Shared session was closed; connect again";
                         return null;
+                    } else {
+                        statusLabel.setText(" Connecting to " + host + "...");
+                        conn.connect(host, port, 30000);
+                        
+                        statusLabel.setText(" Authenticating...");
+                        if (!conn.authenticatePassword(username, password, 30000)) {
+                            error = "Authentication failed";
+                            conn.close();
+                            return null;
+                        }
                     }
                     
                     // Create terminal
@@ -285,34 +462,10 @@ public class MainFrame extends JFrame {
                     // Connect streams
                     terminal.setOutputStream(shell.getInvertedIn());
                     
-                    // Read from shell in background
-                    final TerminalPanel finalTerminal = terminal;
-                    Thread reader = new Thread(() -> {
-                        byte[] buf = new byte[8192];
-                        try {
-                            InputStream in = shell.getInvertedOut();
-                            int n;
-                            while ((n = in.read(buf)) >= 0) {
-                                final byte[] data = buf.clone();
-                                final int len = n;
-                                SwingUtilities.invokeLater(() -> finalTerminal.write(data, 0, len));
-                            }
-                            // Stream ended normally - connection closed
-                            SwingUtilities.invokeLater(() -> {
-                                finalTerminal.displayMessage("*** Connection closed by remote host ***", 9);
-                                statusLabel.setText(" Disconnected");
-                            });
-                        } catch (IOException e) {
-                            // Connection error
-                            final String errorMsg = e.getMessage();
-                            SwingUtilities.invokeLater(() -> {
-                                finalTerminal.displayMessage("*** Connection lost: " + (errorMsg != null ? errorMsg : "Unknown error") + " ***", 9);
-                                statusLabel.setText(" Disconnected");
-                            });
-                        }
-                    });
-                    reader.setDaemon(true);
-                    reader.start();
+                    // Read from shell and run the emulation in background
+                    EmulatorThread emulator = new EmulatorThread(shell.getInvertedOut(), terminal,
+                        error -> statusLabel.setText(" Disconnected"));
+                    emulator.start();
                     
                     SessionTab tab = new SessionTab(conn, terminal);
                     tab.setTitle(username + "@" + host);
@@ -546,6 +699,8 @@ public class MainFrame extends JFrame {
         for (SessionTab tab : new ArrayList<>(sessions)) {
             tab.close();
         }
+        ConnectionLauncher.getInstance().shutdown();
+        SessionRegistry.getInstance().shutdown();
         dispose();
         System.exit(0);
     }
@@ -599,6 +754,7 @@ public class MainFrame extends JFrame {
         
         public void close() {
             connection.close();
+            terminal.dispose();
         }
     }
 
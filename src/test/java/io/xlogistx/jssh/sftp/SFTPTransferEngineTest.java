@@ -0,0 +1,256 @@
+package io.xlogistx.jssh.sftp;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Interrupting and resuming transfers against an in-process SFTP server
+ */
+public class SFTPTransferEngineTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private Path home;
+    private Path remoteRoot;
+    private String savedHome;
+    private SshServer server;
+    private SshClient client;
+    private ClientSession session;
+    private SftpClient sftp;
+    private SFTPTransferEngine engine;
+
+    /**
+     * Counts reported bytes and cancels once enough have gone through
+     */
+    private static class Listener implements SFTPTransferEngine.TransferListener {
+        private final long cancelAt;
+        long first = -1;
+        long total;
+
+        Listener(long cancelAt) {
+            this.cancelAt = cancelAt;
+        }
+
+        @Override
+        public void bytesTransferred(long count) {
+            if (first < 0) first = count;
+            total += count;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return total >= cancelAt;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Checkpoints go under the user's home
+        home = Files.createDirectories(dir.resolve("home"));
+        savedHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        remoteRoot = Files.createDirectories(dir.resolve("remote"));
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, serverSession) -> true);
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(remoteRoot));
+        server.start();
+
+        client = SshClient.setUpDefaultClient();
+        client.setServerKeyVerifier((clientSession, address, key) -> true);
+        client.start();
+        session = client.connect("test", "127.0.0.1", server.getPort()).verify(10000).getSession();
+        session.addPasswordIdentity("test");
+        session.auth().verify(10000);
+        sftp = SftpClientFactory.instance().createSftpClient(session);
+
+        engine = new SFTPTransferEngine(sftp);
+        engine.setResumable(true);
+        engine.setResumeThreshold(MB);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        System.setProperty("user.home", savedHome);
+        if (sftp != null) sftp.close();
+        if (session != null) session.close();
+        if (client != null) client.stop();
+        if (server != null) server.stop(true);
+    }
+
+    private static byte[] content(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private List<Path> checkpoints() throws IOException {
+        Path transfers = home.resolve(".jssh").resolve("transfers");
+        if (!Files.exists(transfers)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(transfers)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private long checkpointOffset() throws IOException {
+        List<Path> files = checkpoints();
+        assertEquals(1, files.size(), files.toString());
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(files.get(0))) {
+            props.load(reader);
+        }
+        return Long.parseLong(props.getProperty("offset"));
+    }
+
+    /**
+     * Start a download, cancel it part way and return the checkpoint offset
+     */
+    private long interruptedDownload(File local) throws IOException {
+        Listener listener = new Listener(3 * MB);
+        assertThrows(InterruptedIOException.class, () -> engine.download("/big.bin", local, listener));
+        long offset = checkpointOffset();
+        assertTrue(offset > 0 && offset <= listener.total, "offset " + offset + " of " + listener.total);
+        assertTrue(local.length() >= offset);
+        return offset;
+    }
+
+    @Test
+    public void downloadResumesFromCheckpoint() throws Exception {
+        byte[] data = content(8 * MB, 1);
+        Files.write(remoteRoot.resolve("big.bin"), data);
+        File local = dir.resolve("big.bin").toFile();
+
+        long offset = interruptedDownload(local);
+
+        Listener listener = new Listener(Long.MAX_VALUE);
+        assertEquals(data.length, engine.download("/big.bin", local, listener));
+        assertEquals(offset, listener.first);
+        assertEquals(data.length, listener.total);
+        assertArrayEquals(data, Files.readAllBytes(local.toPath()));
+        assertEquals(0, checkpoints().size());
+    }
+
+    /**
+     * A local file that differs just before the offset is downloaded again in full
+     */
+    @Test
+    public void downloadRestartsWhenTailDiffers() throws Exception {
+        byte[] data = content(8 * MB, 2);
+        Files.write(remoteRoot.resolve("big.bin"), data);
+        File local = dir.resolve("big.bin").toFile();
+
+        long offset = interruptedDownload(local);
+        try (RandomAccessFile file = new RandomAccessFile(local, "rw")) {
+            long position = offset - SFTPTransferEngine.VERIFY_BLOCK + 10;
+            file.seek(position);
+            file.write(~data[(int) position]);
+        }
+
+        Listener listener = new Listener(Long.MAX_VALUE);
+        engine.download("/big.bin", local, listener);
+        assertTrue(listener.first < offset, "resumed from " + listener.first);
+        assertEquals(data.length, listener.total);
+        assertArrayEquals(data, Files.readAllBytes(local.toPath()));
+    }
+
+    @Test
+    public void uploadResumesFromCheckpoint() throws Exception {
+        byte[] data = content(8 * MB, 3);
+        File local = dir.resolve("up.bin").toFile();
+        Files.write(local.toPath(), data);
+
+        assertThrows(InterruptedIOException.class, () -> engine.upload(local, "/up.bin", new Listener(3 * MB)));
+        long offset = checkpointOffset();
+        assertTrue(offset > 0);
+
+        Listener listener = new Listener(Long.MAX_VALUE);
+        assertEquals(data.length, engine.upload(local, "/up.bin", listener));
+        assertEquals(offset, listener.first);
+        assertArrayEquals(data, Files.readAllBytes(remoteRoot.resolve("up.bin")));
+        assertEquals(0, checkpoints().size());
+    }
+
+    /**
+     * A source changed since the checkpoint is transferred again in full
+     */
+    @Test
+    public void uploadRestartsWhenSourceChanged() throws Exception {
+        File local = dir.resolve("up.bin").toFile();
+        Files.write(local.toPath(), content(8 * MB, 4));
+        long modified = local.lastModified();
+
+        assertThrows(InterruptedIOException.class, () -> engine.upload(local, "/up.bin", new Listener(3 * MB)));
+        long offset = checkpointOffset();
+
+        byte[] changed = content(8 * MB, 5);
+        Files.write(local.toPath(), changed);
+        assertTrue(local.setLastModified(modified + 5000));
+
+        Listener listener = new Listener(Long.MAX_VALUE);
+        engine.upload(local, "/up.bin", listener);
+        assertTrue(listener.first < offset, "resumed from " + listener.first);
+        assertEquals(changed.length, listener.total);
+        assertArrayEquals(changed, Files.readAllBytes(remoteRoot.resolve("up.bin")));
+    }
+
+    /**
+     * Files below the threshold leave no checkpoint behind when interrupted
+     */
+    @Test
+    public void smallFilesKeepNoCheckpoint() throws Exception {
+        engine.setResumeThreshold(SFTPTransferEngine.RESUME_THRESHOLD);
+        byte[] data = content(4 * MB, 6);
+        Files.write(remoteRoot.resolve("small.bin"), data);
+        File local = dir.resolve("small.bin").toFile();
+        Files.write(dir.resolve("small-up.bin"), data);
+
+        assertThrows(InterruptedIOException.class,
+                () -> engine.download("/small.bin", local, new Listener(MB)));
+        assertThrows(InterruptedIOException.class,
+                () -> engine.upload(dir.resolve("small-up.bin").toFile(), "/small-up.bin", new Listener(MB)));
+        assertEquals(0, checkpoints().size());
+
+        Listener listener = new Listener(Long.MAX_VALUE);
+        engine.download("/small.bin", local, listener);
+        assertTrue(listener.first < MB, "resumed from " + listener.first);
+        assertArrayEquals(data, Files.readAllBytes(local.toPath()));
+    }
+}
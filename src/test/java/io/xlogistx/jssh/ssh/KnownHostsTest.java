@@ -0,0 +1,238 @@
+package io.xlogistx.jssh.ssh;
+
+import org.apache.sshd.certificate.OpenSshCertificateBuilder;
+import org.apache.sshd.common.config.keys.OpenSshCertificate;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+import static io.xlogistx.jssh.ssh.KnownHosts.VerifyResult.CHANGED;
+import static io.xlogistx.jssh.ssh.KnownHosts.VerifyResult.MATCH;
+import static io.xlogistx.jssh.ssh.KnownHosts.VerifyResult.REVOKED;
+import static io.xlogistx.jssh.ssh.KnownHosts.VerifyResult.UNKNOWN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class KnownHostsTest {
+
+    private static final String EC = "ecdsa-sha2-nistp256";
+
+    private static KeyPair hostKey;
+    private static KeyPair otherKey;
+    private static KeyPair caKey;
+    private static KeyPair otherCaKey;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        hostKey = generator.generateKeyPair();
+        otherKey = generator.generateKeyPair();
+        caKey = generator.generateKeyPair();
+        otherCaKey = generator.generateKeyPair();
+    }
+
+    private static String key(KeyPair pair) {
+        return KnownHosts.encodeKey(pair.getPublic());
+    }
+
+    private static String hashed(String name) throws Exception {
+        byte[] salt = new byte[20];
+        new SecureRandom().nextBytes(salt);
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(salt, "HmacSHA1"));
+        byte[] hash = mac.doFinal(name.getBytes(StandardCharsets.UTF_8));
+        return "|1|" + Base64.getEncoder().encodeToString(salt) + "|" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    private KnownHosts load(String... lines) throws Exception {
+        Path file = dir.resolve("known_hosts");
+        Files.write(file, List.of(lines));
+        return new KnownHosts(file.toString());
+    }
+
+    private static OpenSshCertificate certificate(KeyPair ca, String... principals) throws Exception {
+        return OpenSshCertificateBuilder.hostCertificate()
+                .publicKey(hostKey.getPublic())
+                .principals(List.of(principals))
+                .serial(1)
+                .id("test")
+                .sign(ca, EC);
+    }
+
+    @Test
+    public void plainEntries() throws Exception {
+        KnownHosts knownHosts = load(
+                "# comment",
+                "",
+                "example.com,192.0.2.1 " + EC + " " + key(hostKey),
+                "[example.com]:2222 " + EC + " " + key(otherKey));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("EXAMPLE.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("192.0.2.1", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("example.com", 2222, EC, key(otherKey)));
+        assertEquals(2, knownHosts.size());
+    }
+
+    @Test
+    public void hashedEntries() throws Exception {
+        KnownHosts knownHosts = load(
+                hashed("example.com") + " " + EC + " " + key(hostKey),
+                hashed("[example.com]:2222") + " " + EC + " " + key(otherKey));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        // Looked up again through the cache
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("example.com", 2222, EC, key(otherKey)));
+        assertEquals(CHANGED, knownHosts.verify("example.com", 2222, EC, key(hostKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("example.com", 2200, EC, key(otherKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("example.org", 22, EC, key(hostKey)));
+    }
+
+    @Test
+    public void wildcardsAndNegation() throws Exception {
+        KnownHosts knownHosts = load(
+                "*.example.com,!bad.example.com " + EC + " " + key(hostKey),
+                "web?.example.org " + EC + " " + key(hostKey),
+                "[*.example.net]:2222 " + EC + " " + key(hostKey));
+        assertEquals(MATCH, knownHosts.verify("a.example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("a.b.example.com", 22, EC, key(hostKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("bad.example.com", 22, EC, key(hostKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("web1.example.org", 22, EC, key(hostKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("web12.example.org", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("db.example.net", 2222, EC, key(hostKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("db.example.net", 22, EC, key(hostKey)));
+    }
+
+    @Test
+    public void multipleKeysForOneHost() throws Exception {
+        KnownHosts knownHosts = load(
+                "example.com " + EC + " " + key(hostKey),
+                "example.com " + EC + " " + key(otherKey),
+                "example.com ssh-ed25519 AAAAC3NzaC1lZDI1NTE5AAAAIOMqqnkVzrm0SdG6UOoqKLsabgH5C9okWi0dh2l9GKJl");
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(otherKey)));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, hostKey.getPublic()));
+        assertEquals(CHANGED, knownHosts.verify("example.com", 22, EC, key(caKey)));
+    }
+
+    @Test
+    public void changedVersusUnknown() throws Exception {
+        KnownHosts knownHosts = load("example.com " + EC + " " + key(hostKey));
+        assertEquals(CHANGED, knownHosts.verify("example.com", 22, otherKey.getPublic()));
+        // A key of another type than those listed is new, not changed
+        assertEquals(UNKNOWN, knownHosts.verify("example.com", 22, "ssh-ed25519",
+                "AAAAC3NzaC1lZDI1NTE5AAAAIOMqqnkVzrm0SdG6UOoqKLsabgH5C9okWi0dh2l9GKJl"));
+        assertEquals(UNKNOWN, knownHosts.verify("other.example.com", 22, hostKey.getPublic()));
+    }
+
+    @Test
+    public void revokedTakesPrecedence() throws Exception {
+        KnownHosts knownHosts = load(
+                "example.com " + EC + " " + key(hostKey),
+                "@revoked * " + EC + " " + key(hostKey),
+                "@cert-authority *.example.com " + EC + " " + key(caKey),
+                "@revoked *.example.com " + EC + " " + key(caKey));
+        assertEquals(REVOKED, knownHosts.verify("example.com", 22, hostKey.getPublic()));
+        assertEquals(REVOKED, knownHosts.verify("other.example.org", 22, EC, key(hostKey)));
+        assertEquals(REVOKED, knownHosts.verify("a.example.com", 22, certificate(caKey, "a.example.com")));
+    }
+
+    @Test
+    public void certAuthority() throws Exception {
+        KnownHosts knownHosts = load("@cert-authority *.example.com " + EC + " " + key(caKey));
+        assertEquals(MATCH, knownHosts.verify("a.example.com", 22, certificate(caKey, "a.example.com")));
+        // No principals means any host
+        assertEquals(MATCH, knownHosts.verify("b.example.com", 22, certificate(caKey)));
+        assertEquals(UNKNOWN, knownHosts.verify("b.example.com", 22, certificate(caKey, "a.example.com")));
+        assertEquals(UNKNOWN, knownHosts.verify("a.example.com", 22, certificate(otherCaKey, "a.example.com")));
+        // The CA is only trusted for the hosts it is listed for
+        assertEquals(UNKNOWN, knownHosts.verify("a.example.org", 22, certificate(caKey, "a.example.org")));
+        // The CA key itself is not a host key
+        assertEquals(UNKNOWN, knownHosts.verify("a.example.com", 22, caKey.getPublic()));
+    }
+
+    @Test
+    public void certificateFallsBackToItsKey() throws Exception {
+        KnownHosts knownHosts = load("a.example.com " + EC + " " + key(hostKey));
+        assertEquals(MATCH, knownHosts.verify("a.example.com", 22, certificate(otherCaKey, "a.example.com")));
+    }
+
+    @Test
+    public void reloadAfterAppend() throws Exception {
+        KnownHosts knownHosts = load("example.com " + EC + " " + key(hostKey));
+        Path file = dir.resolve("known_hosts");
+        Files.writeString(file, "example.org " + EC + " " + key(otherKey) + "\n", StandardOpenOption.APPEND);
+        knownHosts.reload();
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("example.org", 22, EC, key(otherKey)));
+        assertEquals(2, knownHosts.size());
+
+        // A last line still being written is picked up once complete
+        Files.writeString(file, "example.net " + EC, StandardOpenOption.APPEND);
+        knownHosts.reload();
+        Files.writeString(file, " " + key(hostKey) + "\n", StandardOpenOption.APPEND);
+        knownHosts.reload();
+        assertEquals(MATCH, knownHosts.verify("example.net", 22, EC, key(hostKey)));
+        assertEquals(3, knownHosts.size());
+    }
+
+    @Test
+    public void reloadAfterRewrite() throws Exception {
+        KnownHosts knownHosts = load("example.com " + EC + " " + key(hostKey));
+        Path file = dir.resolve("known_hosts");
+
+        // Rewritten in place and longer, so only the changed content gives it away
+        Files.write(file, List.of(
+                "example.com " + EC + " " + key(otherKey),
+                "example.org " + EC + " " + key(hostKey)));
+        knownHosts.reload();
+        assertEquals(CHANGED, knownHosts.verify("example.com", 22, EC, key(hostKey)));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, EC, key(otherKey)));
+        assertEquals(MATCH, knownHosts.verify("example.org", 22, EC, key(hostKey)));
+        assertEquals(2, knownHosts.size());
+
+        // Replaced by another file
+        Path replacement = dir.resolve("known_hosts.new");
+        Files.write(replacement, List.of("example.net " + EC + " " + key(hostKey)));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        knownHosts.reload();
+        assertEquals(UNKNOWN, knownHosts.verify("example.com", 22, EC, key(otherKey)));
+        assertEquals(MATCH, knownHosts.verify("example.net", 22, EC, key(hostKey)));
+        assertEquals(1, knownHosts.size());
+    }
+
+    @Test
+    public void addAndRemoveHost() throws Exception {
+        Path file = dir.resolve("known_hosts");
+        Files.writeString(file, "*.example.org " + EC + " " + key(otherKey));
+        KnownHosts knownHosts = new KnownHosts(file.toString());
+        knownHosts.addHost("example.com", 22, hostKey.getPublic());
+        knownHosts.addHost("example.com", 2222, EC, key(otherKey));
+        assertEquals(MATCH, knownHosts.verify("example.com", 22, hostKey.getPublic()));
+        assertEquals(MATCH, knownHosts.verify("example.com", 2222, otherKey.getPublic()));
+        assertEquals(MATCH, new KnownHosts(file.toString()).verify("example.com", 22, hostKey.getPublic()));
+
+        knownHosts.removeHost("example.com", 22);
+        assertEquals(UNKNOWN, knownHosts.verify("example.com", 22, hostKey.getPublic()));
+        assertEquals(MATCH, knownHosts.verify("example.com", 2222, otherKey.getPublic()));
+        // Patterns are left alone
+        assertEquals(MATCH, knownHosts.verify("a.example.org", 22, otherKey.getPublic()));
+        assertEquals(UNKNOWN, new KnownHosts(file.toString()).verify("example.com", 22, hostKey.getPublic()));
+    }
+}
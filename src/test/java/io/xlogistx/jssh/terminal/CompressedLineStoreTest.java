@@ -0,0 +1,135 @@
+package io.xlogistx.jssh.terminal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static io.xlogistx.jssh.terminal.CompressedLineStore.BLOCK_LINES;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedLineStoreTest {
+
+    private CompressedLineStore store;
+
+    @AfterEach
+    public void tearDown() {
+        if (store != null) store.close();
+    }
+
+    /**
+     * Line n, of varying length and with content that doesn't compress
+     */
+    private static long[] line(int n) {
+        Random random = new Random(n);
+        long[] line = new long[n % 80 + 1];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = random.nextLong();
+        }
+        return line;
+    }
+
+    private void addLines(int from, int to) {
+        for (int n = from; n < to; n++) {
+            store.add(line(n));
+        }
+    }
+
+    private void assertLines(int first) {
+        for (int i = 0; i < store.size(); i++) {
+            assertArrayEquals(line(first + i), store.get(i), "line " + i);
+        }
+    }
+
+    @Test
+    public void readsBackWrittenBlocks() {
+        store = new CompressedLineStore(100 * BLOCK_LINES);
+        addLines(0, 10 * BLOCK_LINES + 17);
+        assertEquals(10 * BLOCK_LINES + 17, store.size());
+        assertLines(0);
+    }
+
+    @Test
+    public void evictsOldestAtCapacity() {
+        store = new CompressedLineStore(1000);
+        addLines(0, 3000);
+        assertEquals(1000, store.size());
+        assertLines(2000);
+    }
+
+    @Test
+    public void capacityBelowOneBlock() {
+        store = new CompressedLineStore(10);
+        addLines(0, 25);
+        assertEquals(10, store.size());
+        assertLines(15);
+        assertEquals(0, store.fileLength());
+    }
+
+    @Test
+    public void setCapacityShrinksAndGrows() {
+        store = new CompressedLineStore(5000);
+        addLines(0, 4000);
+
+        store.setCapacity(600);
+        assertEquals(600, store.size());
+        assertLines(3400);
+
+        store.setCapacity(5000);
+        assertEquals(600, store.size());
+        addLines(4000, 6000);
+        assertEquals(2600, store.size());
+        assertLines(3400);
+    }
+
+    /**
+     * Reading blocks in turn, more of them than are cached, inflates each again from the file
+     */
+    @Test
+    public void blockCacheEviction() {
+        store = new CompressedLineStore(100 * BLOCK_LINES);
+        addLines(0, 12 * BLOCK_LINES);
+        for (int pass = 0; pass < 3; pass++) {
+            for (int block = 0; block < 12; block++) {
+                int index = block * BLOCK_LINES + (pass * 37 + block) % BLOCK_LINES;
+                assertArrayEquals(line(index), store.get(index), "line " + index);
+            }
+        }
+        // Backwards, as when scrolling up
+        for (int index = store.size() - 1; index >= 0; index -= 101) {
+            assertArrayEquals(line(index), store.get(index), "line " + index);
+        }
+    }
+
+    /**
+     * Dropped blocks are cut from the start of the file once they are most of it
+     */
+    @Test
+    public void compactsDroppedBlocks() {
+        store = new CompressedLineStore(2 * BLOCK_LINES);
+        int lines = 300 * BLOCK_LINES;
+        long written = 0;
+        for (int n = 0; n < lines; n++) {
+            long[] line = line(n);
+            written += line.length * 8L;
+            store.add(line);
+        }
+        assertTrue(written > 16L * 1024 * 1024, "wrote " + written);
+        assertTrue(store.fileLength() < 6L * 1024 * 1024, "file is " + store.fileLength());
+        assertEquals(2 * BLOCK_LINES, store.size());
+        assertLines(lines - 2 * BLOCK_LINES);
+    }
+
+    @Test
+    public void clearEmptiesTheFile() {
+        store = new CompressedLineStore(100 * BLOCK_LINES);
+        addLines(0, 5 * BLOCK_LINES);
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.fileLength());
+        addLines(1000, 1000 + 3 * BLOCK_LINES);
+        assertLines(1000);
+    }
+}
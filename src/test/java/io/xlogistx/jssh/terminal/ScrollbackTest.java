@@ -0,0 +1,110 @@
+package io.xlogistx.jssh.terminal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static io.xlogistx.jssh.terminal.Scrollback.HOT_LINES;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ScrollbackTest {
+
+    private Scrollback scrollback;
+
+    @AfterEach
+    public void tearDown() {
+        if (scrollback != null) scrollback.close();
+    }
+
+    private static long[] line(int n) {
+        long[] line = new long[n % 7 + 1];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = n * 31L + i;
+        }
+        return line;
+    }
+
+    private void addLines(int from, int to) {
+        long[] padded = new long[16];
+        for (int n = from; n < to; n++) {
+            long[] line = line(n);
+            // Only the given length is kept
+            System.arraycopy(line, 0, padded, 0, line.length);
+            scrollback.add(padded, line.length);
+        }
+    }
+
+    private void assertLines(int first) {
+        for (int i = 0; i < scrollback.size(); i++) {
+            assertArrayEquals(line(first + i), scrollback.get(i), "line " + i);
+        }
+    }
+
+    @Test
+    public void evictsOldestAtCapacity() {
+        scrollback = new Scrollback(100);
+        addLines(0, 250);
+        assertEquals(100, scrollback.size());
+        assertLines(150);
+        assertThrows(IndexOutOfBoundsException.class, () -> scrollback.get(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> scrollback.get(-1));
+    }
+
+    @Test
+    public void zeroCapacityKeepsNothing() {
+        scrollback = new Scrollback(0);
+        addLines(0, 10);
+        assertEquals(0, scrollback.size());
+    }
+
+    /**
+     * Lines past the hot tier move to the compressed one and read back in order
+     */
+    @Test
+    public void hotLinesMigrateToColdTier() {
+        scrollback = new Scrollback(HOT_LINES + 2000);
+        addLines(0, HOT_LINES + 1500);
+        assertEquals(HOT_LINES + 1500, scrollback.size());
+        assertLines(0);
+
+        addLines(HOT_LINES + 1500, HOT_LINES + 5000);
+        assertEquals(HOT_LINES + 2000, scrollback.size());
+        assertLines(3000);
+    }
+
+    @Test
+    public void setCapacityShrinksAndGrows() {
+        scrollback = new Scrollback(HOT_LINES + 2000);
+        addLines(0, HOT_LINES + 2000);
+
+        // Shrinking the cold tier drops its oldest lines
+        scrollback.setCapacity(HOT_LINES + 500);
+        assertEquals(HOT_LINES + 500, scrollback.size());
+        assertLines(1500);
+
+        // Shrinking into the hot tier drops the cold one
+        scrollback.setCapacity(300);
+        assertEquals(300, scrollback.size());
+        assertLines(HOT_LINES + 1700);
+
+        scrollback.setCapacity(HOT_LINES + 1000);
+        assertEquals(300, scrollback.size());
+        addLines(HOT_LINES + 2000, 2 * HOT_LINES + 2000);
+        assertEquals(HOT_LINES + 300, scrollback.size());
+        assertLines(HOT_LINES + 1700);
+        addLines(2 * HOT_LINES + 2000, 2 * HOT_LINES + 3000);
+        assertEquals(HOT_LINES + 1000, scrollback.size());
+        assertLines(HOT_LINES + 2000);
+    }
+
+    @Test
+    public void clear() {
+        scrollback = new Scrollback(HOT_LINES + 1000);
+        addLines(0, HOT_LINES + 500);
+        scrollback.clear();
+        assertEquals(0, scrollback.size());
+        addLines(7, 20);
+        assertLines(7);
+    }
+}
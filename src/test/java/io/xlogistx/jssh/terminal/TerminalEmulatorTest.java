@@ -0,0 +1,31 @@
+package io.xlogistx.jssh.terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TerminalEmulatorTest {
+
+    private static void write(TerminalEmulator emulator, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        emulator.write(data, 0, data.length);
+    }
+
+    /**
+     * A reversed or one-line scroll region is ignored, as in xterm, and scrolling still works
+     */
+    @Test
+    public void degenerateScrollRegionIsIgnored() {
+        TerminalEmulator emulator = new TerminalEmulator(80, 24);
+        write(emulator, "\u001b[20;5r\u001b[24;1H\n\u001bM\u001b[7;7r\n\u001bM");
+        write(emulator, "\u001b[24;1Hlast\n");
+
+        // The whole screen still scrolls: "last" moved up from the bottom row
+        String[] lines = emulator.getScreenText().split("\n", -1);
+        assertTrue(lines[22].startsWith("last"), lines[22]);
+        assertEquals(23, emulator.getCursorY());
+    }
+}
@@ -0,0 +1,77 @@
+package io.xlogistx.jssh.terminal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TerminalPanelTest {
+
+    private TerminalPanel cached;
+    private TerminalPanel fresh;
+
+    @AfterEach
+    public void tearDown() {
+        if (cached != null) cached.dispose();
+        if (fresh != null) fresh.dispose();
+    }
+
+    private static void write(TerminalPanel panel, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        panel.write(data, 0, data.length);
+    }
+
+    private static BufferedImage paint(TerminalPanel panel) {
+        BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setFont(panel.getFont());
+            panel.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static TerminalPanel newPanel() {
+        TerminalPanel panel = new TerminalPanel(80, 24);
+        panel.setBounds(0, 0, 80 * panel.getCharWidth(), 24 * panel.getCharHeight());
+        return panel;
+    }
+
+    /**
+     * Output arriving while scrolled back repaints the rows it lands on in the view,
+     * which are not the rows it was written to on the screen
+     */
+    @Test
+    public void scrolledBackFrameMatchesFullRepaint() {
+        StringBuilder history = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            history.append("line ").append(i).append("\r\n");
+        }
+
+        cached = newPanel();
+        write(cached, history.toString());
+        paint(cached);
+        cached.scrollUp(5);
+        paint(cached);
+        write(cached, "\u001b[12;1Hchanged while scrolled back");
+        BufferedImage incremental = paint(cached);
+
+        fresh = newPanel();
+        write(fresh, history.toString());
+        fresh.scrollUp(5);
+        write(fresh, "\u001b[12;1Hchanged while scrolled back");
+        BufferedImage full = paint(fresh);
+
+        for (int y = 0; y < full.getHeight(); y++) {
+            for (int x = 0; x < full.getWidth(); x++) {
+                assertEquals(full.getRGB(x, y), incremental.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package io.xlogistx.jssh.terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * VTParser against the StringBuilder escape handling it replaced. Input the old code
+ * handled must dispatch the same; where it misparsed, the new dispatch is checked directly.
+ */
+public class VTParserTest {
+
+    /**
+     * Records dispatches as strings. Trailing omitted parameters are dropped, as both
+     * parsers treat them as 0, and so is the ESC \ of a 7-bit ST, which the old code
+     * folded into the OSC it ended.
+     */
+    private static class Recorder implements VTParser.Handler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void print(int codePoint) {
+            events.add("print " + new String(Character.toChars(codePoint)));
+        }
+
+        @Override
+        public void execute(int control) {
+            events.add("execute " + Integer.toHexString(control));
+        }
+
+        @Override
+        public void escDispatch(int intermediate, int finalChar) {
+            if (intermediate == 0 && finalChar == '\\') return;
+            events.add("esc " + (intermediate != 0 ? (char) intermediate : "") + (char) finalChar);
+        }
+
+        @Override
+        public void csiDispatch(int privateMarker, int intermediate, int finalChar, int[] params, int paramCount) {
+            while (paramCount > 1 && params[paramCount - 1] == 0) {
+                paramCount--;
+            }
+            StringBuilder sb = new StringBuilder("csi ");
+            if (privateMarker != 0) sb.append((char) privateMarker);
+            for (int i = 0; i < paramCount; i++) {
+                if (i > 0) sb.append(';');
+                sb.append(params[i]);
+            }
+            events.add(sb.append((char) finalChar).toString());
+        }
+
+        @Override
+        public void oscDispatch(char[] data, int length) {
+            events.add("osc " + new String(data, 0, length));
+        }
+    }
+
+    /**
+     * The escape handling VTParser replaced, reduced to the dispatches it made
+     */
+    private static class LegacyParser {
+        private final VTParser.Handler handler;
+        private final StringBuilder escapeBuffer = new StringBuilder();
+        private boolean inEscape;
+        private boolean inCSI;
+
+        LegacyParser(VTParser.Handler handler) {
+            this.handler = handler;
+        }
+
+        void advance(char c) {
+            if (inEscape) {
+                processEscape(c);
+            } else if (c == 0x1B) {
+                inEscape = true;
+                escapeBuffer.setLength(0);
+            } else if (c < 32) {
+                handler.execute(c);
+            } else {
+                handler.print(c);
+            }
+        }
+
+        private void processEscape(char c) {
+            escapeBuffer.append(c);
+            String seq = escapeBuffer.toString();
+
+            if (seq.length() == 1) {
+                if (c == '[') {
+                    inCSI = true;
+                } else if (c != ']' && c != '(' && c != ')' && c != '*' && c != '+') {
+                    handler.escDispatch(0, c);
+                    inEscape = false;
+                }
+                return;
+            }
+
+            if (seq.length() == 2 && (seq.charAt(0) == '(' || seq.charAt(0) == ')' ||
+                    seq.charAt(0) == '*' || seq.charAt(0) == '+')) {
+                handler.escDispatch(seq.charAt(0), c);
+                inEscape = false;
+                return;
+            }
+
+            if (seq.startsWith("]")) {
+                if (c == 0x07 || seq.endsWith("\u001b\\")) {
+                    String text = seq.substring(1, seq.length() - (c == 0x07 ? 1 : 2));
+                    handler.oscDispatch(text.toCharArray(), text.length());
+                    inEscape = false;
+                }
+                return;
+            }
+
+            if (inCSI && (Character.isLetter(c) || c == '@' || c == '`')) {
+                String params = seq.substring(1, seq.length() - 1);
+                int[] args = parseArgs(params);
+                handler.csiDispatch(params.startsWith("?") ? '?' : 0, 0, c, args, args.length);
+                inEscape = false;
+                inCSI = false;
+            }
+        }
+
+        private static int[] parseArgs(String params) {
+            if (params.isEmpty() || params.equals("?")) {
+                return new int[] { 0 };
+            }
+            params = params.replace("?", "");
+            String[] parts = params.split(";");
+            int[] args = new int[Math.max(parts.length, 1)];
+            for (int i = 0; i < parts.length; i++) {
+                try {
+                    args[i] = parts[i].isEmpty() ? 0 : Integer.parseInt(parts[i]);
+                } catch (NumberFormatException e) {
+                    args[i] = 0;
+                }
+            }
+            return args;
+        }
+    }
+
+    private static List<String> parse(String input) {
+        Recorder recorder = new Recorder();
+        VTParser parser = new VTParser(recorder);
+        input.codePoints().forEach(parser::advance);
+        return recorder.events;
+    }
+
+    private static List<String> parseLegacy(String input) {
+        Recorder recorder = new Recorder();
+        LegacyParser parser = new LegacyParser(recorder);
+        for (int i = 0; i < input.length(); i++) {
+            parser.advance(input.charAt(i));
+        }
+        return recorder.events;
+    }
+
+    private static void assertSameAsLegacy(String input) {
+        assertEquals(parseLegacy(input), parse(input), input);
+    }
+
+    private static void write(TerminalEmulator emulator, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        emulator.write(data, 0, data.length);
+    }
+
+    @Test
+    public void textAndControlsMatchLegacy() {
+        assertSameAsLegacy("hello\r\n\tworld\u0007\bx");
+        assertSameAsLegacy("café €");
+    }
+
+    @Test
+    public void csiParamsMatchLegacy() {
+        assertSameAsLegacy("\u001b[H\u001b[5;10H\u001b[;7H\u001b[3;H");
+        assertSameAsLegacy("\u001b[m\u001b[0m\u001b[1;31;42m\u001b[38;5;196m\u001b[;1m");
+        assertSameAsLegacy("\u001b[2J\u001b[K\u001b[10@\u001b[3`\u001b[4d\u001b[2;20r");
+        assertSameAsLegacy("\u001b[65535C\u001b[007A");
+    }
+
+    @Test
+    public void privateModesMatchLegacy() {
+        assertSameAsLegacy("\u001b[?25l\u001b[?25h\u001b[?1049h\u001b[?1049l\u001b[?2004h\u001b[?h");
+    }
+
+    @Test
+    public void escSequencesMatchLegacy() {
+        assertSameAsLegacy("\u001b7\u001b8\u001bM\u001bD\u001bE\u001bc\u001b=\u001b>");
+        assertSameAsLegacy("\u001b(B\u001b)0\u001b*A\u001b+B");
+    }
+
+    @Test
+    public void oscTitlesMatchLegacy() {
+        assertSameAsLegacy("\u001b]0;my title\u0007after");
+        assertSameAsLegacy("\u001b]2;other title\u001b\\after");
+        assertSameAsLegacy("\u001b]0;tïtle €\u0007");
+        assertSameAsLegacy("\u001b]2;\u0007");
+    }
+
+    @Test
+    public void oscTitleWithBelAndStTerminators() {
+        TerminalEmulator emulator = new TerminalEmulator(80, 24);
+        List<String> titles = new ArrayList<>();
+        emulator.setListener(new TerminalEmulator.Listener() {
+            @Override
+            public void onTitleChange(String title) {
+                titles.add(title);
+            }
+
+            @Override
+            public void onBell() {
+            }
+        });
+        write(emulator, "\u001b]0;bel title\u0007\u001b]2;st title\u001b\\\u001b]1;icon only\u0007after");
+        assertEquals(List.of("bel title", "st title"), titles);
+        // Neither the terminators nor the payloads reach the screen
+        assertEquals("after", emulator.getScreenText().split("\n")[0]);
+    }
+
+    /**
+     * The old code kept every parameter; the new one keeps 32 and folds the rest into
+     * the last, capped like any value
+     */
+    @Test
+    public void paramsPastTheLimitAreFolded() {
+        StringBuilder seq = new StringBuilder("\u001b[");
+        StringBuilder expected = new StringBuilder("csi ");
+        for (int i = 1; i <= 40; i++) {
+            if (i > 1) seq.append(';');
+            seq.append(i);
+            if (i < 32) expected.append(i).append(';');
+        }
+        seq.append('m');
+        expected.append("65535m");
+        assertEquals(List.of(expected.toString()), parse(seq.toString()));
+        assertEquals(List.of("csi 65535H"), parse("\u001b[99999999999H"));
+    }
+
+    /**
+     * The old code read a colon form as one unparseable parameter, i.e. SGR 0
+     */
+    @Test
+    public void colonSubparamsAreSplit() {
+        assertEquals(List.of("csi 0m"), parseLegacy("\u001b[38:2:255:128:64m"));
+        assertEquals(List.of("csi 38;2;255;128;64m"), parse("\u001b[38:2:255:128:64m"));
+        assertEquals(List.of("csi 4;3m"), parse("\u001b[4:3m"));
+    }
+
+    /**
+     * The old code ran every private parameter together into one mode number
+     */
+    @Test
+    public void everyPrivateModeParameterIsApplied() {
+        assertEquals(List.of("csi ?25;1049h"), parse("\u001b[?25;1049h"));
+
+        TerminalEmulator emulator = new TerminalEmulator(80, 24);
+        write(emulator, "\u001b[?25l\u001b[?1049;25h");
+        assertTrue(emulator.isAlternateScreen());
+        assertTrue(emulator.isCursorVisible());
+        write(emulator, "\u001b[?25;1049l");
+        assertFalse(emulator.isAlternateScreen());
+        assertFalse(emulator.isCursorVisible());
+    }
+
+    /**
+     * CAN and SUB cancel a sequence and ESC starts a new one. The old code appended them
+     * to the sequence, dispatching garbage or swallowing the text that followed.
+     */
+    @Test
+    public void canSubAndEscAbortSequences() {
+        assertEquals(List.of("execute 18", "print x"), parse("\u001b[31\u0018x"));
+        assertEquals(List.of("execute 1a", "print x"), parse("\u001b[31;4\u001ax"));
+        assertEquals(List.of("execute 18", "print x"), parse("\u001b(\u0018x"));
+        assertEquals(List.of("csi 32m", "print x"), parse("\u001b[31\u001b[32mx"));
+        assertEquals(List.of("esc M"), parse("\u001b[?1\u001bM"));
+        // An OSC ends at the cancel, like at a terminator
+        assertEquals(List.of("osc 0;title", "execute 18", "print x"), parse("\u001b]0;title\u0018x"));
+        // DCS payloads are swallowed until ST
+        assertEquals(List.of("print x"), parse("\u001bPq#0;1;1\u001b\\x"));
+
+        assertEquals(List.of("csi 0x"), parseLegacy("\u001b[31\u0018x"));
+
+        TerminalEmulator emulator = new TerminalEmulator(80, 24);
+        write(emulator, "a\u001b[31\u0018b\u001b]0;t\u001ac");
+        assertEquals("abc", emulator.getScreenText().split("\n")[0]);
+    }
+
+    /**
+     * A character or sequence split across writes decodes as if written at once
+     */
+    @Test
+    public void utf8SplitAcrossWrites() {
+        String text = "aé€中\u001b[1;31mb\u001b]0;ü\u0007c\u001b[0m d";
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+
+        TerminalEmulator whole = new TerminalEmulator(80, 24);
+        whole.write(data, 0, data.length);
+
+        TerminalEmulator split = new TerminalEmulator(80, 24);
+        for (int i = 0; i < data.length; i++) {
+            split.write(data, i, 1);
+        }
+
+        assertEquals("aé€中büc d".replace("ü", ""), whole.getScreenText().split("\n")[0]);
+        assertEquals(whole.getScreenText(), split.getScreenText());
+        for (int y = 0; y < whole.getRows(); y++) {
+            assertEquals(Arrays.toString(whole.getLine(y)), Arrays.toString(split.getLine(y)));
+        }
+    }
+
+    /**
+     * Output shaped like a shell session: coloured listings, a full-screen editor
+     * redraw with cursor addressing, and title updates
+     */
+    private static String recordedSession(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes + 4096);
+        int n = 0;
+        while (sb.length() < bytes) {
+            sb.append("\u001b]0;user@host: ~/src/project").append(n % 10).append("\u0007");
+            sb.append("$ ls -l --color\r\n");
+            for (int i = 0; i < 20; i++) {
+                sb.append("-rw-r--r-- 1 user group ").append(1000 + i * 37).append(" Oct 17 12:")
+                        .append(10 + i).append(' ')
+                        .append(i % 3 == 0 ? "\u001b[01;34mdir" : "\u001b[01;32mfile").append(i)
+                        .append("\u001b[0m café\r\n");
+            }
+            sb.append("\u001b[?1049h\u001b[H\u001b[2J");
+            for (int row = 1; row <= 24; row++) {
+                sb.append("\u001b[").append(row).append(";1H\u001b[38;5;").append(row * 7 % 256)
+                        .append("m").append(row).append("  public void method").append(row)
+                        .append("() {\u001b[K\u001b[m");
+            }
+            sb.append("\u001b[24;1H\u001b[7m-- INSERT --\u001b[27m\u001b[?1049l\r\n");
+            n++;
+        }
+        return sb.toString();
+    }
+
+    private static class CountingHandler implements VTParser.Handler {
+        long count;
+
+        @Override
+        public void print(int codePoint) {
+            count++;
+        }
+
+        @Override
+        public void execute(int control) {
+            count++;
+        }
+
+        @Override
+        public void escDispatch(int intermediate, int finalChar) {
+            count++;
+        }
+
+        @Override
+        public void csiDispatch(int privateMarker, int intermediate, int finalChar, int[] params, int paramCount) {
+            count++;
+        }
+
+        @Override
+        public void oscDispatch(char[] data, int length) {
+            count++;
+        }
+    }
+
+    /**
+     * Parsing a multi-megabyte session dispatches the same as the old code, and faster
+     */
+    @Test
+    public void throughputOverRecordedSession() {
+        String session = recordedSession(8 * 1024 * 1024);
+        char[] chars = session.toCharArray();
+        double megabytes = session.getBytes(StandardCharsets.UTF_8).length / (1024.0 * 1024.0);
+
+        long bestNew = Long.MAX_VALUE;
+        long bestLegacy = Long.MAX_VALUE;
+        long newCount = 0;
+        long legacyCount = 0;
+        for (int run = 0; run < 3; run++) {
+            CountingHandler handler = new CountingHandler();
+            VTParser parser = new VTParser(handler);
+            long start = System.nanoTime();
+            for (char c : chars) {
+                parser.advance(c);
+            }
+            bestNew = Math.min(bestNew, System.nanoTime() - start);
+            newCount = handler.count;
+
+            CountingHandler legacyHandler = new CountingHandler();
+            LegacyParser legacy = new LegacyParser(legacyHandler);
+            start = System.nanoTime();
+            for (char c : chars) {
+                legacy.advance(c);
+            }
+            bestLegacy = Math.min(bestLegacy, System.nanoTime() - start);
+            legacyCount = legacyHandler.count;
+        }
+
+        System.out.printf("VTParser: %.0f MB/s, old parser: %.0f MB/s over %.1f MB%n",
+                megabytes / (bestNew / 1e9), megabytes / (bestLegacy / 1e9), megabytes);
+        assertEquals(legacyCount, newCount);
+        assertTrue(bestNew < bestLegacy, "VTParser " + bestNew + " ns, old parser " + bestLegacy + " ns");
+
+        // The whole stream through the emulator, split into network-sized reads
+        byte[] data = session.getBytes(StandardCharsets.UTF_8);
+        TerminalEmulator emulator = new TerminalEmulator(80, 24);
+        for (int i = 0; i < data.length; i += 32768) {
+            emulator.write(data, i, Math.min(32768, data.length - i));
+        }
+        assertFalse(emulator.isAlternateScreen());
+    }
+}